@@ -0,0 +1,601 @@
+package org.korz.beanmagic.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Generates classes for types annotated with {@code org.korz.beanmagic.Precompiled}, so beans need neither proxies,
+ * classes generated at runtime nor reflection:
+ * <ul>
+ * <li>for a bean interface, a class implementing it with a field per property and a {@code CompiledBean}</li>
+ * <li>for a bean class, a {@code CompiledSetters} calling each of its setters</li>
+ * </ul>
+ * Both are registered in {@code META-INF/services}, where {@code BeanFactory} and {@code BeanSetter} find them.
+ * Interfaces follow the rules of {@code BeanFactory}, anything it would reject is a compile error.
+ * The generated sources only refer to the beanmagic runtime, the processor itself is only needed by the compiler.
+ */
+@SupportedAnnotationTypes(PrecompiledProcessor.PRECOMPILED)
+public class PrecompiledProcessor extends AbstractProcessor {
+    static final String PRECOMPILED = "org.korz.beanmagic.Precompiled";
+    static final String COMPILED_BEAN = "org.korz.beanmagic.CompiledBean";
+    static final String COMPILED_SETTERS = "org.korz.beanmagic.CompiledSetters";
+    static final String BEAN_SUFFIX = "_CompiledBean";
+    static final String SETTERS_SUFFIX = "_CompiledSetters";
+
+    private static final String SERVICES = "META-INF/services/";
+
+    // Binary names of the generated providers, written once every round is over
+    private final Set<String> beanProviders = new TreeSet<>();
+    private final Set<String> setterProviders = new TreeSet<>();
+
+    @Override // AbstractProcessor
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override // AbstractProcessor
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                TypeElement type = (TypeElement) element;
+                if (!isAccessible(type)) {
+                    error(type, "@Precompiled types must not be private");
+                } else if (!type.getTypeParameters().isEmpty()) {
+                    error(type, "@Precompiled types must not be generic");
+                } else if (type.getKind() == ElementKind.INTERFACE) {
+                    generateBean(type);
+                } else if (type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+                    generateSetters(type);
+                } else {
+                    error(type, "@Precompiled types must be interfaces or concrete classes");
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            writeServices(COMPILED_BEAN, beanProviders);
+            writeServices(COMPILED_SETTERS, setterProviders);
+        }
+        return true;
+    }
+
+    private void generateBean(TypeElement beanInterface) {
+        Map<String, Property> properties = findProperties(beanInterface);
+        if (properties == null) {
+            return;
+        }
+        String packageName = getPackageName(beanInterface);
+        String className = getFlatName(beanInterface) + BEAN_SUFFIX;
+        String interfaceName = beanInterface.getQualifiedName().toString();
+        boolean isPublic = beanInterface.getModifiers().contains(Modifier.PUBLIC);
+
+        Source s = new Source(packageName);
+        s.line("/**");
+        s.line(" * Implements {@link %s}, generated by %s.", interfaceName, getClass().getName());
+        s.line(" */");
+        s.line("%sfinal class %s implements %s {", isPublic ? "public " : "", className, interfaceName);
+        s.line("private static final String[] PROPERTY_NAMES = {%s};", join(properties.keySet(), "\"", "\""));
+        List<String> types = new ArrayList<>();
+        for (Property property : properties.values()) {
+            types.add(erasure(property.type) + ".class");
+        }
+        s.line("private static final Class<?>[] PROPERTY_TYPES = {%s};", String.join(", ", types));
+        s.line("");
+        for (Property property : properties.values()) {
+            s.line("private %s %s;", property.type, property.field);
+            s.line("private boolean %s$set;", property.field);
+        }
+        for (Property property : properties.values()) {
+            s.line("");
+            s.line("@Override");
+            s.line("public %s %s() {", property.type, property.getter);
+            s.line("return this.%s;", property.field);
+            s.line("}");
+            s.line("");
+            s.line("@Override");
+            s.line("public void %s(%s value) {", property.setter, property.type);
+            s.line("this.%s = value;", property.field);
+            s.line("this.%s$set = true;", property.field);
+            s.line("}");
+        }
+
+        s.line("");
+        s.line("// Same as a proxy bean, the map of properties that have been set");
+        s.line("@Override");
+        s.line("public String toString() {");
+        s.line("java.util.Map<String, Object> properties = new java.util.HashMap<>();");
+        for (Map.Entry<String, Property> property : properties.entrySet()) {
+            String field = property.getValue().field;
+            s.line("if (this.%s$set) {", field);
+            s.line("properties.put(\"%s\", this.%s);", property.getKey(), field);
+            s.line("}");
+        }
+        s.line("return properties.toString();");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public boolean equals(Object other) {");
+        s.line("if (other == this) {");
+        s.line("return true;");
+        s.line("}");
+        s.line("if (other == null || other.getClass() != %s.class) {", className);
+        s.line("return false;");
+        s.line("}");
+        s.line("%s bean = (%s) other;", className, className);
+        for (Property property : properties.values()) {
+            // Boxed, so floating point values compare as their getters' values would
+            s.line("if (this.%1$s$set != bean.%1$s$set ||", property.field);
+            s.line("    this.%1$s$set && !java.util.Objects.equals(this.%1$s, bean.%1$s)) {", property.field);
+            s.line("return false;");
+            s.line("}");
+        }
+        s.line("return true;");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public int hashCode() {");
+        s.line("int hashCode = 0;");
+        for (Map.Entry<String, Property> property : properties.entrySet()) {
+            Property p = property.getValue();
+            String hash = p.type.getKind().isPrimitive() ? boxed(p.type) + ".hashCode(this." + p.field + ")"
+                                                          : "java.util.Objects.hashCode(this." + p.field + ")";
+            s.line("if (this.%s$set) {", p.field);
+            s.line("hashCode += \"%s\".hashCode() ^ %s;", property.getKey(), hash);
+            s.line("}");
+        }
+        s.line("return hashCode;");
+        s.line("}");
+
+        s.line("");
+        s.line("public static final class Provider implements %s<%s> {", COMPILED_BEAN, interfaceName);
+        s.line("@Override");
+        s.line("public Class<%s> getBeanInterface() {", interfaceName);
+        s.line("return %s.class;", interfaceName);
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public Class<%s> getBeanClass() {", className);
+        s.line("return %s.class;", className);
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public String[] getPropertyNames() {");
+        s.line("return PROPERTY_NAMES.clone();");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public Class<?>[] getPropertyTypes() {");
+        s.line("return PROPERTY_TYPES.clone();");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public %s newInstance() {", interfaceName);
+        s.line("return new %s();", className);
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public boolean isSet(%s bean, int index) {", interfaceName);
+        s.line("%s b = (%s) bean;", className, className);
+        s.line("switch (index) {");
+        int index = 0;
+        for (Property property : properties.values()) {
+            s.line("case %d:", index++);
+            s.line("return b.%s$set;", property.field);
+        }
+        s.line("default:");
+        s.line("throw new IndexOutOfBoundsException(String.valueOf(index));");
+        s.line("}");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public Object get(%s bean, int index) {", interfaceName);
+        s.line("%s b = (%s) bean;", className, className);
+        s.line("switch (index) {");
+        index = 0;
+        for (Property property : properties.values()) {
+            s.line("case %d:", index++);
+            s.line("return b.%s;", property.field);
+        }
+        s.line("default:");
+        s.line("throw new IndexOutOfBoundsException(String.valueOf(index));");
+        s.line("}");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("@SuppressWarnings(\"unchecked\")");
+        s.line("public void set(%s bean, int index, Object value) {", interfaceName);
+        s.line("%s b = (%s) bean;", className, className);
+        s.line("switch (index) {");
+        index = 0;
+        for (Property property : properties.values()) {
+            s.line("case %d:", index++);
+            s.line("b.%s((%s) value);", property.setter, boxed(property.type));
+            s.line("return;");
+        }
+        s.line("default:");
+        s.line("throw new IndexOutOfBoundsException(String.valueOf(index));");
+        s.line("}");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public void reset(%s bean) {", interfaceName);
+        s.line("%s b = (%s) bean;", className, className);
+        for (Property property : properties.values()) {
+            s.line("b.%s = %s;", property.field, defaultValue(property.type));
+            s.line("b.%s$set = false;", property.field);
+        }
+        s.line("}");
+        s.line("}");
+        s.line("}");
+
+        if (write(beanInterface, qualify(packageName, className), s)) {
+            beanProviders.add(qualify(packageName, className + "$Provider"));
+        }
+    }
+
+    // The properties of an interface by name, or null if any method is not a valid accessor
+    private Map<String, Property> findProperties(TypeElement beanInterface) {
+        Types types = processingEnv.getTypeUtils();
+        DeclaredType declared = (DeclaredType) beanInterface.asType();
+        Map<String, Property> properties = new TreeMap<>();
+        boolean valid = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(getAllMembers(beanInterface))) {
+            // Interfaces only inherit the methods of Object, which beans implement themselves.
+            // Default methods are never properties, beans inherit them as they are.
+            if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE ||
+                method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.DEFAULT)) {
+                continue;
+            }
+            ExecutableType type = (ExecutableType) types.asMemberOf(declared, method);
+            String name = method.getSimpleName().toString();
+            String propertyName = getPropertyName(name, type.getReturnType());
+            if (propertyName == null) {
+                valid = error(method, name.startsWith("compareAndSet") ?
+                    "compare-and-set methods need concurrent beans, which cannot be precompiled" :
+                    "method " + name + " is not a getter or setter");
+                continue;
+            }
+            Property property = properties.computeIfAbsent(propertyName, Property::new);
+            TypeMirror propertyType;
+            if (name.startsWith("set")) {
+                if (type.getParameterTypes().size() != 1 || type.getReturnType().getKind() != TypeKind.VOID) {
+                    valid = error(method, "setter " + name + " must have one parameter and return void");
+                    continue;
+                }
+                property.setter = name;
+                propertyType = type.getParameterTypes().get(0);
+            } else {
+                if (!type.getParameterTypes().isEmpty() || type.getReturnType().getKind() == TypeKind.VOID) {
+                    valid = error(method, "getter " + name + " must have no parameters and return a value");
+                    continue;
+                }
+                property.getter = name;
+                propertyType = type.getReturnType();
+            }
+            if (property.type == null) {
+                property.type = propertyType;
+            } else if (!types.isSameType(property.type, propertyType)) {
+                valid = error(method, "property " + propertyName + " does not have a consistent type");
+            }
+        }
+        for (Property property : properties.values()) {
+            if (property.getter == null) {
+                valid = error(beanInterface, "property " + property.name + " has no getter");
+            }
+            if (property.setter == null) {
+                valid = error(beanInterface, "property " + property.name + " has no setter");
+            }
+        }
+        return valid ? properties : null;
+    }
+
+    // The same rules as BeanLayout
+    private static String getPropertyName(String methodName, TypeMirror returnType) {
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            return removePrefix("get", methodName);
+        } else if (methodName.startsWith("set") && methodName.length() > 3) {
+            return removePrefix("set", methodName);
+        } else if (isBoolean(returnType) && methodName.startsWith("is") && methodName.length() > 2) {
+            return removePrefix("is", methodName);
+        }
+        return null;
+    }
+
+    private static String removePrefix(String prefix, String word) {
+        return Character.toLowerCase(word.charAt(prefix.length())) + word.substring(prefix.length() + 1);
+    }
+
+    private static boolean isBoolean(TypeMirror type) {
+        return type.getKind() == TypeKind.BOOLEAN || type.toString().equals("java.lang.Boolean");
+    }
+
+    private void generateSetters(TypeElement beanClass) {
+        Types types = processingEnv.getTypeUtils();
+        DeclaredType declared = (DeclaredType) beanClass.asType();
+        // Public instance methods named "set..." with one parameter and no result, as found by BeanSetter
+        Map<String, TypeMirror> setters = new TreeMap<>();
+        boolean valid = true;
+        for (ExecutableElement method : ElementFilter.methodsIn(getAllMembers(beanClass))) {
+            String name = method.getSimpleName().toString();
+            if (!name.startsWith("set") || name.length() == 3 ||
+                !method.getModifiers().contains(Modifier.PUBLIC) ||
+                method.getModifiers().contains(Modifier.STATIC) ||
+                method.getParameters().size() != 1 ||
+                method.getReturnType().getKind() != TypeKind.VOID) {
+                continue;
+            }
+            TypeMirror parameterType = ((ExecutableType) types.asMemberOf(declared, method)).getParameterTypes().get(0);
+            if (setters.put(name, parameterType) != null) {
+                valid = error(method, "setter " + name + " is overloaded, so it cannot be precompiled");
+            }
+        }
+        if (!valid) {
+            return;
+        }
+        String packageName = getPackageName(beanClass);
+        String className = getFlatName(beanClass) + SETTERS_SUFFIX;
+        String beanClassName = beanClass.getQualifiedName().toString();
+
+        Source s = new Source(packageName);
+        s.line("/**");
+        s.line(" * Calls the setters of {@link %s}, generated by %s.", beanClassName, getClass().getName());
+        s.line(" */");
+        s.line("public final class %s implements %s<%s> {", className, COMPILED_SETTERS, beanClassName);
+        s.line("private static final String[] SETTER_NAMES = {%s};", join(setters.keySet(), "\"", "\""));
+        List<String> parameterTypes = new ArrayList<>();
+        for (TypeMirror type : setters.values()) {
+            parameterTypes.add(erasure(type) + ".class");
+        }
+        s.line("private static final Class<?>[] PARAMETER_TYPES = {%s};", String.join(", ", parameterTypes));
+        s.line("");
+        s.line("@Override");
+        s.line("public Class<%s> getBeanClass() {", beanClassName);
+        s.line("return %s.class;", beanClassName);
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public String[] getSetterNames() {");
+        s.line("return SETTER_NAMES.clone();");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("public Class<?>[] getParameterTypes() {");
+        s.line("return PARAMETER_TYPES.clone();");
+        s.line("}");
+        s.line("");
+        s.line("@Override");
+        s.line("@SuppressWarnings(\"unchecked\")");
+        s.line("public void set(%s bean, int index, Object value) {", beanClassName);
+        s.line("switch (index) {");
+        int index = 0;
+        for (Map.Entry<String, TypeMirror> setter : setters.entrySet()) {
+            s.line("case %d:", index++);
+            s.line("bean.%s((%s) value);", setter.getKey(), boxed(setter.getValue()));
+            s.line("return;");
+        }
+        s.line("default:");
+        s.line("throw new IndexOutOfBoundsException(String.valueOf(index));");
+        s.line("}");
+        s.line("}");
+        s.line("}");
+
+        if (write(beanClass, qualify(packageName, className), s)) {
+            setterProviders.add(qualify(packageName, className));
+        }
+    }
+
+    private List<? extends Element> getAllMembers(TypeElement type) {
+        return processingEnv.getElementUtils().getAllMembers(type);
+    }
+
+    // Generated classes are top level classes in the package of the type, so the type must be visible there
+    private static boolean isAccessible(TypeElement type) {
+        for (Element e = type; e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getPackageName(TypeElement type) {
+        PackageElement p = processingEnv.getElementUtils().getPackageOf(type);
+        return p.isUnnamed() ? "" : p.getQualifiedName().toString();
+    }
+
+    // The simple names of the type and its enclosing types, e.g. Outer_Inner
+    private static String getFlatName(TypeElement type) {
+        StringBuilder sb = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            sb.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return sb.toString();
+    }
+
+    private static String qualify(String packageName, String className) {
+        return packageName.isEmpty() ? className : packageName + "." + className;
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    // The type values are cast to, an unchecked cast for generic types
+    private static String defaultValue(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case CHAR:
+                return "'\\0'";
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return "(" + type + ") 0";
+            default:
+                return "null";
+        }
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type)
+                                .getQualifiedName().toString();
+        }
+        return type.getKind() == TypeKind.TYPEVAR ? erasure(type) : type.toString();
+    }
+
+    private static String join(Iterable<String> values, String prefix, String suffix) {
+        List<String> quoted = new ArrayList<>();
+        for (String value : values) {
+            quoted.add(prefix + value + suffix);
+        }
+        return String.join(", ", quoted);
+    }
+
+    private boolean write(TypeElement origin, String className, Source source) {
+        Filer filer = processingEnv.getFiler();
+        try {
+            JavaFileObject file = filer.createSourceFile(className, origin);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+            return true;
+        } catch (IOException e) {
+            error(origin, "Cannot write " + className + ": " + e);
+            return false;
+        }
+    }
+
+    // Merges with the providers of an earlier incremental compilation, if the file is still there
+    private void writeServices(String service, Set<String> providers) {
+        if (providers.isEmpty()) {
+            return;
+        }
+        Filer filer = processingEnv.getFiler();
+        String path = SERVICES + service;
+        Set<String> all = new TreeSet<>(providers);
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (!line.trim().isEmpty()) {
+                        all.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // No earlier compilation
+        }
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", path);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String provider : all) {
+                    writer.write(provider);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + path + ": " + e);
+        }
+    }
+
+    // Always false, so callers can record that the type is invalid
+    private boolean error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+        return false;
+    }
+
+    private static class Property {
+        final String name;
+        // Keywords such as "default" are valid property names but not field names
+        final String field;
+        TypeMirror type;
+        String getter;
+        String setter;
+
+        Property(String name) {
+            this.name = name;
+            this.field = SourceVersion.isKeyword(name) ? name + "$" : name;
+        }
+    }
+
+    /**
+     * A Java source file, indented by its braces.
+     */
+    private static class Source {
+        private final StringBuilder sb = new StringBuilder();
+        // The indent added by each open brace, switch bodies are indented twice with their labels in between
+        private final Deque<Integer> indents = new ArrayDeque<>();
+        private int depth;
+
+        Source(String packageName) {
+            if (!packageName.isEmpty()) {
+                line("package %s;", packageName);
+                line("");
+            }
+        }
+
+        void line(String format, Object... args) {
+            String line = args.length == 0 ? format : String.format(format, args);
+            if (line.startsWith("}")) {
+                depth -= indents.pop();
+            }
+            boolean label = line.startsWith("case ") || line.startsWith("default:");
+            if (!line.isEmpty()) {
+                for (int i = label ? 1 : 0; i < depth; i++) {
+                    sb.append("    ");
+                }
+            }
+            sb.append(line).append('\n');
+            if (line.endsWith("{")) {
+                int indent = line.startsWith("switch ") ? 2 : 1;
+                indents.push(indent);
+                depth += indent;
+            }
+        }
+
+        @Override // Object
+        public String toString() {
+            return sb.toString();
+        }
+    }
+}
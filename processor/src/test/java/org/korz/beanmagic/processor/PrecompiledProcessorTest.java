@@ -0,0 +1,248 @@
+package org.korz.beanmagic.processor;
+
+import org.junit.Test;
+import org.korz.beanmagic.BeanCodec;
+import org.korz.beanmagic.BeanFactory;
+import org.korz.beanmagic.BeanSetter;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PrecompiledProcessorTest {
+    private static final String PERSON =
+        "package sample;\n" +
+        "@org.korz.beanmagic.Precompiled\n" +
+        "public interface Person {\n" +
+        "    String getName();\n" +
+        "    void setName(String name);\n" +
+        "    int getAge();\n" +
+        "    void setAge(int age);\n" +
+        "    boolean isActive();\n" +
+        "    void setActive(boolean active);\n" +
+        "    java.util.List<String> getTags();\n" +
+        "    void setTags(java.util.List<String> tags);\n" +
+        "}\n";
+
+    private static final String ACCOUNT =
+        "package sample;\n" +
+        "@org.korz.beanmagic.Precompiled\n" +
+        "public class Account {\n" +
+        "    private long id;\n" +
+        "    private String owner;\n" +
+        "    public long getId() { return id; }\n" +
+        "    public void setId(long id) { this.id = id; }\n" +
+        "    public String getOwner() { return owner; }\n" +
+        "    public void setOwner(String owner) { this.owner = owner; }\n" +
+        "}\n";
+
+    private static final Pattern TYPE_NAME = Pattern.compile("(?:class|interface) (\\w+)");
+
+    private static class Compilation {
+        final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        ClassLoader loader;
+    }
+
+    private static Compilation compile(String... sources) throws IOException {
+        Path dir = Files.createTempDirectory("precompiled");
+        Path classes = Files.createDirectory(dir.resolve("classes"));
+        List<Path> files = new ArrayList<>();
+        for (String source : sources) {
+            Matcher name = TYPE_NAME.matcher(source);
+            if (!name.find()) {
+                throw new IllegalArgumentException("No type in " + source);
+            }
+            files.add(Files.write(dir.resolve(name.group(1) + ".java"), source.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        List<String> options = Arrays.asList("-d", classes.toString(),
+                                             "-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(
+            null, fileManager, diagnostics, options, null,
+            fileManager.getJavaFileObjectsFromFiles(toFiles(files)));
+        task.setProcessors(Collections.singletonList(new PrecompiledProcessor()));
+        boolean success = task.call();
+        fileManager.close();
+
+        Compilation compilation = new Compilation();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                compilation.errors.add(diagnostic);
+            }
+        }
+        if (success) {
+            compilation.loader = new URLClassLoader(new URL[] { classes.toUri().toURL() },
+                                                    PrecompiledProcessorTest.class.getClassLoader());
+        }
+        return compilation;
+    }
+
+    private static List<File> toFiles(List<Path> paths) {
+        List<File> files = new ArrayList<>();
+        for (Path path : paths) {
+            files.add(path.toFile());
+        }
+        return files;
+    }
+
+    private static Object fill(Class<?> person, Object bean) throws ReflectiveOperationException {
+        person.getMethod("setName", String.class).invoke(bean, "fred");
+        person.getMethod("setAge", int.class).invoke(bean, 42);
+        return bean;
+    }
+
+    @Test
+    public void bean() throws Exception {
+        Compilation compilation = compile(PERSON);
+        assertThat(compilation.errors.toString(), compilation.loader != null, is(true));
+        Class<?> person = compilation.loader.loadClass("sample.Person");
+
+        BeanFactory factory = new BeanFactory();
+        Object bean = fill(person, factory.createBean(person));
+        assertThat(bean.getClass().getName(), is("sample.Person_CompiledBean"));
+        assertThat(person.getMethod("getName").invoke(bean), is("fred"));
+        assertThat(person.getMethod("getAge").invoke(bean), is(42));
+        assertThat(person.getMethod("isActive").invoke(bean), is(false));
+
+        // Same as a proxy bean
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", "fred");
+        properties.put("age", 42);
+        assertThat(bean.toString(), is(properties.toString()));
+        assertThat(bean.hashCode(), is(("name".hashCode() ^ "fred".hashCode()) + ("age".hashCode() ^ 42)));
+        assertThat(bean, is(fill(person, factory.createBean(person))));
+        assertThat(bean.equals(factory.createBean(person)), is(false));
+
+        factory.reset(bean);
+        assertThat(bean, is(factory.createBean(person)));
+        assertThat(person.getMethod("getAge").invoke(bean), is(0));
+    }
+
+    @Test
+    public void codec() throws Exception {
+        Compilation compilation = compile(
+            "package sample;\n" +
+            "@org.korz.beanmagic.Precompiled\n" +
+            "public interface Point {\n" +
+            "    int getX();\n" +
+            "    void setX(int x);\n" +
+            "    String getLabel();\n" +
+            "    void setLabel(String label);\n" +
+            "}\n");
+        Class<?> point = compilation.loader.loadClass("sample.Point");
+        BeanFactory factory = new BeanFactory();
+        Object bean = factory.createBean(point);
+        point.getMethod("setX", int.class).invoke(bean, -7);
+
+        BeanCodec<Object> codec = codecOf(factory, point);
+        Object decoded = codec.decode(codec.encode(bean));
+        assertThat(decoded.getClass() == bean.getClass(), is(true));
+        assertThat(decoded, is(bean));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BeanCodec<Object> codecOf(BeanFactory factory, Class<?> beanInterface) {
+        return factory.newCodec((Class<Object>) beanInterface);
+    }
+
+    @Test
+    public void setters() throws Exception {
+        Compilation compilation = compile(ACCOUNT);
+        assertThat(compilation.errors.toString(), compilation.loader != null, is(true));
+        Class<?> account = compilation.loader.loadClass("sample.Account");
+        Object bean = account.getConstructor().newInstance();
+
+        BeanSetter setter = new BeanSetter();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("id", 7);
+        properties.put("owner", "fred");
+        setter.setProperties(bean, properties);
+        assertThat(account.getMethod("getId").invoke(bean), is(7L));
+        assertThat(account.getMethod("getOwner").invoke(bean), is("fred"));
+        assertThat(setter.explain(account), containsString("property \"owner\": java.lang.String (compiled)"));
+
+        BeanSetter reflective = BeanSetter.newBuilder().setUseCompiled(false).build();
+        assertThat(reflective.explain(account), containsString("(method handle)"));
+    }
+
+    @Test
+    public void invalid() throws Exception {
+        Compilation compilation = compile(
+            "package sample;\n" +
+            "@org.korz.beanmagic.Precompiled\n" +
+            "public interface Broken {\n" +
+            "    String getName();\n" +
+            "    void reset();\n" +
+            "}\n");
+        assertThat(compilation.loader == null, is(true));
+        String errors = compilation.errors.toString();
+        assertThat(errors, containsString("method reset is not a getter or setter"));
+        assertThat(errors, containsString("property name has no setter"));
+    }
+
+    @Test
+    public void overloaded() throws Exception {
+        Compilation compilation = compile(
+            "package sample;\n" +
+            "@org.korz.beanmagic.Precompiled\n" +
+            "public class Overloaded {\n" +
+            "    public void setValue(int value) {}\n" +
+            "    public void setValue(String value) {}\n" +
+            "}\n");
+        assertThat(compilation.errors.toString(), containsString("setter setValue is overloaded"));
+    }
+
+    @Test
+    public void defaultMethods() throws Exception {
+        Compilation compilation = compile(
+            "package sample;\n" +
+            "@org.korz.beanmagic.Precompiled\n" +
+            "public interface Greeter {\n" +
+            "    String getName();\n" +
+            "    void setName(String name);\n" +
+            "    default String getGreeting() { return \"hello \" + getName(); }\n" +
+            "}\n");
+        assertThat(compilation.errors.toString(), compilation.loader != null, is(true));
+        Class<?> greeter = compilation.loader.loadClass("sample.Greeter");
+        Object bean = new BeanFactory().createBean(greeter);
+        assertThat(bean.getClass().getName(), is("sample.Greeter_CompiledBean"));
+        greeter.getMethod("setName", String.class).invoke(bean, "fred");
+        assertThat(greeter.getMethod("getGreeting").invoke(bean), is("hello fred"));
+        assertThat(bean.toString(), is("{name=fred}"));
+    }
+
+    @Test
+    public void propertyNames() throws Exception {
+        Compilation compilation = compile(PERSON);
+        Class<?> provider = compilation.loader.loadClass("sample.Person_CompiledBean$Provider");
+        Method getPropertyNames = provider.getMethod("getPropertyNames");
+        assertThat((String[]) getPropertyNames.invoke(provider.getConstructor().newInstance()),
+                   is(new String[] { "active", "age", "name", "tags" }));
+    }
+}
@@ -0,0 +1,139 @@
+package org.korz.beanmagic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeanFactoryBenchmark {
+    public interface PersonBean {
+        String getName();
+        void setName(String name);
+        int getAge();
+        void setAge(int age);
+        boolean isActive();
+        void setActive(boolean active);
+    }
+
+    @Param({ "proxy", "generated" })
+    public String mode;
+
+    private BeanFactory factory;
+    private PersonBean bean;
+    private PersonBean equalBean;
+    private PersonBean frozenBean;
+    private PersonBean otherFrozenBean;
+    private BeanCodec<PersonBean> codec;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setup() {
+        factory = BeanFactory.newBuilder()
+            .setGenerateClasses(mode.equals("generated"))
+            .setPoolCapacity(16)
+            .build();
+        factory.prepare(PersonBean.class);
+        bean = fill(factory.createBean(PersonBean.class));
+        equalBean = fill(factory.createBean(PersonBean.class));
+        frozenBean = factory.freeze(bean);
+        otherFrozenBean = factory.derive(frozenBean, b -> b.setAge(43));
+        codec = factory.newCodec(PersonBean.class);
+        encoded = ByteBuffer.allocateDirect(256);
+        codec.encode(bean, encoded);
+        encoded.flip();
+    }
+
+    private static PersonBean fill(PersonBean bean) {
+        bean.setName("fred");
+        bean.setAge(42);
+        bean.setActive(true);
+        return bean;
+    }
+
+    @Benchmark
+    public PersonBean createBean() {
+        return factory.createBean(PersonBean.class);
+    }
+
+    // A bean per message, filled and dropped, compare with createBean and fill
+    @Benchmark
+    public PersonBean acquireRelease() {
+        PersonBean pooled = fill(factory.acquire(PersonBean.class));
+        factory.release(pooled);
+        return pooled;
+    }
+
+    @Benchmark
+    public PersonBean createFill() {
+        return fill(factory.createBean(PersonBean.class));
+    }
+
+    @Benchmark
+    public String getReference() {
+        return bean.getName();
+    }
+
+    @Benchmark
+    public int getPrimitive() {
+        return bean.getAge();
+    }
+
+    @Benchmark
+    public void setReference() {
+        bean.setName("zed");
+    }
+
+    @Benchmark
+    public void setPrimitive() {
+        bean.setAge(1000);
+    }
+
+    @Benchmark
+    public boolean beanEquals() {
+        return bean.equals(equalBean);
+    }
+
+    @Benchmark
+    public int beanHashCode() {
+        return bean.hashCode();
+    }
+
+    @Benchmark
+    public int frozenHashCode() {
+        return frozenBean.hashCode();
+    }
+
+    @Benchmark
+    public boolean frozenNotEquals() {
+        return frozenBean.equals(otherFrozenBean);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        encoded.clear();
+        codec.encode(bean, encoded);
+        return encoded;
+    }
+
+    @Benchmark
+    public PersonBean decode() {
+        encoded.rewind();
+        return codec.decode(encoded);
+    }
+}
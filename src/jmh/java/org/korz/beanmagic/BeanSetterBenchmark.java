@@ -0,0 +1,274 @@
+package org.korz.beanmagic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeanSetterBenchmark {
+    // Neither is handled by TextParser, so they are converted by their own methods
+    public static final class Code {
+        private final String value;
+
+        private Code(String value) {
+            this.value = value;
+        }
+
+        public static Code valueOf(String value) {
+            return new Code(value);
+        }
+    }
+
+    public static final class Stamp {
+        private final long millis;
+
+        private Stamp(long millis) {
+            this.millis = millis;
+        }
+
+        public static Stamp parse(CharSequence text) {
+            return new Stamp(Long.parseLong(text.toString()));
+        }
+    }
+
+    public static class Bean {
+        private String name;
+        private int count;
+        private LocalDate date;
+        private BigDecimal amount;
+        private Code code;
+        private Stamp stamp;
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+
+        public void setAmount(BigDecimal amount) {
+            this.amount = amount;
+        }
+
+        public void setCode(Code code) {
+            this.code = code;
+        }
+
+        public void setStamp(Stamp stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    public interface Row {
+        String getName();
+        void setName(String name);
+        String getCount();
+        void setCount(String count);
+        String getDate();
+        void setDate(String date);
+    }
+
+    private BeanSetter setter;
+    private BeanSetter converterSetter;
+    private BeanSetter metricsSetter;
+    private Bean bean;
+    private Map<String, Object> direct;
+    private Map<String, Object> textInt;
+    private Map<String, Object> textDate;
+    private Map<String, Object> valueOf;
+    private Map<String, Object> parse;
+    private Map<String, Object> constructor;
+    private List<Map<String, Object>> records;
+    private BeanBinder<Bean> binder;
+    private CharSequence[] row;
+    private Row source;
+    private TextRecordBinder<Bean> textBinder;
+    private String text;
+    private BeanMapper<Row, Bean> mapper;
+
+    @Setup
+    public void setup() {
+        setter = new BeanSetter();
+        converterSetter = BeanSetter.newBuilder()
+            .addTypeConverter(String.class, int.class, Integer::parseInt)
+            .build();
+        metricsSetter = BeanSetter.newBuilder()
+            .setMetrics(new BeanMetricsRecorder())
+            .build();
+        bean = new Bean();
+
+        direct = new HashMap<>();
+        direct.put("name", "fred");
+        direct.put("count", 42);
+        direct.put("date", LocalDate.of(2018, 9, 1));
+        direct.put("amount", new BigDecimal("1.50"));
+
+        textInt = new HashMap<>();
+        textInt.put("count", "42");
+
+        textDate = new HashMap<>();
+        textDate.put("date", "2018-09-01");
+
+        valueOf = new HashMap<>();
+        valueOf.put("code", "A42");
+
+        parse = new HashMap<>();
+        parse.put("stamp", "1535760000000");
+
+        constructor = new HashMap<>();
+        constructor.put("amount", "1.50");
+
+        // Rows sharing the key instances of a header, like a CSV import
+        String[] header = { "name", "count", "date" };
+        records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> record = new HashMap<>();
+            record.put(header[0], "fred");
+            record.put(header[1], String.valueOf(i));
+            record.put(header[2], "2018-09-01");
+            records.add(record);
+        }
+
+        binder = setter.newBinder(Bean.class, header);
+        row = new CharSequence[] { "fred", "42", "2018-09-01" };
+
+        source = new BeanFactory().createBean(Row.class);
+        source.setName("fred");
+        source.setCount("42");
+        source.setDate("2018-09-01");
+        mapper = setter.newMapper(Row.class, Bean.class);
+
+        textBinder = setter.newTextBinder(Bean.class);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("name=fred\ncount=").append(i).append("\ndate=2018-09-01\n\n");
+        }
+        text = sb.toString();
+    }
+
+    @Benchmark
+    public Bean setDirect() {
+        setter.setProperties(bean, direct);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertTextInt() {
+        setter.setProperties(bean, textInt);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertTextIntMetrics() {
+        metricsSetter.setProperties(bean, textInt);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertTextDate() {
+        setter.setProperties(bean, textDate);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertValueOf() {
+        setter.setProperties(bean, valueOf);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertValueOfMetrics() {
+        metricsSetter.setProperties(bean, valueOf);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertParse() {
+        setter.setProperties(bean, parse);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertConstructor() {
+        setter.setProperties(bean, constructor);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean convertRegistered() {
+        converterSetter.setProperties(bean, textInt);
+        return bean;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public List<Bean> setPropertiesEach() {
+        List<Bean> beans = new ArrayList<>(records.size());
+        for (Map<String, Object> record : records) {
+            Bean bean = new Bean();
+            setter.setProperties(bean, record);
+            beans.add(bean);
+        }
+        return beans;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public List<Bean> setPropertiesAll() {
+        return setter.setPropertiesAll(Bean::new, records);
+    }
+
+    @Benchmark
+    public Bean bindRow() {
+        binder.bind(bean, row);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean copyThroughMap() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", source.getName());
+        properties.put("count", source.getCount());
+        properties.put("date", source.getDate());
+        setter.setProperties(bean, properties);
+        return bean;
+    }
+
+    @Benchmark
+    public Bean copyMapper() {
+        mapper.copy(source, bean);
+        return bean;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public long bindText() {
+        return textBinder.bindAll(text, Bean::new, b -> { });
+    }
+}
@@ -0,0 +1,81 @@
+package org.korz.beanmagic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans records held in a direct buffer through one view, against the same records held as beans.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeanViewBenchmark {
+    private static final int RECORDS = 100_000;
+
+    public interface PriceBean {
+        long getId();
+        void setId(long id);
+        double getPrice();
+        void setPrice(double price);
+        int getQuantity();
+        void setQuantity(int quantity);
+    }
+
+    private BeanView<PriceBean> view;
+    private List<PriceBean> beans;
+
+    @Setup
+    public void setup() {
+        BeanFactory factory = new BeanFactory();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(factory.getRecordSize(PriceBean.class) * RECORDS);
+        view = factory.createView(PriceBean.class, buffer);
+        beans = new ArrayList<>();
+        BeanFactory generated = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        for (int i = 0; i < RECORDS; i++) {
+            fill(view.moveToRecord(i), i);
+            beans.add(fill(generated.createBean(PriceBean.class), i));
+        }
+    }
+
+    private static PriceBean fill(PriceBean bean, int i) {
+        bean.setId(i);
+        bean.setPrice(i * 0.5);
+        bean.setQuantity(i % 100);
+        return bean;
+    }
+
+    @Benchmark
+    public double scanView() {
+        double total = 0;
+        for (int i = 0; i < RECORDS; i++) {
+            PriceBean bean = view.moveToRecord(i);
+            total += bean.getPrice() * bean.getQuantity();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double scanBeans() {
+        double total = 0;
+        for (PriceBean bean : beans) {
+            total += bean.getPrice() * bean.getQuantity();
+        }
+        return total;
+    }
+}
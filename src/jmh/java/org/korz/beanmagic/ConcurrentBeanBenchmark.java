@@ -0,0 +1,65 @@
+package org.korz.beanmagic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single concurrent bean shared by all benchmark threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ConcurrentBeanBenchmark {
+    public interface CounterBean {
+        long getCount();
+        void setCount(long count);
+        boolean compareAndSetCount(long expect, long update);
+        String getOwner();
+        void setOwner(String owner);
+    }
+
+    private CounterBean bean;
+
+    @Setup
+    public void setup() {
+        bean = BeanFactory.newBuilder()
+            .setConcurrent(true)
+            .build()
+            .createBean(CounterBean.class);
+        bean.setOwner("fred");
+    }
+
+    @Benchmark
+    public String read() {
+        return bean.getOwner();
+    }
+
+    @Benchmark
+    public void write() {
+        bean.setOwner("zed");
+    }
+
+    @Benchmark
+    public long increment() {
+        long count;
+        do {
+            count = bean.getCount();
+        } while (!bean.compareAndSetCount(count, count + 1));
+        return count;
+    }
+}
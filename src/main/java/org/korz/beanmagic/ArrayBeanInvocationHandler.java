@@ -0,0 +1,202 @@
+package org.korz.beanmagic;
+
+import java.util.Arrays;
+
+/**
+ * Stores property values in plain arrays, primitives unboxed. Not thread safe.
+ * Arrays shared with a frozen bean are copied before they are first written.
+ */
+class ArrayBeanInvocationHandler extends BeanInvocationHandler {
+    private static final Object[] NO_REFERENCES = {};
+    private static final long[] NO_LONGS = {};
+    private static final double[] NO_DOUBLES = {};
+
+    private static final int REFERENCES = 1;
+    private static final int INTEGRALS = 2;
+    private static final int FLOATINGS = 4;
+    private static final int BITS = 8;
+    private static final int ALL = REFERENCES | INTEGRALS | FLOATINGS | BITS;
+
+    private Object[] references;
+    private long[] integrals;
+    private double[] floatings;
+    // Which slots have been set, followed by the values of boolean properties
+    private long[] bits;
+    private final int booleanOffset;
+    // Which arrays are shared with a frozen bean
+    private int shared;
+
+    public ArrayBeanInvocationHandler(BeanLayout layout) {
+        super(layout);
+        int references = layout.getCount(BeanLayout.Storage.REFERENCE);
+        int integrals = layout.getCount(BeanLayout.Storage.INTEGRAL);
+        int floatings = layout.getCount(BeanLayout.Storage.FLOATING);
+        int booleans = layout.getCount(BeanLayout.Storage.BOOLEAN);
+        this.references = references > 0 ? new Object[references] : NO_REFERENCES;
+        this.integrals = integrals > 0 ? new long[integrals] : NO_LONGS;
+        this.floatings = floatings > 0 ? new double[floatings] : NO_DOUBLES;
+        this.booleanOffset = words(layout.getPropertyCount());
+        int bits = booleanOffset + words(booleans);
+        this.bits = bits > 0 ? new long[bits] : NO_LONGS;
+    }
+
+    ArrayBeanInvocationHandler(BeanLayout layout, Object[] references, long[] integrals, double[] floatings,
+                               long[] bits) {
+        super(layout);
+        this.references = references;
+        this.integrals = integrals;
+        this.floatings = floatings;
+        this.bits = bits;
+        this.booleanOffset = words(layout.getPropertyCount());
+        this.shared = ALL;
+    }
+
+    /**
+     * Returns an immutable copy, which shares the arrays of this bean until it is next written.
+     */
+    FrozenBeanInvocationHandler freeze() {
+        shared = ALL;
+        return new FrozenBeanInvocationHandler(getLayout(), references, integrals, floatings, bits);
+    }
+
+    @Override // BeanInvocationHandler
+    void reset() {
+        if (shared != 0) {
+            // The frozen bean keeps its arrays, new ones are no bigger than copies would be
+            references = references.length > 0 ? new Object[references.length] : NO_REFERENCES;
+            integrals = integrals.length > 0 ? new long[integrals.length] : NO_LONGS;
+            floatings = floatings.length > 0 ? new double[floatings.length] : NO_DOUBLES;
+            bits = bits.length > 0 ? new long[bits.length] : NO_LONGS;
+            shared = 0;
+        } else {
+            Arrays.fill(references, null);
+            Arrays.fill(integrals, 0);
+            Arrays.fill(floatings, 0);
+            Arrays.fill(bits, 0);
+        }
+    }
+
+    // Copies an array if it is shared, before writing to it
+    private void unshare(int array) {
+        if ((shared & array) == 0) {
+            return;
+        }
+        switch (array) {
+            case REFERENCES:
+                references = references.clone();
+                break;
+            case INTEGRALS:
+                integrals = integrals.clone();
+                break;
+            case FLOATINGS:
+                floatings = floatings.clone();
+                break;
+            default:
+                bits = bits.clone();
+                break;
+        }
+        shared &= ~array;
+    }
+
+    static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean isSet(int slot) {
+        return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void markSet(int slot) {
+        unshare(BITS);
+        bits[slot >>> 6] |= 1L << slot;
+    }
+
+    @Override // BeanInvocationHandler
+    Object getReference(int index) {
+        return references[index];
+    }
+
+    @Override // BeanInvocationHandler
+    long getIntegral(int index) {
+        return integrals[index];
+    }
+
+    @Override // BeanInvocationHandler
+    double getFloating(int index) {
+        return floatings[index];
+    }
+
+    @Override // BeanInvocationHandler
+    boolean getBoolean(int index) {
+        return (bits[booleanOffset + (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    @Override // BeanInvocationHandler
+    void setReference(int slot, int index, Object value) {
+        unshare(REFERENCES);
+        references[index] = value;
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setIntegral(int slot, int index, long value) {
+        unshare(INTEGRALS);
+        integrals[index] = value;
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setFloating(int slot, int index, double value) {
+        unshare(FLOATINGS);
+        floatings[index] = value;
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setBoolean(int slot, int index, boolean value) {
+        unshare(BITS);
+        if (value) {
+            bits[booleanOffset + (index >>> 6)] |= 1L << index;
+        } else {
+            bits[booleanOffset + (index >>> 6)] &= ~(1L << index);
+        }
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetReference(int slot, int index, Object expect, Object update) {
+        if (references[index] != expect) {
+            return false;
+        }
+        setReference(slot, index, update);
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetIntegral(int slot, int index, long expect, long update) {
+        if (integrals[index] != expect) {
+            return false;
+        }
+        setIntegral(slot, index, update);
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetFloating(int slot, int index, double expect, double update) {
+        if (Double.doubleToRawLongBits(floatings[index]) != Double.doubleToRawLongBits(expect)) {
+            return false;
+        }
+        setFloating(slot, index, update);
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetBoolean(int slot, int index, boolean expect, boolean update) {
+        if (getBoolean(index) != expect) {
+            return false;
+        }
+        setBoolean(slot, index, update);
+        return true;
+    }
+}
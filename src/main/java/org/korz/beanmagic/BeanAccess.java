@@ -0,0 +1,41 @@
+package org.korz.beanmagic;
+
+/**
+ * Reads and writes the properties of beans that are instances of a class rather than proxies, by slot.
+ * Values are boxed as their getters would return them.
+ */
+interface BeanAccess {
+    BeanLayout getLayout();
+
+    /**
+     * Returns the class of the beans.
+     */
+    Class<?> getBeanClass();
+
+    boolean isSet(Object bean, int slot);
+
+    Object get(Object bean, int slot);
+
+    void set(Object bean, int slot, Object value);
+
+    /**
+     * Unsets every property, as if the bean was just created.
+     *
+     * @throws UnsupportedOperationException if the bean cannot be reset
+     */
+    void reset(Object bean);
+
+    /**
+     * Returns the access to a bean that is not a proxy, or null if the bean was not created by a {@link BeanFactory}.
+     */
+    static BeanAccess forBean(Object bean) {
+        BeanAccess access = GeneratedBeanClass.forBean(bean);
+        if (access == null) {
+            access = GeneratedBufferBeanClass.forBean(bean);
+        }
+        if (access == null) {
+            access = CompiledBeanClass.forBean(bean);
+        }
+        return access;
+    }
+}
@@ -0,0 +1,117 @@
+package org.korz.beanmagic;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sets properties of beans from rows of values by position, prepared by {@link BeanSetter#newBinder}.
+ * Setters are resolved once per column, and conversions once per column and class of value,
+ * so binding a row does not allocate apart from converted values.
+ * Binders are thread safe.
+ */
+public class BeanBinder<T> {
+    private final BeanSetter beanSetter;
+    private final Class<T> beanClass;
+    private final String[] columns;
+    private final PropertySetter[] setters;
+    // Conversions from String, or null if the setter takes text as is
+    private final Converter[] textConverters;
+    // The last conversion of each column for rows of objects, starting with the conversion from String
+    private final AtomicReferenceArray<Converter> objectConverters;
+
+    BeanBinder(BeanSetter beanSetter, Class<T> beanClass, BeanPlan plan, List<String> columns) {
+        this.beanSetter = beanSetter;
+        this.beanClass = beanClass;
+        this.columns = columns.toArray(new String[0]);
+        this.setters = new PropertySetter[this.columns.length];
+        this.textConverters = new Converter[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            String column = this.columns[i];
+            if (column == null) {
+                throw new NullPointerException("column " + i + " is null");
+            }
+            PropertySetter setter = plan.getSetter(column);
+            if (setter == null) {
+                beanSetter.missingSetter(plan, column);
+                continue;
+            }
+            setters[i] = setter;
+            if (!setter.getBoxedType().isAssignableFrom(String.class)) {
+                textConverters[i] = beanSetter.getConverter(String.class, setter.getBoxedType());
+            }
+        }
+        this.objectConverters = new AtomicReferenceArray<>(textConverters);
+    }
+
+    public Class<T> getBeanClass() {
+        return beanClass;
+    }
+
+    /**
+     * Sets the property of each column to the value at the same position.
+     */
+    public void bind(T bean, Object[] row) {
+        checkRow(bean, row);
+        for (int i = 0; i < setters.length; i++) {
+            PropertySetter setter = setters[i];
+            if (setter == null) {
+                continue;
+            }
+            Object value = row[i];
+            if (value == null || setter.accepts(value)) {
+                beanSetter.setProperty(bean, setter, columns[i], value);
+            } else {
+                beanSetter.setProperty(bean, setter, columns[i], value, objectConverter(i, value.getClass()));
+            }
+        }
+        beanSetter.bound(bean);
+    }
+
+    private Converter objectConverter(int i, Class<?> valueClass) {
+        Converter converter = objectConverters.get(i);
+        if (converter == null || converter.getIn() != valueClass) {
+            converter = beanSetter.getConverter(valueClass, setters[i].getBoxedType());
+            objectConverters.set(i, converter);
+        }
+        return converter;
+    }
+
+    /**
+     * Sets the property of each column to the value at the same position, converting text as needed.
+     */
+    public void bind(T bean, CharSequence[] row) {
+        checkRow(bean, row);
+        for (int i = 0; i < setters.length; i++) {
+            PropertySetter setter = setters[i];
+            if (setter == null) {
+                continue;
+            }
+            CharSequence value = row[i];
+            if (value == null || setter.accepts(value)) {
+                beanSetter.setProperty(bean, setter, columns[i], value);
+            } else if (textConverters[i] != null && textConverters[i].getStrategy() == ConversionStrategy.TEXT) {
+                // Parsed directly, without creating a String
+                beanSetter.setProperty(bean, setter, columns[i], value, textConverters[i]);
+            } else {
+                beanSetter.setProperty(bean, setter, columns[i], value.toString(), textConverters[i]);
+            }
+        }
+        beanSetter.bound(bean);
+    }
+
+    private void checkRow(T bean, Object[] row) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (row == null) {
+            throw new NullPointerException("row is null");
+        }
+        if (!beanClass.isInstance(bean)) {
+            throw new IllegalArgumentException("bean is not a " + beanClass.getName());
+        }
+        if (row.length != columns.length) {
+            throw new IllegalArgumentException(
+                "row has " + row.length + " values, expected " + columns.length);
+        }
+    }
+}
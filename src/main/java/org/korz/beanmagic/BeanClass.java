@@ -0,0 +1,23 @@
+package org.korz.beanmagic;
+
+/**
+ * Creates beans implementing a bean interface.
+ */
+abstract class BeanClass {
+    private final BeanLayout layout;
+
+    protected BeanClass(BeanLayout layout) {
+        this.layout = layout;
+    }
+
+    public BeanLayout getLayout() {
+        return layout;
+    }
+
+    public abstract Object newInstance();
+
+    /**
+     * Checks if a bean was created by this class.
+     */
+    public abstract boolean isInstance(Object bean);
+}
@@ -0,0 +1,659 @@
+package org.korz.beanmagic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes beans created by {@link BeanFactory} in a compact binary format, prepared by {@link BeanFactory#newCodec}.
+ * <p>
+ * A bean is a bitmap of the properties that are set, one bit each, followed by the value of each property that is set.
+ * Properties are in order of their names, so the format does not depend on the order of methods in the interface.
+ * <ul>
+ * <li>int, long and short: a zig-zag varint, char: a varint, byte and boolean: a byte
+ * <li>float and double: IEEE 754, big-endian
+ * <li>String and byte[]: a varint of the length + 1, or 0 for null, then the UTF-8 or raw bytes
+ * <li>enums: a varint of the ordinal + 1, or 0 for null
+ * <li>boxed primitives and nested beans: a byte of 0 for null, or 1 followed by the value
+ * </ul>
+ * Collections are a varint of the count followed by each bean.
+ * There is no header, so both sides must use the same interface. Codecs are thread safe.
+ */
+public class BeanCodec<T> {
+    private static final Map<Class<?>, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        for (Class<?> type : Arrays.asList(boolean.class, byte.class, short.class, int.class, long.class,
+                                           char.class, float.class, double.class)) {
+            PRIMITIVES.put(BeanSetter.toBoxedType(type), type);
+        }
+    }
+
+    private final BeanFactory factory;
+    private final Class<T> beanInterface;
+    private final BeanLayout layout;
+    // In order of name
+    private final Property[] properties;
+    private final int bitmapSize;
+    private volatile BeanAccess access;
+
+    BeanCodec(BeanFactory factory, Class<T> beanInterface) {
+        this.factory = factory;
+        this.beanInterface = beanInterface;
+        this.layout = BeanLayout.of(beanInterface);
+        Property[] properties = new Property[layout.getPropertyCount()];
+        for (int slot = 0; slot < properties.length; slot++) {
+            properties[slot] = new Property(this, slot);
+        }
+        Arrays.sort(properties, Comparator.comparing(property -> layout.getPropertyName(property.slot)));
+        this.properties = properties;
+        this.bitmapSize = (properties.length + 7) / 8;
+    }
+
+    public Class<T> getBeanInterface() {
+        return beanInterface;
+    }
+
+    /**
+     * Encodes a bean to a buffer from its position.
+     *
+     * @throws BufferOverflowException if the buffer is full, its position is then unchanged
+     * @throws IllegalArgumentException if the bean was not created by a {@code BeanFactory}
+     */
+    public void encode(T bean, ByteBuffer buffer) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int position = buffer.position();
+        try {
+            write(new BinaryOutput.Buffer(buffer), bean);
+        } catch (RuntimeException e) {
+            buffer.position(position);
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes a bean to a stream, without flushing it.
+     *
+     * @throws IllegalArgumentException if the bean was not created by a {@code BeanFactory}
+     */
+    public void encode(T bean, OutputStream out) throws IOException {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        BinaryOutput.Stream stream = new BinaryOutput.Stream(out);
+        write(stream, bean);
+        stream.flush();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bean was not created by a {@code BeanFactory}
+     */
+    public byte[] encode(T bean) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            encode(bean, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes the count of the beans followed by each bean to a buffer from its position.
+     *
+     * @throws BufferOverflowException if the buffer is full, its position is then unchanged
+     * @throws IllegalArgumentException if a bean was not created by a {@code BeanFactory}
+     */
+    public void encodeAll(Collection<? extends T> beans, ByteBuffer buffer) {
+        if (beans == null) {
+            throw new NullPointerException("beans is null");
+        }
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int position = buffer.position();
+        try {
+            writeAll(new BinaryOutput.Buffer(buffer), beans);
+        } catch (RuntimeException e) {
+            buffer.position(position);
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes the count of the beans followed by each bean to a stream, without flushing it.
+     *
+     * @throws IllegalArgumentException if a bean was not created by a {@code BeanFactory}
+     */
+    public void encodeAll(Collection<? extends T> beans, OutputStream out) throws IOException {
+        if (beans == null) {
+            throw new NullPointerException("beans is null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        BinaryOutput.Stream stream = new BinaryOutput.Stream(out);
+        writeAll(stream, beans);
+        stream.flush();
+    }
+
+    /**
+     * Decodes a bean from a buffer from its position.
+     *
+     * @throws BufferUnderflowException if the buffer ends within the bean, its position is then unchanged
+     * @throws IllegalArgumentException if the bytes are not a bean
+     */
+    public T decode(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int position = buffer.position();
+        try {
+            return read(new BinaryInput.Buffer(buffer));
+        } catch (RuntimeException e) {
+            buffer.position(position);
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes a bean from a stream, reading no further than the end of the bean.
+     * Streams are read a byte at a time, so should be buffered.
+     *
+     * @throws java.io.EOFException if the stream ends within the bean
+     * @throws IllegalArgumentException if the bytes are not a bean
+     */
+    public T decode(InputStream in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        return read(new BinaryInput.Stream(in));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a bean
+     */
+    public T decode(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            return decode(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated bean", e);
+        }
+    }
+
+    /**
+     * Decodes beans written by {@link #encodeAll(Collection, ByteBuffer)}.
+     *
+     * @throws BufferUnderflowException if the buffer ends within the beans, its position is then unchanged
+     * @throws IllegalArgumentException if the bytes are not beans
+     */
+    public List<T> decodeAll(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        int position = buffer.position();
+        try {
+            return readAll(new BinaryInput.Buffer(buffer));
+        } catch (RuntimeException e) {
+            buffer.position(position);
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Decodes beans written by {@link #encodeAll(Collection, OutputStream)}.
+     * Streams are read a byte at a time, so should be buffered.
+     *
+     * @throws java.io.EOFException if the stream ends within the beans
+     * @throws IllegalArgumentException if the bytes are not beans
+     */
+    public List<T> decodeAll(InputStream in) throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        return readAll(new BinaryInput.Stream(in));
+    }
+
+    private void writeAll(BinaryOutput out, Collection<? extends T> beans) throws IOException {
+        out.writeVarint(beans.size());
+        int count = 0;
+        for (T bean : beans) {
+            if (bean == null) {
+                throw new NullPointerException("bean is null");
+            }
+            write(out, bean);
+            count++;
+        }
+        if (count != beans.size()) {
+            throw new IllegalArgumentException("beans changed size while encoding");
+        }
+    }
+
+    private List<T> readAll(BinaryInput in) throws IOException {
+        int count = in.readLength();
+        // The count is not trusted to size the list
+        List<T> beans = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            beans.add(read(in));
+        }
+        return beans;
+    }
+
+    void write(BinaryOutput out, Object bean) throws IOException {
+        Object source = sourceOf(bean);
+        for (int i = 0; i < bitmapSize; i++) {
+            int bits = 0;
+            for (int j = i * 8; j < Math.min(i * 8 + 8, properties.length); j++) {
+                if (isSet(source, bean, properties[j].slot)) {
+                    bits |= 1 << (j & 7);
+                }
+            }
+            out.writeByte(bits);
+        }
+        for (Property property : properties) {
+            if (!isSet(source, bean, property.slot)) {
+                continue;
+            }
+            if (source instanceof BeanInvocationHandler) {
+                property.write(out, (BeanInvocationHandler) source);
+            } else {
+                property.write(out, get(source, bean, property.slot));
+            }
+        }
+    }
+
+    T read(BinaryInput in) throws IOException {
+        byte[] bitmap = new byte[bitmapSize];
+        in.readFully(bitmap, 0, bitmapSize);
+        int unused = properties.length % 8;
+        if (unused != 0 && (bitmap[bitmapSize - 1] & 0xff) >>> unused != 0) {
+            throw new IllegalArgumentException("Malformed bean: unknown properties are set");
+        }
+        T bean = factory.createBean(beanInterface);
+        Object target = sourceOf(bean);
+        for (int i = 0; i < properties.length; i++) {
+            if ((bitmap[i >>> 3] & 1 << (i & 7)) == 0) {
+                continue;
+            }
+            Property property = properties[i];
+            if (target instanceof BeanInvocationHandler) {
+                property.read(in, (BeanInvocationHandler) target);
+            } else {
+                ((BeanAccess) target).set(bean, property.slot, property.read(in));
+            }
+        }
+        return bean;
+    }
+
+    // The handler of a proxy bean, or the access to any other bean
+    private Object sourceOf(Object bean) {
+        Class<?> beanClass = bean.getClass();
+        if (Proxy.isProxyClass(beanClass)) {
+            InvocationHandler handler = Proxy.getInvocationHandler(bean);
+            if (handler instanceof BeanInvocationHandler &&
+                ((BeanInvocationHandler) handler).getLayout() == layout) {
+                return handler;
+            }
+        } else {
+            BeanAccess access = this.access;
+            if (access != null && access.getBeanClass() == beanClass) {
+                return access;
+            }
+            access = BeanAccess.forBean(bean);
+            if (access != null && access.getLayout() == layout) {
+                this.access = access;
+                return access;
+            }
+        }
+        throw new IllegalArgumentException("Not a bean of " + beanInterface.getName() + ": " + beanClass.getName());
+    }
+
+    private static boolean isSet(Object source, Object bean, int slot) {
+        if (source instanceof BeanInvocationHandler) {
+            return ((BeanInvocationHandler) source).isSet(slot);
+        }
+        return ((BeanAccess) source).isSet(bean, slot);
+    }
+
+    private static Object get(Object source, Object bean, int slot) {
+        return ((BeanAccess) source).get(bean, slot);
+    }
+
+    private enum Kind {
+        ZIGZAG,
+        CHAR,
+        BYTE,
+        BOOLEAN,
+        FLOAT,
+        DOUBLE,
+        STRING,
+        BYTES,
+        ENUM,
+        BOXED,
+        BEAN;
+
+        static Kind of(Class<?> type) {
+            if (type == int.class || type == long.class || type == short.class) {
+                return ZIGZAG;
+            } else if (type == char.class) {
+                return CHAR;
+            } else if (type == byte.class) {
+                return BYTE;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == float.class) {
+                return FLOAT;
+            } else if (type == double.class) {
+                return DOUBLE;
+            } else if (type == String.class) {
+                return STRING;
+            } else if (type == byte[].class) {
+                return BYTES;
+            } else if (type.isEnum()) {
+                return ENUM;
+            } else if (PRIMITIVES.containsKey(type)) {
+                return BOXED;
+            } else if (type.isInterface()) {
+                return BEAN;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * How a property is encoded, primitives are read from and written to handlers without boxing.
+     */
+    private static class Property {
+        final BeanCodec<?> codec;
+        final int slot;
+        final int index;
+        final Class<?> type;
+        final Kind kind;
+        // For boxed properties, the primitive type and its kind
+        final Class<?> primitiveType;
+        final Kind primitiveKind;
+        // For enums
+        final Object[] constants;
+        private volatile BeanCodec<?> nested;
+
+        Property(BeanCodec<?> codec, int slot) {
+            this.codec = codec;
+            this.slot = slot;
+            this.index = codec.layout.getIndex(slot);
+            this.type = codec.layout.getPropertyType(slot);
+            this.kind = type != null ? Kind.of(type) : null;
+            if (kind == null) {
+                throw new IllegalArgumentException(
+                    "Property \"" + codec.layout.getPropertyName(slot) + "\" of " + codec.beanInterface.getName() +
+                        " cannot be encoded: " + (type != null ? type.getName() : "inconsistent type"));
+            }
+            this.primitiveType = kind == Kind.BOXED ? PRIMITIVES.get(type) : type;
+            this.primitiveKind = Kind.of(primitiveType);
+            this.constants = kind == Kind.ENUM ? type.getEnumConstants() : null;
+            if (kind == Kind.BEAN) {
+                // Fails now if the interface is not a bean, the codec is created on first use as beans may nest
+                codec.factory.prepare(type);
+            }
+        }
+
+        private BeanCodec<?> nested() {
+            BeanCodec<?> nestedCodec = nested;
+            if (nestedCodec == null) {
+                nestedCodec = type == codec.beanInterface ? codec : codec.factory.newCodec(type);
+                nested = nestedCodec;
+            }
+            return nestedCodec;
+        }
+
+        void write(BinaryOutput out, BeanInvocationHandler handler) throws IOException {
+            switch (codec.layout.getStorage(slot)) {
+                case INTEGRAL:
+                    writeIntegral(out, primitiveKind, handler.getIntegral(index));
+                    break;
+                case FLOATING:
+                    writeFloating(out, primitiveKind, handler.getFloating(index));
+                    break;
+                case BOOLEAN:
+                    out.writeByte(handler.getBoolean(index) ? 1 : 0);
+                    break;
+                default:
+                    writeReference(out, handler.getReference(index));
+                    break;
+            }
+        }
+
+        void write(BinaryOutput out, Object value) throws IOException {
+            if (type.isPrimitive()) {
+                writePrimitive(out, value);
+            } else {
+                writeReference(out, value);
+            }
+        }
+
+        private void writePrimitive(BinaryOutput out, Object value) throws IOException {
+            switch (primitiveKind) {
+                case BOOLEAN:
+                    out.writeByte((Boolean) value ? 1 : 0);
+                    break;
+                case FLOAT:
+                case DOUBLE:
+                    writeFloating(out, primitiveKind, ((Number) value).doubleValue());
+                    break;
+                default:
+                    long integral = value instanceof Character ? (Character) value : ((Number) value).longValue();
+                    writeIntegral(out, primitiveKind, integral);
+                    break;
+            }
+        }
+
+        private void writeReference(BinaryOutput out, Object value) throws IOException {
+            switch (kind) {
+                case STRING:
+                    writeBytes(out, value != null ? ((String) value).getBytes(StandardCharsets.UTF_8) : null);
+                    break;
+                case BYTES:
+                    writeBytes(out, (byte[]) value);
+                    break;
+                case ENUM:
+                    out.writeVarint(value != null ? ((Enum<?>) value).ordinal() + 1 : 0);
+                    break;
+                case BOXED:
+                    out.writeByte(value != null ? 1 : 0);
+                    if (value != null) {
+                        writePrimitive(out, value);
+                    }
+                    break;
+                default:
+                    out.writeByte(value != null ? 1 : 0);
+                    if (value != null) {
+                        nested().write(out, value);
+                    }
+                    break;
+            }
+        }
+
+        void read(BinaryInput in, BeanInvocationHandler handler) throws IOException {
+            switch (codec.layout.getStorage(slot)) {
+                case INTEGRAL:
+                    handler.setIntegral(slot, index, readIntegral(in));
+                    break;
+                case FLOATING:
+                    handler.setFloating(slot, index, readFloating(in));
+                    break;
+                case BOOLEAN:
+                    handler.setBoolean(slot, index, readFlag(in));
+                    break;
+                default:
+                    handler.setReference(slot, index, read(in));
+                    break;
+            }
+        }
+
+        /**
+         * Reads a value boxed as its getter would return it.
+         */
+        Object read(BinaryInput in) throws IOException {
+            switch (kind) {
+                case STRING:
+                    byte[] bytes = readBytes(in);
+                    return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+                case BYTES:
+                    return readBytes(in);
+                case ENUM:
+                    int ordinal = in.readLength();
+                    if (ordinal > constants.length) {
+                        throw malformed("no constant " + (ordinal - 1));
+                    }
+                    return ordinal > 0 ? constants[ordinal - 1] : null;
+                case BOXED:
+                    return readFlag(in) ? readPrimitive(in) : null;
+                case BEAN:
+                    return readFlag(in) ? nested().read(in) : null;
+                default:
+                    return readPrimitive(in);
+            }
+        }
+
+        private Object readPrimitive(BinaryInput in) throws IOException {
+            switch (primitiveKind) {
+                case BOOLEAN:
+                    return readFlag(in);
+                case FLOAT:
+                    return (float) readFloating(in);
+                case DOUBLE:
+                    return readFloating(in);
+                default:
+                    long integral = readIntegral(in);
+                    if (primitiveType == int.class) {
+                        return (int) integral;
+                    } else if (primitiveType == long.class) {
+                        return integral;
+                    } else if (primitiveType == short.class) {
+                        return (short) integral;
+                    } else if (primitiveType == byte.class) {
+                        return (byte) integral;
+                    } else {
+                        return (char) integral;
+                    }
+            }
+        }
+
+        private long readIntegral(BinaryInput in) throws IOException {
+            switch (primitiveKind) {
+                case BYTE:
+                    return (byte) in.readByte();
+                case CHAR:
+                    long c = in.readVarint();
+                    if (c != (char) c) {
+                        throw malformed("out of range");
+                    }
+                    return c;
+                default:
+                    long value = in.readZigZag();
+                    if ((primitiveType == int.class && value != (int) value) ||
+                        (primitiveType == short.class && value != (short) value)) {
+                        throw malformed("out of range");
+                    }
+                    return value;
+            }
+        }
+
+        private double readFloating(BinaryInput in) throws IOException {
+            if (primitiveKind == Kind.FLOAT) {
+                return Float.intBitsToFloat(in.readInt());
+            }
+            return Double.longBitsToDouble(in.readLong());
+        }
+
+        // A byte of 0 or 1
+        private boolean readFlag(BinaryInput in) throws IOException {
+            int b = in.readByte();
+            if (b > 1) {
+                throw malformed("not 0 or 1");
+            }
+            return b == 1;
+        }
+
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException(
+                "Malformed value of property \"" + codec.layout.getPropertyName(slot) + "\": " + reason);
+        }
+    }
+
+    private static void writeIntegral(BinaryOutput out, Kind kind, long value) throws IOException {
+        switch (kind) {
+            case BYTE:
+                out.writeByte((int) value);
+                break;
+            case CHAR:
+                out.writeVarint(value);
+                break;
+            default:
+                out.writeZigZag(value);
+                break;
+        }
+    }
+
+    private static void writeFloating(BinaryOutput out, Kind kind, double value) throws IOException {
+        if (kind == Kind.FLOAT) {
+            out.writeInt(Float.floatToRawIntBits((float) value));
+        } else {
+            out.writeLong(Double.doubleToRawLongBits(value));
+        }
+    }
+
+    private static void writeBytes(BinaryOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeVarint(0);
+            return;
+        }
+        out.writeVarint(bytes.length + 1L);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] readBytes(BinaryInput in) throws IOException {
+        int length = in.readLength();
+        if (length == 0) {
+            return null;
+        }
+        in.checkAvailable(length - 1);
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes, 0, bytes.length);
+        return bytes;
+    }
+}
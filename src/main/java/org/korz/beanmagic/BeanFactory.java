@@ -3,12 +3,30 @@ package org.korz.beanmagic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
 
 public class BeanFactory {
     private static final Logger LOG = LoggerFactory.getLogger(BeanFactory.class);
 
     private final boolean validateInterface;
+    private final boolean generateClasses;
+    private final boolean useCompiled;
+    private final boolean concurrent;
+    private final int poolCapacity;
+    private final boolean poolDebug;
+    // Null unless metrics are enabled
+    private final BeanMetrics metrics;
+    private final ConcurrentMap<Class<?>, BeanClass> beanClasses = new ConcurrentHashMap<>();
+    // Frozen beans are always proxies, even when beanClasses are generated
+    private final ConcurrentMap<Class<?>, ProxyBeanClass> frozenClasses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, BufferBeanClass> bufferClasses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, BeanPool> pools = new ConcurrentHashMap<>();
 
     public BeanFactory() {
         this(newBuilder());
@@ -20,6 +38,12 @@ public class BeanFactory {
 
     public static class Builder {
         private boolean validateInterface = true;
+        private boolean generateClasses = false;
+        private boolean useCompiled = true;
+        private boolean concurrent = false;
+        private int poolCapacity = 0;
+        private boolean poolDebug = false;
+        private BeanMetrics metrics;
 
         private Builder() {
         }
@@ -29,28 +53,421 @@ public class BeanFactory {
             return this;
         }
 
+        /**
+         * Implement beans with classes generated for each interface instead of {@link Proxy}.
+         * Generated classes have a typed field per property and call no handler, but take longer to set up.
+         * Falls back to proxies for non-public interfaces on Java 8.
+         */
+        public Builder setGenerateClasses(boolean generateClasses) {
+            this.generateClasses = generateClasses;
+            return this;
+        }
+
+        /**
+         * Implement beans with the classes generated at compile time for interfaces annotated with
+         * {@link Precompiled} (the default), which need neither proxies nor classes generated at runtime.
+         * Concurrent beans are never compiled.
+         */
+        public Builder setUseCompiled(boolean useCompiled) {
+            this.useCompiled = useCompiled;
+            return this;
+        }
+
+        /**
+         * Create beans that can be shared between threads without locking.
+         * Every property is read and written atomically, and interfaces may declare compare-and-set accessors,
+         * e.g. {@code boolean compareAndSetCount(int expect, int update)}.
+         * Concurrent beans are always proxies.
+         */
+        public Builder setConcurrent(boolean concurrent) {
+            this.concurrent = concurrent;
+            return this;
+        }
+
+        /**
+         * Keep up to this many released beans of each interface for {@link #acquire}, or 0 (the default) to pool
+         * nothing. The pool is split between threads, so a thread may create a bean while others have some pooled.
+         */
+        public Builder setPoolCapacity(int poolCapacity) {
+            if (poolCapacity < 0) {
+                throw new IllegalArgumentException("poolCapacity must not be negative");
+            }
+            this.poolCapacity = poolCapacity;
+            return this;
+        }
+
+        /**
+         * Track pooled beans until they are released: releasing a bean twice, or one that was not acquired,
+         * throws {@link IllegalStateException}, and beans that are never released are logged as they are
+         * garbage collected. Costs a lock and an allocation per acquire, so is meant for tests.
+         */
+        public Builder setPoolDebug(boolean poolDebug) {
+            this.poolDebug = poolDebug;
+            return this;
+        }
+
+        /**
+         * Report beans created to metrics, or null (the default) to report nothing.
+         */
+        public Builder setMetrics(BeanMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         public BeanFactory build() {
+            if (generateClasses && concurrent) {
+                throw new IllegalStateException("Generated classes cannot be concurrent");
+            }
             return new BeanFactory(this);
         }
     }
 
     private BeanFactory(Builder b) {
         validateInterface = b.validateInterface;
+        generateClasses = b.generateClasses;
+        useCompiled = b.useCompiled;
+        concurrent = b.concurrent;
+        poolCapacity = b.poolCapacity;
+        poolDebug = b.poolDebug;
+        metrics = b.metrics;
     }
 
     @SuppressWarnings("unchecked")
     public <T> T createBean(Class<T> beanInterface) {
+        Object bean = getBeanClass(beanInterface).newInstance();
+        if (metrics != null) {
+            metrics.beanCreated(beanInterface);
+        }
+        return (T) bean;
+    }
+
+    /**
+     * Returns a reset bean from the pool, or creates one if the pool is empty.
+     * The bean should be passed to {@link #release} once it is no longer used.
+     *
+     * @see Builder#setPoolCapacity
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T acquire(Class<T> beanInterface) {
+        BeanPool pool = getPool(beanInterface);
+        if (pool != null) {
+            Object bean = pool.acquire();
+            if (bean != null) {
+                return (T) bean;
+            }
+        }
+        T bean = createBean(beanInterface);
+        if (pool != null) {
+            pool.created(bean);
+        }
+        return bean;
+    }
+
+    /**
+     * Resets a bean and returns it to the pool of its interface, to be returned by {@link #acquire}.
+     * The bean must not be used after it is released, as it will be reused.
+     * Beans are dropped if the pool is full or disabled.
+     *
+     * @throws IllegalArgumentException if the bean was not created by this factory
+     * @throws IllegalStateException if debugging the pool and the bean was already released
+     */
+    public void release(Object bean) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        Class<?> beanInterface = getLayout(bean).getBeanInterface();
+        BeanClass beanClass = beanClasses.get(beanInterface);
+        if (beanClass == null || !beanClass.isInstance(bean)) {
+            throw new IllegalArgumentException("Not created by this factory: " + bean.getClass().getName());
+        }
+        BeanPool pool = getPool(beanInterface);
+        if (pool != null) {
+            pool.release(bean);
+        }
+    }
+
+    // Null if pooling is disabled
+    private BeanPool getPool(Class<?> beanInterface) {
+        if (poolCapacity == 0) {
+            return null;
+        }
+        BeanPool pool = pools.get(beanInterface);
+        if (pool == null) {
+            pool = pools.computeIfAbsent(beanInterface, i -> new BeanPool(i, poolCapacity, poolDebug, this::reset));
+        }
+        return pool;
+    }
+
+    /**
+     * Unsets every property of a bean, as if it was just created.
+     *
+     * @throws IllegalArgumentException if the object was not created by a {@code BeanFactory}
+     * @throws UnsupportedOperationException if the bean is frozen or a view
+     */
+    public void reset(Object bean) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (Proxy.isProxyClass(bean.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(bean);
+            if (handler instanceof BeanInvocationHandler) {
+                ((BeanInvocationHandler) handler).reset();
+                return;
+            }
+        }
+        BeanAccess access = BeanAccess.forBean(bean);
+        if (access == null) {
+            throw new IllegalArgumentException("Not a bean: " + bean.getClass().getName());
+        }
+        access.reset(bean);
+    }
+
+    private static BeanLayout getLayout(Object bean) {
+        if (Proxy.isProxyClass(bean.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(bean);
+            if (handler instanceof BeanInvocationHandler) {
+                return ((BeanInvocationHandler) handler).getLayout();
+            }
+        }
+        BeanAccess access = BeanAccess.forBean(bean);
+        if (access == null) {
+            throw new IllegalArgumentException("Not a bean: " + bean.getClass().getName());
+        }
+        return access.getLayout();
+    }
+
+    /**
+     * Creates a codec that encodes beans of an interface in a compact binary format, and decodes them to beans
+     * created by this factory.
+     *
+     * @throws IllegalArgumentException if the interface is invalid or a property cannot be encoded
+     * @see BeanCodec
+     */
+    public <T> BeanCodec<T> newCodec(Class<T> beanInterface) {
+        prepare(beanInterface);
+        return new BeanCodec<>(this, beanInterface);
+    }
+
+    /**
+     * Creates a view of the records of a buffer, positioned at the first record.
+     * The interface may only have primitive properties, which are laid out at fixed offsets of each record.
+     * Views use generated classes where possible, even if {@link Builder#setGenerateClasses} is not set,
+     * as proxies box every value.
+     *
+     * @throws IllegalArgumentException if a property is not primitive
+     * @see #getRecordSize
+     */
+    public <T> BeanView<T> createView(Class<T> beanInterface, ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        BeanView<T> view = new BeanView<>(getBufferClass(beanInterface), buffer);
+        if (metrics != null) {
+            metrics.beanCreated(beanInterface);
+        }
+        return view;
+    }
+
+    /**
+     * Returns the number of bytes of each record of a view of the interface.
+     *
+     * @throws IllegalArgumentException if a property is not primitive
+     */
+    public int getRecordSize(Class<?> beanInterface) {
+        return getBufferClass(beanInterface).getBinaryLayout().getRecordSize();
+    }
+
+    private BufferBeanClass getBufferClass(Class<?> beanInterface) {
+        if (beanInterface == null) {
+            throw new NullPointerException("beanInterface is null");
+        }
+        BufferBeanClass bufferClass = bufferClasses.get(beanInterface);
+        if (bufferClass == null) {
+            if (!beanInterface.isInterface()) {
+                throw new IllegalArgumentException("beanInterface must be an interface");
+            }
+            bufferClass = bufferClasses.computeIfAbsent(beanInterface, this::createBufferClass);
+        }
+        return bufferClass;
+    }
+
+    private BufferBeanClass createBufferClass(Class<?> beanInterface) {
+        if (validateInterface) {
+            BeanLayout.of(beanInterface).validate();
+        }
+        BinaryLayout binaryLayout = BinaryLayout.of(beanInterface);
+        if (GeneratedBufferBeanClass.isSupported(beanInterface)) {
+            LOG.debug("Generating buffer class for interface: {}", beanInterface.getName());
+            try {
+                return GeneratedBufferBeanClass.of(beanInterface);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Falling back to buffer proxies for interface: {}", beanInterface.getName(), e);
+            }
+        }
+        LOG.debug("Creating buffer proxy class for interface: {}", beanInterface.getName());
+        return new ProxyBufferBeanClass(binaryLayout, this.getClass().getClassLoader());
+    }
+
+    /**
+     * Returns an immutable copy of a bean, or the bean itself if it is already frozen.
+     * Setters of frozen beans throw {@link UnsupportedOperationException}.
+     * Their hash code is computed once, so they are cheap to use as keys.
+     * Copying does not copy any values until the original bean is next set.
+     *
+     * @throws IllegalArgumentException if the object was not created by a {@code BeanFactory}
+     */
+    public <T> T freeze(T bean) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (isFrozen(bean)) {
+            return bean;
+        }
+        return newBean(snapshot(bean));
+    }
+
+    /**
+     * Returns an immutable copy of a bean with some properties changed.
+     * The changes are made to a mutable copy, which must not be used after they return.
+     * Properties that are not changed are shared with the original bean.
+     *
+     * @throws IllegalArgumentException if the object was not created by a {@code BeanFactory}
+     */
+    public <T> T derive(T bean, Consumer<? super T> changes) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (changes == null) {
+            throw new NullPointerException("changes is null");
+        }
+        ArrayBeanInvocationHandler copy = snapshot(bean).thaw();
+        changes.accept(newBean(copy));
+        return newBean(copy.freeze());
+    }
+
+    /**
+     * Checks if a bean was returned by {@link #freeze} or {@link #derive}.
+     */
+    public boolean isFrozen(Object bean) {
+        if (bean == null) {
+            throw new NullPointerException("bean is null");
+        }
+        if (!Proxy.isProxyClass(bean.getClass())) {
+            return false;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(bean);
+        return handler instanceof BeanInvocationHandler && ((BeanInvocationHandler) handler).isFrozen();
+    }
+
+    private FrozenBeanInvocationHandler snapshot(Object bean) {
+        if (Proxy.isProxyClass(bean.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(bean);
+            if (handler instanceof FrozenBeanInvocationHandler) {
+                return (FrozenBeanInvocationHandler) handler;
+            } else if (handler instanceof ArrayBeanInvocationHandler) {
+                return ((ArrayBeanInvocationHandler) handler).freeze();
+            } else if (handler instanceof BeanInvocationHandler) {
+                // Concurrent and buffer beans are copied one property at a time
+                BeanInvocationHandler source = (BeanInvocationHandler) handler;
+                BeanLayout layout = source.getLayout();
+                ArrayBeanInvocationHandler copy = new ArrayBeanInvocationHandler(layout);
+                for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+                    if (source.isSet(slot)) {
+                        copy.setValue(slot, source.getValue(slot));
+                    }
+                }
+                return copy.freeze();
+            }
+        }
+        BeanAccess access = BeanAccess.forBean(bean);
+        if (access == null) {
+            throw new IllegalArgumentException("Not a bean: " + bean.getClass().getName());
+        }
+        BeanLayout layout = access.getLayout();
+        ArrayBeanInvocationHandler copy = new ArrayBeanInvocationHandler(layout);
+        for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+            if (access.isSet(bean, slot)) {
+                copy.setValue(slot, access.get(bean, slot));
+            }
+        }
+        return copy.freeze();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T newBean(BeanInvocationHandler handler) {
+        return (T) getFrozenClass(handler.getLayout()).newInstance(handler);
+    }
+
+    private ProxyBeanClass getFrozenClass(BeanLayout layout) {
+        BeanClass beanClass = beanClasses.get(layout.getBeanInterface());
+        if (beanClass instanceof ProxyBeanClass) {
+            return (ProxyBeanClass) beanClass;
+        }
+        return frozenClasses.computeIfAbsent(
+            layout.getBeanInterface(), i -> new ProxyBeanClass(layout, this.getClass().getClassLoader(), false));
+    }
+
+    /**
+     * Validates bean interfaces and prepares everything needed to create their beans,
+     * so the first call to {@link #createBean} does not pay for it.
+     *
+     * @throws IllegalArgumentException if any interface is invalid
+     */
+    public void prepare(Class<?>... beanInterfaces) {
+        if (beanInterfaces == null) {
+            throw new NullPointerException("beanInterfaces is null");
+        }
+        prepare(Arrays.asList(beanInterfaces));
+    }
+
+    /**
+     * @see #prepare(Class[])
+     */
+    public void prepare(Iterable<? extends Class<?>> beanInterfaces) {
+        if (beanInterfaces == null) {
+            throw new NullPointerException("beanInterfaces is null");
+        }
+        for (Class<?> beanInterface : beanInterfaces) {
+            getBeanClass(beanInterface);
+        }
+    }
+
+    private BeanClass getBeanClass(Class<?> beanInterface) {
         if (beanInterface == null) {
             throw new NullPointerException("beanInterface is null");
         }
-        if (!beanInterface.isInterface()) {
-            throw new IllegalArgumentException("beanInterface must be an interface");
+        BeanClass beanClass = beanClasses.get(beanInterface);
+        if (beanClass == null) {
+            if (!beanInterface.isInterface()) {
+                throw new IllegalArgumentException("beanInterface must be an interface");
+            }
+            beanClass = beanClasses.computeIfAbsent(beanInterface, this::createBeanClass);
         }
+        return beanClass;
+    }
+
+    private BeanClass createBeanClass(Class<?> beanInterface) {
+        BeanLayout layout = BeanLayout.of(beanInterface);
         if (validateInterface) {
-            // TODO: validate only matching getters and setters
+            layout.validate();
+        }
+        if (useCompiled && !concurrent) {
+            CompiledBeanClass compiled = CompiledBeanClass.of(beanInterface);
+            if (compiled != null) {
+                LOG.debug("Using compiled class for interface: {}", beanInterface.getName());
+                return compiled;
+            }
+        }
+        // Generated classes do not implement compare-and-set
+        if (generateClasses && GeneratedBeanClass.isSupported(beanInterface) && !layout.hasCompareAndSet()) {
+            LOG.debug("Generating class for interface: {}", beanInterface.getName());
+            try {
+                return GeneratedBeanClass.of(beanInterface);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Falling back to proxies for interface: {}", beanInterface.getName(), e);
+            }
         }
-        return (T) Proxy.newProxyInstance(this.getClass().getClassLoader(),
-                                          new Class[] { beanInterface },
-                                          new BeanInvocationHandler(beanInterface));
+        LOG.debug("Creating proxy class for interface: {}", beanInterface.getName());
+        return new ProxyBeanClass(layout, this.getClass().getClassLoader(), concurrent);
     }
 }
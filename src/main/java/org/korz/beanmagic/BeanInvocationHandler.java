@@ -5,58 +5,205 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+/**
+ * Handles calls to proxy beans, subclasses decide how property values are stored.
+ * Properties are addressed by slot (see {@link BeanLayout}) and by index within their storage.
+ */
+abstract class BeanInvocationHandler implements InvocationHandler {
+    private final BeanLayout layout;
 
-class BeanInvocationHandler implements InvocationHandler {
-    private static final Logger LOG = LoggerFactory.getLogger(BeanInvocationHandler.class);
-
-    private final Map<String, Object> properties = new HashMap<>();
+    protected BeanInvocationHandler(BeanLayout layout) {
+        this.layout = layout;
+    }
 
-    public BeanInvocationHandler(Class<?> beanInterface) {
-        LOG.info("creating handler for interface: " + beanInterface.getName());
+    public BeanLayout getLayout() {
+        return layout;
     }
 
     @Override // InvocationHandler
     public Object invoke(Object proxy, Method method, Object[] args) {
-        String methodName = method.getName();
-        Class<?> returnType = method.getReturnType();
-        if (methodName.startsWith("get")) {
-            String propertyName = removePrefix("get", methodName);
-            return properties.get(propertyName);
-        }
-        else if (methodName.startsWith("set")) {
-            String propertyName = removePrefix("set", methodName);
-            properties.put(propertyName, args[0]);
-            return null; // void
-        }
-        else if (isBoolean(returnType) && methodName.startsWith("is")) {
-            String propertyName = removePrefix("is", methodName);
-            return properties.get(propertyName);
-        }
-        else if (methodName.equals("toString")) {
-            return properties.toString();
-        }
-        else if (methodName.equals("equals")) {
-            // If both are same proxy class, compare properties maps
-            if (proxy.getClass().equals(args[0].getClass())) {
-                BeanInvocationHandler other = (BeanInvocationHandler) Proxy.getInvocationHandler(args[0]);
-                return properties.equals(other.properties);
-            }
+        return layout.getBeanMethod(method).invoke(this, proxy, args);
+    }
+
+    abstract boolean isSet(int slot);
+
+    /**
+     * Checks if the bean is immutable, in which case its hash code is cached.
+     */
+    boolean isFrozen() {
+        return false;
+    }
+
+    /**
+     * Unsets every property, as if the bean was just created.
+     *
+     * @throws UnsupportedOperationException if the bean cannot be reset
+     */
+    abstract void reset();
+
+    abstract Object getReference(int index);
+
+    abstract long getIntegral(int index);
+
+    abstract double getFloating(int index);
+
+    abstract boolean getBoolean(int index);
+
+    abstract void setReference(int slot, int index, Object value);
+
+    abstract void setIntegral(int slot, int index, long value);
+
+    abstract void setFloating(int slot, int index, double value);
+
+    abstract void setBoolean(int slot, int index, boolean value);
+
+    /**
+     * Sets a reference if it is currently the expected instance, an unset property is null.
+     */
+    abstract boolean compareAndSetReference(int slot, int index, Object expect, Object update);
+
+    abstract boolean compareAndSetIntegral(int slot, int index, long expect, long update);
+
+    abstract boolean compareAndSetFloating(int slot, int index, double expect, double update);
+
+    abstract boolean compareAndSetBoolean(int slot, int index, boolean expect, boolean update);
+
+    /**
+     * Returns the value of a property, boxed as its getter would.
+     */
+    Object getValue(int slot) {
+        int index = layout.getIndex(slot);
+        Class<?> type = layout.getPropertyType(slot);
+        switch (layout.getStorage(slot)) {
+            case INTEGRAL:
+                long integral = getIntegral(index);
+                if (type == int.class) {
+                    return (int) integral;
+                } else if (type == long.class) {
+                    return integral;
+                } else if (type == short.class) {
+                    return (short) integral;
+                } else if (type == byte.class) {
+                    return (byte) integral;
+                } else {
+                    return (char) integral;
+                }
+            case FLOATING:
+                return type == float.class ? (Object) (float) getFloating(index) : (Object) getFloating(index);
+            case BOOLEAN:
+                return getBoolean(index);
+            default:
+                return getReference(index);
+        }
+    }
+
+    /**
+     * Sets a property from a value boxed as its getter would return it.
+     */
+    void setValue(int slot, Object value) {
+        int index = layout.getIndex(slot);
+        switch (layout.getStorage(slot)) {
+            case INTEGRAL:
+                long integral = value instanceof Character ? (Character) value : ((Number) value).longValue();
+                setIntegral(slot, index, integral);
+                break;
+            case FLOATING:
+                setFloating(slot, index, ((Number) value).doubleValue());
+                break;
+            case BOOLEAN:
+                setBoolean(slot, index, (Boolean) value);
+                break;
+            default:
+                setReference(slot, index, value);
+                break;
+        }
+    }
+
+    // Same as getValue(slot).hashCode(), without boxing
+    private int hashValue(int slot) {
+        int index = layout.getIndex(slot);
+        Class<?> type = layout.getPropertyType(slot);
+        switch (layout.getStorage(slot)) {
+            case INTEGRAL:
+                return type == long.class ? Long.hashCode(getIntegral(index)) : (int) getIntegral(index);
+            case FLOATING:
+                return type == float.class ? Float.hashCode((float) getFloating(index))
+                                           : Double.hashCode(getFloating(index));
+            case BOOLEAN:
+                return Boolean.hashCode(getBoolean(index));
+            default:
+                return Objects.hashCode(getReference(index));
+        }
+    }
+
+    // Same as getValue(slot).equals(other.getValue(slot)), without boxing
+    private boolean valueEquals(int slot, BeanInvocationHandler other) {
+        int index = layout.getIndex(slot);
+        switch (layout.getStorage(slot)) {
+            case INTEGRAL:
+                return getIntegral(index) == other.getIntegral(index);
+            case FLOATING:
+                return Double.doubleToLongBits(getFloating(index)) ==
+                    Double.doubleToLongBits(other.getFloating(index));
+            case BOOLEAN:
+                return getBoolean(index) == other.getBoolean(index);
+            default:
+                return Objects.equals(getReference(index), other.getReference(index));
+        }
+    }
+
+    boolean beanEquals(Object proxy, Object other) {
+        // If both are same proxy class, compare property values
+        if (other == null || !proxy.getClass().equals(other.getClass())) {
+            return false;
+        }
+        InvocationHandler otherHandler = Proxy.getInvocationHandler(other);
+        if (otherHandler == this) {
+            return true;
+        }
+        if (!(otherHandler instanceof BeanInvocationHandler)) {
+            return false;
+        }
+        BeanInvocationHandler otherBean = (BeanInvocationHandler) otherHandler;
+        if (isFrozen() && otherBean.isFrozen() && beanHashCode() != otherBean.beanHashCode()) {
             return false;
         }
-        else if (methodName.equals("hashCode")) {
-            return properties.hashCode();
+        for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+            boolean set = isSet(slot);
+            if (set != otherBean.isSet(slot) || (set && !valueEquals(slot, otherBean))) {
+                return false;
+            }
         }
-        throw new IllegalArgumentException("cannot handle method: " + methodName);
+        return true;
     }
 
-    private static String removePrefix(String prefix, String word) {
-        return Character.toLowerCase(word.charAt(prefix.length())) + word.substring(prefix.length() + 1);
+    int beanHashCode() {
+        // Same as the hash code of toMap()
+        int hashCode = 0;
+        for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+            if (isSet(slot)) {
+                hashCode += layout.getPropertyName(slot).hashCode() ^ hashValue(slot);
+            }
+        }
+        return hashCode;
+    }
+
+    String beanToString() {
+        return toMap().toString();
     }
 
-    private static boolean isBoolean(Class<?> clazz) {
-        return clazz == boolean.class || clazz == Boolean.class;
+    /**
+     * Returns the properties that have been set.
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> properties = new HashMap<>();
+        for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+            if (isSet(slot)) {
+                properties.put(layout.getPropertyName(slot), getValue(slot));
+            }
+        }
+        return properties;
     }
 }
@@ -0,0 +1,282 @@
+package org.korz.beanmagic;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The properties of a bean interface, each assigned a slot index.
+ * Layouts are computed once per interface and shared by all of its beans.
+ */
+class BeanLayout {
+    private static final ClassValue<BeanLayout> LAYOUTS = new ClassValue<BeanLayout>() {
+        @Override // ClassValue
+        protected BeanLayout computeValue(Class<?> beanInterface) {
+            return new BeanLayout(beanInterface);
+        }
+    };
+
+    private final Class<?> beanInterface;
+    private final String[] propertyNames;
+    private final Class<?>[] propertyTypes;
+    private final Storage[] storages;
+    private final int[] indexes;
+    private final int[] storageCounts = new int[Storage.values().length];
+    private final Map<String, Integer> slots;
+    private final Map<Method, BeanMethod> beanMethods;
+    private final List<String> problems;
+
+    // Proxy classes pass the same Method instances on every call, so dispatch is normally an identity lookup
+    private volatile Map<Method, BeanMethod> dispatch = new IdentityHashMap<>();
+
+    private BeanLayout(Class<?> beanInterface) {
+        this.beanInterface = beanInterface;
+        List<String> names = new ArrayList<>();
+        List<Class<?>> types = new ArrayList<>();
+        Map<String, Integer> slots = new HashMap<>();
+        for (Method method : beanInterface.getMethods()) {
+            // Default methods are never properties, even if they look like accessors
+            boolean abstractMethod = !Modifier.isStatic(method.getModifiers()) && !method.isDefault();
+            String propertyName = abstractMethod ? getPropertyName(method) : null;
+            if (propertyName == null) {
+                continue;
+            }
+            Class<?> type = getPropertyType(method);
+            Integer slot = slots.get(propertyName);
+            if (slot == null) {
+                slots.put(propertyName, names.size());
+                names.add(propertyName);
+                types.add(type);
+            } else if (types.get(slot) != type) {
+                types.set(slot, null);
+            }
+        }
+        this.propertyNames = names.toArray(new String[0]);
+        this.propertyTypes = types.toArray(new Class<?>[0]);
+        this.slots = Collections.unmodifiableMap(slots);
+
+        // Primitive properties get their own unboxed storage, so each is indexed separately
+        this.storages = new Storage[propertyNames.length];
+        this.indexes = new int[propertyNames.length];
+        for (int slot = 0; slot < propertyNames.length; slot++) {
+            Storage storage = Storage.of(propertyTypes[slot]);
+            storages[slot] = storage;
+            indexes[slot] = storageCounts[storage.ordinal()]++;
+        }
+
+        Map<Method, BeanMethod> beanMethods = new HashMap<>();
+        for (Method method : beanInterface.getMethods()) {
+            beanMethods.put(method, BeanMethod.classify(method, this));
+        }
+        for (Method method : Object.class.getMethods()) {
+            if (!beanMethods.containsKey(method)) {
+                beanMethods.put(method, BeanMethod.classify(method, this));
+            }
+        }
+        this.beanMethods = beanMethods;
+        this.problems = findProblems();
+    }
+
+    public static BeanLayout of(Class<?> beanInterface) {
+        return LAYOUTS.get(beanInterface);
+    }
+
+    public Class<?> getBeanInterface() {
+        return beanInterface;
+    }
+
+    public int getPropertyCount() {
+        return propertyNames.length;
+    }
+
+    public String getPropertyName(int slot) {
+        return propertyNames[slot];
+    }
+
+    /**
+     * Returns the type of a property, or null if its getters and setters do not agree on a type.
+     */
+    public Class<?> getPropertyType(int slot) {
+        return propertyTypes[slot];
+    }
+
+    public Storage getStorage(int slot) {
+        return storages[slot];
+    }
+
+    /**
+     * Returns the index of a property within its storage.
+     */
+    public int getIndex(int slot) {
+        return indexes[slot];
+    }
+
+    /**
+     * Returns the number of properties using a storage.
+     */
+    public int getCount(Storage storage) {
+        return storageCounts[storage.ordinal()];
+    }
+
+    /**
+     * Returns the slot of a property, or -1 if there is no such property.
+     */
+    public int getSlot(String propertyName) {
+        Integer slot = slots.get(propertyName);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Checks that every abstract method is an accessor and that every property has a matching getter and setter.
+     */
+    public void validate() {
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException(
+                "Invalid bean interface " + beanInterface.getName() + ": " + String.join("; ", problems));
+        }
+    }
+
+    private List<String> findProblems() {
+        List<String> problems = new ArrayList<>();
+        boolean[] hasGetter = new boolean[propertyNames.length];
+        boolean[] hasSetter = new boolean[propertyNames.length];
+        for (Method method : beanInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.isDefault()) {
+                continue;
+            }
+            BeanMethod beanMethod = beanMethods.get(method);
+            int parameterCount = method.getParameterTypes().length;
+            if (beanMethod instanceof BeanMethod.Getter) {
+                int slot = ((BeanMethod.Getter) beanMethod).getSlot();
+                if (parameterCount != 0 || method.getReturnType() == void.class) {
+                    problems.add("getter " + method.getName() + " must have no parameters and return a value");
+                }
+                hasGetter[slot] = true;
+            } else if (beanMethod instanceof BeanMethod.Setter) {
+                int slot = ((BeanMethod.Setter) beanMethod).getSlot();
+                if (parameterCount != 1 || method.getReturnType() != void.class) {
+                    problems.add("setter " + method.getName() + " must have one parameter and return void");
+                }
+                hasSetter[slot] = true;
+            } else if (beanMethod instanceof BeanMethod.CompareAndSet) {
+                Class<?> type = propertyTypes[((BeanMethod.CompareAndSet) beanMethod).getSlot()];
+                if (method.getReturnType() != boolean.class || parameterCount != 2 ||
+                    method.getParameterTypes()[0] != type || method.getParameterTypes()[1] != type) {
+                    problems.add(method.getName() + " must take the expected and new value and return boolean");
+                }
+            } else if (beanMethod instanceof BeanMethod.Unhandled) {
+                if (method.getName().startsWith("is")) {
+                    problems.add("getter " + method.getName() + " must return boolean to use \"is\"");
+                } else {
+                    problems.add("method " + method.getName() + " is not a getter or setter");
+                }
+            }
+        }
+        for (int slot = 0; slot < propertyNames.length; slot++) {
+            if (!hasGetter[slot]) {
+                problems.add("property " + propertyNames[slot] + " has no getter");
+            }
+            if (!hasSetter[slot]) {
+                problems.add("property " + propertyNames[slot] + " has no setter");
+            }
+            if (propertyTypes[slot] == null) {
+                problems.add("property " + propertyNames[slot] + " does not have a consistent type");
+            }
+        }
+        return Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Checks if any method is a compare-and-set accessor.
+     */
+    public boolean hasCompareAndSet() {
+        for (BeanMethod beanMethod : beanMethods.values()) {
+            if (beanMethod instanceof BeanMethod.CompareAndSet) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how to handle a method invoked on a bean.
+     */
+    public BeanMethod getBeanMethod(Method method) {
+        BeanMethod beanMethod = dispatch.get(method);
+        if (beanMethod == null) {
+            beanMethod = addDispatch(method);
+        }
+        return beanMethod;
+    }
+
+    private synchronized BeanMethod addDispatch(Method method) {
+        BeanMethod beanMethod = dispatch.get(method);
+        if (beanMethod == null) {
+            beanMethod = beanMethods.get(method);
+            if (beanMethod == null) {
+                beanMethod = BeanMethod.classify(method, this);
+            }
+            Map<Method, BeanMethod> copy = new IdentityHashMap<>(dispatch);
+            copy.put(method, beanMethod);
+            dispatch = copy;
+        }
+        return beanMethod;
+    }
+
+    /**
+     * Returns the property accessed by a getter or setter, or null if the method is not an accessor.
+     */
+    static String getPropertyName(Method method) {
+        String methodName = method.getName();
+        if (methodName.startsWith("get") && methodName.length() > 3) {
+            return removePrefix("get", methodName);
+        } else if (methodName.startsWith("set") && methodName.length() > 3) {
+            return removePrefix("set", methodName);
+        } else if (isBoolean(method.getReturnType()) && methodName.startsWith("is") && methodName.length() > 2) {
+            return removePrefix("is", methodName);
+        }
+        return null;
+    }
+
+    private static Class<?> getPropertyType(Method method) {
+        if (method.getName().startsWith("set")) {
+            return method.getParameterTypes().length == 1 ? method.getParameterTypes()[0] : null;
+        }
+        return method.getParameterTypes().length == 0 ? method.getReturnType() : null;
+    }
+
+    static String removePrefix(String prefix, String word) {
+        return Character.toLowerCase(word.charAt(prefix.length())) + word.substring(prefix.length() + 1);
+    }
+
+    /**
+     * How proxy beans store a property, primitives are stored unboxed.
+     */
+    enum Storage {
+        REFERENCE,
+        INTEGRAL, // long[]
+        FLOATING, // double[]
+        BOOLEAN; // bits
+
+        static Storage of(Class<?> type) {
+            if (type == null || !type.isPrimitive()) {
+                return REFERENCE;
+            } else if (type == boolean.class) {
+                return BOOLEAN;
+            } else if (type == float.class || type == double.class) {
+                return FLOATING;
+            } else {
+                return INTEGRAL;
+            }
+        }
+    }
+
+    static boolean isBoolean(Class<?> clazz) {
+        return clazz == boolean.class || clazz == Boolean.class;
+    }
+}
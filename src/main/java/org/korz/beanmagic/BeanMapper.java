@@ -0,0 +1,222 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Copies properties from one bean to another, prepared by {@link BeanSetter#newMapper}.
+ * Each getter of the source is matched with the setter of the same property, and conversions are resolved once,
+ * so copying does not allocate apart from converted values.
+ * Beans created by {@link BeanFactory} can be either side, properties that were never set on them are not copied.
+ * Getters without a property of their own, such as default methods, are always called and copied.
+ * Mappers are thread safe.
+ */
+public class BeanMapper<S, T> {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final BeanSetter beanSetter;
+    private final Class<S> sourceClass;
+    private final Class<T> targetClass;
+    private final String[] propertyNames;
+    private final Method[] getters;
+    // Null if the getter is not accessible through a method handle
+    private final MethodHandle[] getterHandles;
+    private final PropertySetter[] setters;
+    // Conversions from the declared type of the getter, or null if the value is converted as it is set
+    private final Converter[] converters;
+    // For source beans created by BeanFactory, the slot of each property
+    private final BeanLayout sourceLayout;
+    private final int[] sourceSlots;
+    private volatile BeanAccess sourceAccess;
+
+    BeanMapper(BeanSetter beanSetter, Class<S> sourceClass, Class<T> targetClass, BeanPlan targetPlan,
+               boolean useMethodHandles) {
+        this.beanSetter = beanSetter;
+        this.sourceClass = sourceClass;
+        this.targetClass = targetClass;
+
+        Map<String, Method> sourceGetters = findGetters(sourceClass);
+        List<String> propertyNames = new ArrayList<>();
+        List<Method> getters = new ArrayList<>();
+        List<PropertySetter> setters = new ArrayList<>();
+        for (Map.Entry<String, Method> getter : sourceGetters.entrySet()) {
+            PropertySetter setter = targetPlan.getSetter(getter.getKey());
+            if (setter == null) {
+                beanSetter.missingSetter(targetPlan, getter.getKey());
+                continue;
+            }
+            propertyNames.add(getter.getKey());
+            getters.add(getter.getValue());
+            setters.add(setter);
+        }
+        this.propertyNames = propertyNames.toArray(new String[0]);
+        this.getters = getters.toArray(new Method[0]);
+        this.setters = setters.toArray(new PropertySetter[0]);
+
+        this.getterHandles = new MethodHandle[this.getters.length];
+        this.converters = new Converter[this.getters.length];
+        this.sourceLayout = sourceClass.isInterface() ? BeanLayout.of(sourceClass) : null;
+        this.sourceSlots = new int[this.getters.length];
+        for (int i = 0; i < this.getters.length; i++) {
+            Method getter = this.getters[i];
+            PropertySetter setter = this.setters[i];
+            getterHandles[i] = useMethodHandles ? toHandle(getter) : null;
+            Class<?> valueType = BeanSetter.toBoxedType(getter.getReturnType());
+            if (!setter.getBoxedType().isAssignableFrom(valueType) &&
+                !BeanSetter.isWidening(valueType, setter.getParameterType())) {
+                Converter converter = beanSetter.getConverter(valueType, setter.getBoxedType());
+                // The declared type may be too general to convert, so try again with the type of each value
+                converters[i] = converter.canConvert() ? converter : null;
+            }
+            sourceSlots[i] = sourceLayout != null ? sourceLayout.getSlot(this.propertyNames[i]) : -1;
+        }
+    }
+
+    // Getters by property name, "getFoo" and "isFoo" are both property "foo"
+    private static Map<String, Method> findGetters(Class<?> sourceClass) {
+        Map<String, Method> getters = new LinkedHashMap<>();
+        for (Method method : sourceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) ||
+                method.getParameterTypes().length != 0 ||
+                method.getReturnType() == void.class ||
+                method.getDeclaringClass() == Object.class ||
+                method.getName().startsWith("set")) {
+                continue;
+            }
+            String propertyName = BeanLayout.getPropertyName(method);
+            if (propertyName != null) {
+                getters.putIfAbsent(propertyName, method);
+            }
+        }
+        return getters;
+    }
+
+    private static MethodHandle toHandle(Method method) {
+        try {
+            return MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public Class<S> getSourceClass() {
+        return sourceClass;
+    }
+
+    public Class<T> getTargetClass() {
+        return targetClass;
+    }
+
+    /**
+     * Sets each property of the target to the value of the same property of the source.
+     */
+    public void copy(S source, T target) {
+        if (source == null) {
+            throw new NullPointerException("source is null");
+        }
+        if (target == null) {
+            throw new NullPointerException("target is null");
+        }
+        if (!sourceClass.isInstance(source)) {
+            throw new IllegalArgumentException("source is not a " + sourceClass.getName());
+        }
+        if (!targetClass.isInstance(target)) {
+            throw new IllegalArgumentException("target is not a " + targetClass.getName());
+        }
+        if (sourceLayout != null) {
+            if (Proxy.isProxyClass(source.getClass())) {
+                InvocationHandler handler = Proxy.getInvocationHandler(source);
+                if (handler instanceof BeanInvocationHandler &&
+                    ((BeanInvocationHandler) handler).getLayout() == sourceLayout) {
+                    copyFromProxy((BeanInvocationHandler) handler, source, target);
+                    beanSetter.bound(target);
+                    return;
+                }
+            } else {
+                BeanAccess access = getSourceAccess(source);
+                if (access != null) {
+                    copyFromAccess(access, source, target);
+                    beanSetter.bound(target);
+                    return;
+                }
+            }
+        }
+        for (int i = 0; i < getters.length; i++) {
+            setProperty(target, i, getProperty(source, i));
+        }
+        beanSetter.bound(target);
+    }
+
+    /**
+     * Creates a target bean and copies the properties of the source to it.
+     */
+    public T map(S source, Supplier<? extends T> targetSupplier) {
+        if (targetSupplier == null) {
+            throw new NullPointerException("targetSupplier is null");
+        }
+        T target = targetSupplier.get();
+        copy(source, target);
+        return target;
+    }
+
+    // Reads the properties of a proxy bean from its handler, without calling through the proxy,
+    // apart from getters without a slot such as default methods
+    private void copyFromProxy(BeanInvocationHandler handler, S source, T target) {
+        for (int i = 0; i < getters.length; i++) {
+            int slot = sourceSlots[i];
+            if (slot < 0) {
+                setProperty(target, i, getProperty(source, i));
+            } else if (handler.isSet(slot)) {
+                setProperty(target, i, handler.getValue(slot));
+            }
+        }
+    }
+
+    private void copyFromAccess(BeanAccess access, S source, T target) {
+        for (int i = 0; i < getters.length; i++) {
+            int slot = sourceSlots[i];
+            if (slot < 0 || access.isSet(source, slot)) {
+                setProperty(target, i, getProperty(source, i));
+            }
+        }
+    }
+
+    private BeanAccess getSourceAccess(S source) {
+        BeanAccess access = sourceAccess;
+        if (access == null || access.getBeanClass() != source.getClass()) {
+            access = BeanAccess.forBean(source);
+            if (access == null || access.getLayout() != sourceLayout) {
+                return null;
+            }
+            sourceAccess = access;
+        }
+        return access;
+    }
+
+    private Object getProperty(S source, int i) {
+        try {
+            MethodHandle handle = getterHandles[i];
+            if (handle != null) {
+                return handle.invokeExact((Object) source);
+            }
+            return getters[i].invoke(source);
+        } catch (Throwable t) {
+            throw new IllegalArgumentException(
+                "Failed to get property \"" + propertyNames[i] + "\", cannot invoke getter", t);
+        }
+    }
+
+    private void setProperty(T target, int i, Object value) {
+        beanSetter.setProperty(target, setters[i], propertyNames[i], value, converters[i]);
+    }
+}
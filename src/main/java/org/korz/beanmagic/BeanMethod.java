@@ -0,0 +1,444 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * What a proxied method does, classified once per method of a bean interface.
+ */
+abstract class BeanMethod {
+    static final String COMPARE_AND_SET = "compareAndSet";
+
+    public abstract Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args);
+
+    public static BeanMethod classify(Method method, BeanLayout layout) {
+        String methodName = method.getName();
+        Class<?> returnType = method.getReturnType();
+        // Default methods are not properties, their bodies run as they do on generated beans
+        if (method.isDefault()) {
+            return new Default(method);
+        }
+        if (methodName.startsWith("get")) {
+            int slot = getSlot(layout, "get", methodName);
+            return slot >= 0 ? Getter.of(layout, slot) : new Unhandled(methodName);
+        }
+        else if (methodName.startsWith("set")) {
+            int slot = getSlot(layout, "set", methodName);
+            return slot >= 0 ? Setter.of(layout, slot) : new Unhandled(methodName);
+        }
+        else if (BeanLayout.isBoolean(returnType) && methodName.startsWith("is")) {
+            int slot = getSlot(layout, "is", methodName);
+            return slot >= 0 ? Getter.of(layout, slot) : new Unhandled(methodName);
+        }
+        else if (methodName.startsWith(COMPARE_AND_SET)) {
+            int slot = getSlot(layout, COMPARE_AND_SET, methodName);
+            return slot >= 0 ? CompareAndSet.of(layout, slot) : new Unhandled(methodName);
+        }
+        else if (methodName.equals("toString")) {
+            return new ToString();
+        }
+        else if (methodName.equals("equals")) {
+            return new Equals();
+        }
+        else if (methodName.equals("hashCode")) {
+            return new HashCode();
+        }
+        return new Unhandled(methodName);
+    }
+
+    // Returns -1 if the method is not an accessor of a property, e.g. Object.getClass()
+    private static int getSlot(BeanLayout layout, String prefix, String methodName) {
+        if (methodName.length() <= prefix.length()) {
+            return -1;
+        }
+        return layout.getSlot(BeanLayout.removePrefix(prefix, methodName));
+    }
+
+    abstract static class Getter extends BeanMethod {
+        private final int slot;
+        protected final int index;
+
+        Getter(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        static Getter of(BeanLayout layout, int slot) {
+            int index = layout.getIndex(slot);
+            Class<?> type = layout.getPropertyType(slot);
+            switch (layout.getStorage(slot)) {
+                case INTEGRAL:
+                    if (type == int.class) {
+                        return new IntGetter(slot, index);
+                    } else if (type == long.class) {
+                        return new LongGetter(slot, index);
+                    } else if (type == short.class) {
+                        return new ShortGetter(slot, index);
+                    } else if (type == byte.class) {
+                        return new ByteGetter(slot, index);
+                    } else {
+                        return new CharGetter(slot, index);
+                    }
+                case FLOATING:
+                    return type == float.class ? new FloatGetter(slot, index) : new DoubleGetter(slot, index);
+                case BOOLEAN:
+                    return new BooleanGetter(slot, index);
+                default:
+                    return new ReferenceGetter(slot, index);
+            }
+        }
+    }
+
+    static class ReferenceGetter extends Getter {
+        ReferenceGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.getReference(index);
+        }
+    }
+
+    static class IntGetter extends Getter {
+        IntGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return (int) handler.getIntegral(index);
+        }
+    }
+
+    static class LongGetter extends Getter {
+        LongGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.getIntegral(index);
+        }
+    }
+
+    static class ShortGetter extends Getter {
+        ShortGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return (short) handler.getIntegral(index);
+        }
+    }
+
+    static class ByteGetter extends Getter {
+        ByteGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return (byte) handler.getIntegral(index);
+        }
+    }
+
+    static class CharGetter extends Getter {
+        CharGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return (char) handler.getIntegral(index);
+        }
+    }
+
+    static class FloatGetter extends Getter {
+        FloatGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return (float) handler.getFloating(index);
+        }
+    }
+
+    static class DoubleGetter extends Getter {
+        DoubleGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.getFloating(index);
+        }
+    }
+
+    static class BooleanGetter extends Getter {
+        BooleanGetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.getBoolean(index);
+        }
+    }
+
+    abstract static class Setter extends BeanMethod {
+        protected final int slot;
+        protected final int index;
+
+        Setter(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        static Setter of(BeanLayout layout, int slot) {
+            int index = layout.getIndex(slot);
+            switch (layout.getStorage(slot)) {
+                case INTEGRAL:
+                    return layout.getPropertyType(slot) == char.class ? new CharSetter(slot, index)
+                                                                      : new IntegralSetter(slot, index);
+                case FLOATING:
+                    return new FloatingSetter(slot, index);
+                case BOOLEAN:
+                    return new BooleanSetter(slot, index);
+                default:
+                    return new ReferenceSetter(slot, index);
+            }
+        }
+    }
+
+    static class ReferenceSetter extends Setter {
+        ReferenceSetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            handler.setReference(slot, index, args[0]);
+            return null; // void
+        }
+    }
+
+    static class IntegralSetter extends Setter {
+        IntegralSetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            handler.setIntegral(slot, index, ((Number) args[0]).longValue());
+            return null; // void
+        }
+    }
+
+    static class CharSetter extends Setter {
+        CharSetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            handler.setIntegral(slot, index, (Character) args[0]);
+            return null; // void
+        }
+    }
+
+    static class FloatingSetter extends Setter {
+        FloatingSetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            handler.setFloating(slot, index, ((Number) args[0]).doubleValue());
+            return null; // void
+        }
+    }
+
+    static class BooleanSetter extends Setter {
+        BooleanSetter(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            handler.setBoolean(slot, index, (Boolean) args[0]);
+            return null; // void
+        }
+    }
+
+    /**
+     * Atomically sets a property if it has the expected value, e.g. {@code boolean compareAndSetCount(int, int)}.
+     * Primitives are compared by value and references by identity.
+     */
+    abstract static class CompareAndSet extends BeanMethod {
+        protected final int slot;
+        protected final int index;
+
+        CompareAndSet(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        static CompareAndSet of(BeanLayout layout, int slot) {
+            int index = layout.getIndex(slot);
+            switch (layout.getStorage(slot)) {
+                case INTEGRAL:
+                    return new IntegralCompareAndSet(slot, index);
+                case FLOATING:
+                    return new FloatingCompareAndSet(slot, index);
+                case BOOLEAN:
+                    return new BooleanCompareAndSet(slot, index);
+                default:
+                    return new ReferenceCompareAndSet(slot, index);
+            }
+        }
+    }
+
+    static class ReferenceCompareAndSet extends CompareAndSet {
+        ReferenceCompareAndSet(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.compareAndSetReference(slot, index, args[0], args[1]);
+        }
+    }
+
+    static class IntegralCompareAndSet extends CompareAndSet {
+        IntegralCompareAndSet(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.compareAndSetIntegral(slot, index, toLong(args[0]), toLong(args[1]));
+        }
+
+        private static long toLong(Object value) {
+            return value instanceof Character ? (Character) value : ((Number) value).longValue();
+        }
+    }
+
+    static class FloatingCompareAndSet extends CompareAndSet {
+        FloatingCompareAndSet(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.compareAndSetFloating(slot, index, ((Number) args[0]).doubleValue(),
+                                                 ((Number) args[1]).doubleValue());
+        }
+    }
+
+    static class BooleanCompareAndSet extends CompareAndSet {
+        BooleanCompareAndSet(int slot, int index) {
+            super(slot, index);
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.compareAndSetBoolean(slot, index, (Boolean) args[0], (Boolean) args[1]);
+        }
+    }
+
+    static class ToString extends BeanMethod {
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.beanToString();
+        }
+    }
+
+    static class Equals extends BeanMethod {
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.beanEquals(proxy, args[0]);
+        }
+    }
+
+    static class HashCode extends BeanMethod {
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            return handler.beanHashCode();
+        }
+    }
+
+    static class Unhandled extends BeanMethod {
+        private final String methodName;
+
+        Unhandled(String methodName) {
+            this.methodName = methodName;
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            throw new IllegalArgumentException("cannot handle method: " + methodName);
+        }
+    }
+
+    static class Default extends BeanMethod {
+        private static final Object[] NO_ARGS = {};
+
+        private final String methodName;
+        // Takes the proxy and an array of the arguments, null if the method cannot be invoked
+        private final MethodHandle handle;
+        private final ReflectiveOperationException failure;
+
+        Default(Method method) {
+            this.methodName = method.getName();
+            MethodHandle handle = null;
+            ReflectiveOperationException failure = null;
+            try {
+                Class<?> declaringClass = method.getDeclaringClass();
+                handle = GeneratedBeanClass.privateLookupIn(declaringClass)
+                                           .unreflectSpecial(method, declaringClass)
+                                           .asSpreader(Object[].class, method.getParameterTypes().length)
+                                           .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            } catch (ReflectiveOperationException e) {
+                failure = e;
+            }
+            this.handle = handle;
+            this.failure = failure;
+        }
+
+        @Override // BeanMethod
+        public Object invoke(BeanInvocationHandler handler, Object proxy, Object[] args) {
+            if (handle == null) {
+                throw new IllegalStateException("cannot invoke default method: " + methodName, failure);
+            }
+            Object[] arguments = args != null ? args : NO_ARGS;
+            try {
+                return (Object) handle.invokeExact(proxy, arguments);
+            } catch (Throwable t) {
+                // Rethrown as is, the proxy wraps checked exceptions that the method does not declare
+                throw BeanMethod.<RuntimeException>rethrow(t);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T rethrow(Throwable t) throws T {
+        throw (T) t;
+    }
+}
@@ -0,0 +1,54 @@
+package org.korz.beanmagic;
+
+/**
+ * Receives events from the hot paths of {@link BeanFactory} and {@link BeanSetter}, e.g. to report them to a
+ * metrics registry. Every method does nothing by default.
+ * Methods are called from whichever thread creates or binds beans, so implementations must be thread safe and
+ * should not block. When no metrics are set the only cost is a null check.
+ *
+ * @see BeanMetricsRecorder
+ */
+public interface BeanMetrics {
+    /**
+     * A bean was created by {@link BeanFactory#createBean}.
+     */
+    default void beanCreated(Class<?> beanInterface) {
+    }
+
+    /**
+     * The properties of a bean were set, by {@link BeanSetter#setProperties}, a {@link BeanBinder} or a
+     * {@link BeanMapper}.
+     */
+    default void beanBound(Class<?> beanClass) {
+    }
+
+    /**
+     * A conversion strategy was found without resolving it again.
+     */
+    default void conversionCacheHit() {
+    }
+
+    /**
+     * A conversion strategy had to be resolved reflectively.
+     */
+    default void conversionCacheMiss() {
+    }
+
+    /**
+     * A value was converted, which took the given time.
+     */
+    default void converted(ConversionStrategy strategy, long nanos) {
+    }
+
+    /**
+     * A setter was invoked through reflection rather than a method handle, e.g. to widen a primitive.
+     */
+    default void reflectiveSet(Class<?> beanClass, String propertyName) {
+    }
+
+    /**
+     * A property could not be converted or its setter threw.
+     */
+    default void propertyFailed(Class<?> beanClass, String propertyName) {
+    }
+}
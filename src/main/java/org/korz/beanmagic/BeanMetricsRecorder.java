@@ -0,0 +1,111 @@
+package org.korz.beanmagic;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records {@link BeanMetrics} in memory with striped counters, so recording does not lock.
+ * Read the counts periodically to publish them elsewhere.
+ */
+public class BeanMetricsRecorder implements BeanMetrics {
+    private final ConcurrentMap<Class<?>, LongAdder> beansCreated = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, LongAdder> beansBound = new ConcurrentHashMap<>();
+    private final LongAdder conversionCacheHits = new LongAdder();
+    private final LongAdder conversionCacheMisses = new LongAdder();
+    private final LatencyHistogram[] conversions = new LatencyHistogram[ConversionStrategy.values().length];
+    private final LongAdder reflectiveSets = new LongAdder();
+    private final LongAdder propertyFailures = new LongAdder();
+
+    public BeanMetricsRecorder() {
+        for (int i = 0; i < conversions.length; i++) {
+            conversions[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override // BeanMetrics
+    public void beanCreated(Class<?> beanInterface) {
+        increment(beansCreated, beanInterface);
+    }
+
+    @Override // BeanMetrics
+    public void beanBound(Class<?> beanClass) {
+        increment(beansBound, beanClass);
+    }
+
+    @Override // BeanMetrics
+    public void conversionCacheHit() {
+        conversionCacheHits.increment();
+    }
+
+    @Override // BeanMetrics
+    public void conversionCacheMiss() {
+        conversionCacheMisses.increment();
+    }
+
+    @Override // BeanMetrics
+    public void converted(ConversionStrategy strategy, long nanos) {
+        conversions[strategy.ordinal()].record(nanos);
+    }
+
+    @Override // BeanMetrics
+    public void reflectiveSet(Class<?> beanClass, String propertyName) {
+        reflectiveSets.increment();
+    }
+
+    @Override // BeanMetrics
+    public void propertyFailed(Class<?> beanClass, String propertyName) {
+        propertyFailures.increment();
+    }
+
+    private static void increment(ConcurrentMap<Class<?>, LongAdder> counts, Class<?> clazz) {
+        LongAdder count = counts.get(clazz);
+        if (count == null) {
+            count = counts.computeIfAbsent(clazz, c -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    public long getBeansCreated(Class<?> beanInterface) {
+        LongAdder count = beansCreated.get(beanInterface);
+        return count != null ? count.sum() : 0;
+    }
+
+    public long getBeansBound(Class<?> beanClass) {
+        LongAdder count = beansBound.get(beanClass);
+        return count != null ? count.sum() : 0;
+    }
+
+    public long getConversionCacheHits() {
+        return conversionCacheHits.sum();
+    }
+
+    public long getConversionCacheMisses() {
+        return conversionCacheMisses.sum();
+    }
+
+    /**
+     * Returns the fraction of conversion strategies found without resolving them, or 0 if there were none.
+     */
+    public double getConversionCacheHitRatio() {
+        long hits = conversionCacheHits.sum();
+        long total = hits + conversionCacheMisses.sum();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    public long getConversions(ConversionStrategy strategy) {
+        return conversions[strategy.ordinal()].getCount();
+    }
+
+    public LatencyHistogram getConversionLatency(ConversionStrategy strategy) {
+        return conversions[strategy.ordinal()];
+    }
+
+    public long getReflectiveSets() {
+        return reflectiveSets.sum();
+    }
+
+    public long getPropertyFailures() {
+        return propertyFailures.sum();
+    }
+}
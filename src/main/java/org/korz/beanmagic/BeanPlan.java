@@ -0,0 +1,169 @@
+package org.korz.beanmagic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The setters of a bean class, resolved once and indexed by property name.
+ * Why methods that look like setters were skipped is recorded rather than logged, see {@link BeanSetter#explain}.
+ */
+class BeanPlan {
+    private static final Logger LOG = LoggerFactory.getLogger(BeanPlan.class);
+    // Unused names usually come from input data, so only so many are remembered
+    static final int MAX_UNUSED = 64;
+
+    private final Class<?> beanClass;
+    private final Map<String, PropertySetter> setters;
+    private final List<String> skipped;
+    private final Set<String> unused = ConcurrentHashMap.newKeySet();
+    private final AtomicLong suppressedUnused = new AtomicLong();
+
+    private BeanPlan(Class<?> beanClass, Map<String, PropertySetter> setters, List<String> skipped) {
+        this.beanClass = beanClass;
+        this.setters = setters;
+        this.skipped = skipped;
+    }
+
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    public PropertySetter getSetter(String propertyName) {
+        return setters.get(propertyName);
+    }
+
+    /**
+     * Returns the setters by property name, a setter "setFoo" is found for both "foo" and "Foo".
+     */
+    public Map<String, PropertySetter> getSetters() {
+        return Collections.unmodifiableMap(setters);
+    }
+
+    /**
+     * Returns the methods starting with "set" that are not setters, with the reason they were skipped.
+     */
+    public List<String> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Records a property that has no setter, and returns true if it should be warned about: the first time it is
+     * seen, for up to {@link #MAX_UNUSED} names. Occurrences of properties beyond those are only counted.
+     */
+    public boolean addUnused(String propertyName) {
+        if (unused.contains(propertyName)) {
+            return false;
+        }
+        // Checked and added together, so racing threads cannot record more than the limit
+        synchronized (unused) {
+            if (unused.size() < MAX_UNUSED) {
+                return unused.add(propertyName);
+            }
+            if (unused.contains(propertyName)) {
+                return false;
+            }
+        }
+        if (suppressedUnused.incrementAndGet() == 1) {
+            LOG.warn("Too many unused properties of {}, no longer warning about new ones", beanClass.getName());
+        }
+        return false;
+    }
+
+    /**
+     * Returns the unused properties recorded by {@link #addUnused}.
+     */
+    public Set<String> getUnused() {
+        return Collections.unmodifiableSet(unused);
+    }
+
+    /**
+     * Returns the number of times an unused property was not recorded, as {@link #MAX_UNUSED} were already.
+     * The same property is counted each time it is seen.
+     */
+    public long getSuppressedUnused() {
+        return suppressedUnused.get();
+    }
+
+    /**
+     * Resolves the setters of a class, from the setters generated at compile time if there are any and
+     * {@code useCompiled} is set, otherwise by reflection.
+     */
+    public static BeanPlan compile(Class<?> beanClass, boolean useMethodHandles, boolean useCompiled) {
+        CompiledSetters<?> compiled = useCompiled ? CompiledRegistry.getSetters(beanClass) : null;
+        if (compiled != null) {
+            return compile(beanClass, compiled);
+        }
+        Map<String, Method> methods = new HashMap<>();
+        List<String> skipped = new ArrayList<>();
+        for (Method method : beanClass.getMethods()) {
+            if (!method.getName().startsWith("set")) {
+                continue;
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                skipped.add(method + ": is static");
+            } else if (method.getReturnType() != void.class) {
+                skipped.add(method + ": not void return");
+            } else if (method.getParameterTypes().length != 1) {
+                skipped.add(method + ": does not have exactly one parameter");
+            } else {
+                methods.put(method.getName(), method);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Found {} setters of {}", methods.size(), beanClass.getName());
+        }
+
+        Map<String, PropertySetter> setters = new HashMap<>();
+        for (Method method : methods.values()) {
+            MethodHandle handle = useMethodHandles ? PropertySetter.toHandle(method) : null;
+            index(setters, method.getName(), propertyName -> new PropertySetter(propertyName, method, handle));
+        }
+        return new BeanPlan(beanClass, setters, Collections.unmodifiableList(skipped));
+    }
+
+    private static BeanPlan compile(Class<?> beanClass, CompiledSetters<?> compiled) {
+        String[] names = compiled.getSetterNames();
+        Class<?>[] types = compiled.getParameterTypes();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Found {} compiled setters of {}", names.length, beanClass.getName());
+        }
+        Map<String, PropertySetter> setters = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            Class<?> type = types[i];
+            int index = i;
+            index(setters, names[i], propertyName -> new PropertySetter(propertyName, type, compiled, index));
+        }
+        // Methods that were skipped are reported by the annotation processor instead
+        return new BeanPlan(beanClass, setters, Collections.emptyList());
+    }
+
+    // A setter "setFoo" is found for both "foo" and "Foo", so index every property name that maps onto it
+    private static void index(Map<String, PropertySetter> setters, String setterName,
+                              Function<String, PropertySetter> setter) {
+        if (setterName.length() == 3) {
+            return;
+        }
+        char first = setterName.charAt(3);
+        String rest = setterName.substring(4);
+        if (Character.toUpperCase(first) == first) {
+            setters.put(first + rest, setter.apply(first + rest));
+        }
+        char lower = Character.toLowerCase(first);
+        if (lower != first && Character.toUpperCase(lower) == first) {
+            setters.put(lower + rest, setter.apply(lower + rest));
+        }
+    }
+}
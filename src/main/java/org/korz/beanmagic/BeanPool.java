@@ -0,0 +1,201 @@
+package org.korz.beanmagic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A bounded pool of reset beans of one interface.
+ * The pool is split into stripes chosen by thread, so threads that acquire and release their own beans
+ * rarely contend, and only take beans from other stripes when their own is empty.
+ */
+class BeanPool {
+    private static final Logger LOG = LoggerFactory.getLogger(BeanPool.class);
+
+    private final Class<?> beanInterface;
+    private final Consumer<Object> reset;
+    private final Stripe[] stripes;
+    private final int mask;
+    // Null unless debugging, the beans that have been acquired and not released by identity hash code
+    private final Map<Integer, List<Lease>> leases;
+    private final ReferenceQueue<Object> leaked;
+
+    BeanPool(Class<?> beanInterface, int capacity, boolean debug, Consumer<Object> reset) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.beanInterface = beanInterface;
+        this.reset = reset;
+        int count = Math.min(nextPowerOfTwo(Runtime.getRuntime().availableProcessors()),
+                             Integer.highestOneBit(capacity));
+        // Split exactly, so the stripes together never hold more than the capacity
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+        mask = count - 1;
+        leases = debug ? new HashMap<>() : null;
+        leaked = debug ? new ReferenceQueue<>() : null;
+    }
+
+    private static int nextPowerOfTwo(int n) {
+        int power = Integer.highestOneBit(n);
+        return power == n ? n : power << 1;
+    }
+
+    /**
+     * Returns the number of beans acquired and not yet released or garbage collected, when debugging.
+     */
+    int getLeaseCount() {
+        synchronized (leases) {
+            pollLeaked();
+            int count = 0;
+            for (List<Lease> sameHash : leases.values()) {
+                count += sameHash.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns a pooled bean, or null if the pool is empty.
+     */
+    Object acquire() {
+        int first = stripe();
+        Object bean = stripes[first].pop();
+        for (int i = 1; bean == null && i < stripes.length; i++) {
+            bean = stripes[(first + i) & mask].pop();
+        }
+        if (bean != null && leases != null) {
+            lease(bean);
+        }
+        return bean;
+    }
+
+    /**
+     * Registers a bean that was created because the pool was empty, so its release can be checked.
+     */
+    void created(Object bean) {
+        if (leases != null) {
+            lease(bean);
+        }
+    }
+
+    /**
+     * Resets a bean and returns it to the pool, or drops it if the stripe of the thread is full.
+     *
+     * @throws IllegalStateException if debugging and the bean is not acquired
+     */
+    void release(Object bean) {
+        // Checked first, a bean released twice may already be in use again
+        if (leases != null) {
+            unlease(bean);
+        }
+        reset.accept(bean);
+        stripes[stripe()].push(bean);
+    }
+
+    /**
+     * Returns the number of beans the stripes can hold together.
+     */
+    int getCapacity() {
+        int capacity = 0;
+        for (Stripe stripe : stripes) {
+            capacity += stripe.beans.length;
+        }
+        return capacity;
+    }
+
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & mask;
+    }
+
+    private void lease(Object bean) {
+        synchronized (leases) {
+            pollLeaked();
+            leases.computeIfAbsent(System.identityHashCode(bean), h -> new ArrayList<>(1))
+                  .add(new Lease(bean, leaked));
+        }
+    }
+
+    private void unlease(Object bean) {
+        synchronized (leases) {
+            pollLeaked();
+            int hash = System.identityHashCode(bean);
+            List<Lease> sameHash = leases.get(hash);
+            if (sameHash != null) {
+                for (int i = 0; i < sameHash.size(); i++) {
+                    if (sameHash.get(i).get() == bean) {
+                        remove(hash, sameHash, i);
+                        return;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException(
+            "Bean of " + beanInterface.getName() + " was already released or not acquired from the pool");
+    }
+
+    // Guarded by leases
+    private void pollLeaked() {
+        for (Reference<?> ref; (ref = leaked.poll()) != null; ) {
+            Lease lease = (Lease) ref;
+            List<Lease> sameHash = leases.get(lease.hash);
+            int i = sameHash == null ? -1 : sameHash.indexOf(lease);
+            if (i >= 0) {
+                remove(lease.hash, sameHash, i);
+                LOG.warn("Bean of {} was acquired and never released", beanInterface.getName(), lease.acquired);
+            }
+        }
+    }
+
+    private void remove(int hash, List<Lease> sameHash, int i) {
+        sameHash.remove(i);
+        if (sameHash.isEmpty()) {
+            leases.remove(hash);
+        }
+    }
+
+    private static final class Lease extends WeakReference<Object> {
+        final int hash;
+        // Where the bean was acquired, reported if it leaks
+        final Throwable acquired = new Throwable("Acquired here");
+
+        Lease(Object bean, ReferenceQueue<Object> queue) {
+            super(bean, queue);
+            this.hash = System.identityHashCode(bean);
+        }
+    }
+
+    private static final class Stripe {
+        private final Object[] beans;
+        private int size;
+
+        Stripe(int capacity) {
+            beans = new Object[capacity];
+        }
+
+        synchronized Object pop() {
+            if (size == 0) {
+                return null;
+            }
+            Object bean = beans[--size];
+            beans[size] = null;
+            return bean;
+        }
+
+        synchronized void push(Object bean) {
+            if (size < beans.length) {
+                beans[size++] = bean;
+            }
+        }
+    }
+}
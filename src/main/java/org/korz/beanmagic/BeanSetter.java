@@ -3,19 +3,46 @@ package org.korz.beanmagic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class BeanSetter {
     private static final Logger LOG = LoggerFactory.getLogger(BeanSetter.class);
 
     private final boolean errorOnUnused;
-    private final Map<TypeConverterKey, Function<?, ?>> typeConverters;
+    private final boolean useMethodHandles;
+    private final boolean useCompiled;
+    private final TypeConverterRegistry typeConverters;
+    // Null unless metrics are enabled
+    private final BeanMetrics metrics;
+    // Resolved conversions by input type and then output type, so lookups do not allocate a key
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, Converter>> converters = new ConcurrentHashMap<>();
+    private final LongAdder conversionCacheHits = new LongAdder();
+    private final LongAdder conversionCacheMisses = new LongAdder();
+    private final ClassValue<BeanPlan> plans = new ClassValue<BeanPlan>() {
+        @Override // ClassValue
+        protected BeanPlan computeValue(Class<?> beanClass) {
+            return BeanPlan.compile(beanClass, useMethodHandles, useCompiled);
+        }
+    };
 
     public BeanSetter() {
         this(newBuilder());
@@ -27,7 +54,12 @@ public class BeanSetter {
 
     public static class Builder {
         private boolean errorOnUnused = true;
-        private final Map<TypeConverterKey, Function<?, ?>> typeConverters = new HashMap<>();
+        private boolean useMethodHandles = true;
+        private boolean useCompiled = true;
+        private final Map<TypeConverterKey, Function<?, ?>> typeConverters = new LinkedHashMap<>();
+        // Shared by every BeanSetter built until the type converters change
+        private TypeConverterRegistry registry = TypeConverterRegistry.EMPTY;
+        private BeanMetrics metrics;
 
         private Builder() {
         }
@@ -37,6 +69,36 @@ public class BeanSetter {
             return this;
         }
 
+        /**
+         * Invoke setters through method handles (the default) or through plain reflection.
+         * Reflection may be required in restricted environments where method handles are not available.
+         */
+        public Builder setUseMethodHandles(boolean useMethodHandles) {
+            this.useMethodHandles = useMethodHandles;
+            return this;
+        }
+
+        /**
+         * Invoke setters generated at compile time for classes annotated with {@link Precompiled} (the default),
+         * falling back to method handles or reflection for other classes.
+         */
+        public Builder setUseCompiled(boolean useCompiled) {
+            this.useCompiled = useCompiled;
+            return this;
+        }
+
+        /**
+         * Report binding, conversions and failures to metrics, or null (the default) to report nothing.
+         */
+        public Builder setMetrics(BeanMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Registers a converter, which also applies to subtypes of {@code in} and to supertypes of {@code out}.
+         * If several converters apply, the one with the closest input type is used, then the closest output type.
+         */
         public <In, Out> Builder addTypeConverter(Class<In> in, Class<Out> out, Function<In, Out> converter) {
             if (in == null) {
                 throw new NullPointerException("in is null");
@@ -48,6 +110,7 @@ public class BeanSetter {
                 throw new NullPointerException("converter is null");
             }
             typeConverters.put(new TypeConverterKey(toBoxedType(in), toBoxedType(out)), converter);
+            registry = null;
             return this;
         }
 
@@ -58,23 +121,31 @@ public class BeanSetter {
             if (out == null) {
                 throw new NullPointerException("out is null");
             }
-            typeConverters.remove(new TypeConverterKey(in, out));
+            typeConverters.remove(new TypeConverterKey(toBoxedType(in), toBoxedType(out)));
+            registry = null;
             return this;
         }
 
         public Builder removeAllTypeConverters() {
             typeConverters.clear();
+            registry = TypeConverterRegistry.EMPTY;
             return this;
         }
 
         public BeanSetter build() {
+            if (registry == null) {
+                registry = new TypeConverterRegistry(typeConverters);
+            }
             return new BeanSetter(this);
         }
     }
 
     private BeanSetter(Builder b) {
         errorOnUnused = b.errorOnUnused;
-        typeConverters = b.typeConverters;
+        useMethodHandles = b.useMethodHandles;
+        useCompiled = b.useCompiled;
+        typeConverters = b.registry;
+        metrics = b.metrics;
     }
 
     public void setProperties(Object bean, Map<String, ?> properties) {
@@ -84,129 +155,397 @@ public class BeanSetter {
         if (properties == null) {
             throw new NullPointerException("properties is null");
         }
-        Map<String, Method> setters = getSetters(bean.getClass());
+        BeanPlan plan = plans.get(bean.getClass());
         for (Map.Entry<String, ?> property : properties.entrySet()) {
             // Find setter
             String propertyName = property.getKey();
-            String setterName = getSetterName(propertyName);
-            Method setter = setters.get(setterName);
+            PropertySetter setter = plan.getSetter(propertyName);
             if (setter == null) {
-                String msg = "Could not find setter for property \"" + propertyName + "\"";
-                if (errorOnUnused) {
-                    throw new IllegalArgumentException(msg);
-                } else {
-                    LOG.warn(msg);
-                    continue;
-                }
-            }
-
-            // Set property value
-            Object propertyValue = property.getValue();
-            try {
-                setter.invoke(bean, propertyValue);
+                missingSetter(plan, propertyName);
                 continue;
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                throw new IllegalArgumentException(
-                    "Failed to set property \"" + propertyName + "\", cannot invoke setter", e);
-            } catch (IllegalArgumentException e) {
-                // Argument type mismatch, try to convert property value
             }
+            setProperty(bean, setter, propertyName, property.getValue());
+        }
+        bound(bean);
+    }
 
-            Class<?> parameterType = setter.getParameterTypes()[0];
-            Object convertedValue;
-            try {
-                convertedValue = convertValue(propertyValue, toBoxedType(parameterType));
-            } catch (IllegalArgumentException e) {
-                throw new IllegalArgumentException(
-                    "Failed to set property \"" + propertyName + "\"" +
-                        ", failed to convert " + propertyValue.getClass().getName() + " to " + parameterType.getName(), e);
-            }
-            try {
-                setter.invoke(bean, convertedValue);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                // This should've happened already...
-                throw new IllegalArgumentException(
-                    "Failed to set property \"" + propertyName + "\", cannot invoke setter", e);
-            }
+    /**
+     * Creates a bean for each record and sets its properties.
+     * Records with the same keys in the same order (e.g. rows read with a shared header) reuse the setters
+     * resolved for the previous record.
+     *
+     * @return the beans, in the same order as the records
+     */
+    public <T> List<T> setPropertiesAll(Supplier<? extends T> beanSupplier,
+                                        Iterable<? extends Map<String, ?>> records) {
+        if (beanSupplier == null) {
+            throw new NullPointerException("beanSupplier is null");
+        }
+        if (records == null) {
+            throw new NullPointerException("records is null");
         }
+        List<T> beans = records instanceof Collection ? new ArrayList<>(((Collection<?>) records).size())
+                                                      : new ArrayList<>();
+        RecordBinder binder = new RecordBinder();
+        for (Map<String, ?> record : records) {
+            T bean = beanSupplier.get();
+            binder.bind(bean, record);
+            beans.add(bean);
+        }
+        return beans;
     }
 
-    private Object convertValue(Object propertyValue, Class<?> parameterType) {
-        Class<?> propertyType = propertyValue.getClass();
+    /**
+     * Lazily creates a bean for each record and sets its properties.
+     * The records are bound in parallel if the stream is parallel.
+     *
+     * @see #setPropertiesAll(Supplier, Iterable)
+     */
+    public <T> Stream<T> setPropertiesAll(Supplier<? extends T> beanSupplier,
+                                          Stream<? extends Map<String, ?>> records) {
+        if (beanSupplier == null) {
+            throw new NullPointerException("beanSupplier is null");
+        }
+        if (records == null) {
+            throw new NullPointerException("records is null");
+        }
+        return StreamSupport.stream(new BindingSpliterator<T>(beanSupplier, records.spliterator()),
+                                    records.isParallel())
+                            .onClose(records::close);
+    }
 
-        // Type converter is highest priority since they are explicitly registered
-        Function<Object, Object> typeConverter = getTypeConverter(propertyType, parameterType);
-        if (typeConverter == null) {
-            LOG.debug("No type converter for {} to {}", propertyType, parameterType);
-        } else {
-            try {
-                return typeConverter.apply(propertyValue);
-            } catch (RuntimeException e) {
-                throw new IllegalArgumentException(
-                    "Failed invoking type converter from " + propertyType.getName() + " to " + parameterType.getName(), e);
-            }
+    /**
+     * Prepares a binder setting properties from rows of values, where each column is a property.
+     *
+     * @throws IllegalArgumentException if a column has no setter and unused properties are an error
+     */
+    public <T> BeanBinder<T> newBinder(Class<T> beanClass, List<String> columns) {
+        if (beanClass == null) {
+            throw new NullPointerException("beanClass is null");
         }
+        if (columns == null) {
+            throw new NullPointerException("columns is null");
+        }
+        return new BeanBinder<>(this, beanClass, plans.get(beanClass), columns);
+    }
 
-        // TODO: Search for static valueOf method
-        Method[] methods = parameterType.getMethods();
-
-        // valueOf is used by boxed types and enums
-        for (Method method : methods) {
-            if (Modifier.isStatic(method.getModifiers()) &&
-                method.getReturnType() == parameterType &&
-                method.getName().equals("valueOf") &&
-                method.getParameterTypes().length == 1) {
-                try {
-                    return method.invoke(null, propertyValue);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new IllegalArgumentException("Cannot invoke " + parameterType.getName() + ".valueOf", e);
-                } catch (IllegalArgumentException e) {
-                    // Argument type mismatch
-                    LOG.debug("{}.valueOf failed", method.toString(), e);
+    /**
+     * @see #newBinder(Class, List)
+     */
+    public <T> BeanBinder<T> newBinder(Class<T> beanClass, String... columns) {
+        if (columns == null) {
+            throw new NullPointerException("columns is null");
+        }
+        return newBinder(beanClass, Arrays.asList(columns));
+    }
+
+    /**
+     * Prepares a binder reading records of {@code key=value} lines, parsing primitive values directly from the text.
+     */
+    public <T> TextRecordBinder<T> newTextBinder(Class<T> beanClass) {
+        if (beanClass == null) {
+            throw new NullPointerException("beanClass is null");
+        }
+        return new TextRecordBinder<>(this, beanClass, plans.get(beanClass), useMethodHandles);
+    }
+
+    /**
+     * Prepares a mapper copying properties from beans of one class to another, matching getters with setters.
+     * Either class may be an interface of beans created by {@link BeanFactory}.
+     *
+     * @throws IllegalArgumentException if a getter has no setter and unused properties are an error
+     */
+    public <S, T> BeanMapper<S, T> newMapper(Class<S> sourceClass, Class<T> targetClass) {
+        if (sourceClass == null) {
+            throw new NullPointerException("sourceClass is null");
+        }
+        if (targetClass == null) {
+            throw new NullPointerException("targetClass is null");
+        }
+        return new BeanMapper<>(this, sourceClass, targetClass, plans.get(targetClass), useMethodHandles);
+    }
+
+    /**
+     * Describes how properties of a bean class are set: the setter of each property, methods that look like
+     * setters but were skipped, and the conversions resolved so far for the types of its setters.
+     * Everything is recorded as it is resolved, so binding itself never logs.
+     */
+    public String explain(Class<?> beanClass) {
+        if (beanClass == null) {
+            throw new NullPointerException("beanClass is null");
+        }
+        BeanPlan plan = plans.get(beanClass);
+        StringBuilder sb = new StringBuilder(beanClass.getName()).append('\n');
+        Set<Class<?>> propertyTypes = new HashSet<>();
+        for (PropertySetter setter : new TreeMap<>(plan.getSetters()).values()) {
+            sb.append("  property \"").append(setter.getPropertyName()).append("\": ");
+            if (setter.isCompiled()) {
+                sb.append(setter.getParameterType().getName()).append(" (compiled)").append('\n');
+            } else {
+                sb.append(setter.getMethod()).append(setter.hasHandle() ? " (method handle)" : " (reflection)")
+                  .append('\n');
+            }
+            propertyTypes.add(setter.getBoxedType());
+        }
+        for (String skipped : plan.getSkipped()) {
+            sb.append("  skipped ").append(skipped).append('\n');
+        }
+        Map<String, Converter> conversions = new TreeMap<>();
+        for (Map<Class<?>, Converter> byOut : converters.values()) {
+            for (Converter converter : byOut.values()) {
+                if (propertyTypes.contains(converter.getOut())) {
+                    conversions.put(converter.getIn().getName() + " -> " + converter.getOut().getName(), converter);
                 }
             }
         }
+        for (Map.Entry<String, Converter> conversion : conversions.entrySet()) {
+            sb.append("  conversion ").append(conversion.getKey()).append(": ")
+              .append(conversion.getValue().getStrategy()).append('\n');
+        }
+        if (errorOnUnused) {
+            sb.append("  unused properties are an error\n");
+        } else if (!plan.getUnused().isEmpty()) {
+            sb.append("  unused properties seen: ").append(new TreeSet<>(plan.getUnused()));
+            if (plan.getSuppressedUnused() > 0) {
+                sb.append(" and ").append(plan.getSuppressedUnused()).append(" more occurrences");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
 
-        // parse is used by java.time types
-        for (Method method : methods) {
-            if (Modifier.isStatic(method.getModifiers()) &&
-                method.getReturnType() == parameterType &&
-                method.getName().equals("parse") &&
-                method.getParameterTypes().length == 1) {
-                try {
-                    return method.invoke(null, propertyValue);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new IllegalArgumentException("Cannot invoke " + parameterType.getName() + ".parse", e);
-                } catch (IllegalArgumentException e) {
-                    // Argument type mismatch
-                    LOG.debug("{}.parse failed", parameterType.getName(), e);
-                }
+    void missingSetter(BeanPlan plan, String propertyName) {
+        if (errorOnUnused) {
+            throw new IllegalArgumentException("Could not find setter for property \"" + propertyName + "\"");
+        } else if (plan.addUnused(propertyName)) {
+            // Only warn the first time, unused properties are usually unused in every record
+            LOG.warn("Could not find setter for property \"{}\" of {}", propertyName, plan.getBeanClass().getName());
+        }
+    }
+
+    void bound(Object bean) {
+        if (metrics != null) {
+            metrics.beanBound(bean.getClass());
+        }
+    }
+
+    void setProperty(Object bean, PropertySetter setter, String propertyName, Object propertyValue) {
+        setProperty(bean, setter, propertyName, propertyValue, null);
+    }
+
+    /**
+     * Sets a property, converting the value with the given converter if it is not null and conversion is needed.
+     */
+    void setProperty(Object bean, PropertySetter setter, String propertyName, Object propertyValue,
+                     Converter converter) {
+        if (setter.accepts(propertyValue)) {
+            invokeSetter(setter, bean, propertyValue);
+            return;
+        }
+        if (propertyValue == null) {
+            propertyFailed(bean, setter);
+            throw new IllegalArgumentException(
+                "Failed to set property \"" + propertyName + "\", cannot assign null to " +
+                    setter.getParameterType().getName());
+        }
+
+        Class<?> parameterType = setter.getParameterType();
+        if (converter == null) {
+            converter = getConverter(setter, propertyValue.getClass());
+        }
+        Object convertedValue;
+        try {
+            if (metrics == null) {
+                convertedValue = converter.convert(propertyValue);
+            } else {
+                long start = System.nanoTime();
+                convertedValue = converter.convert(propertyValue);
+                metrics.converted(converter.getStrategy(), System.nanoTime() - start);
             }
+        } catch (IllegalArgumentException e) {
+            propertyFailed(bean, setter);
+            throw new IllegalArgumentException(
+                "Failed to set property \"" + propertyName + "\"" +
+                    ", failed to convert " + propertyValue.getClass().getName() + " to " + parameterType.getName(), e);
         }
+        invokeSetter(setter, bean, convertedValue);
+    }
 
-        // TODO: constructor is lowest priority since it always allocates a new instance
-        for (Constructor<?> ctor : parameterType.getConstructors()) {
-            if (ctor.getParameterTypes().length == 1) {
-                try {
-                    return ctor.newInstance(propertyValue);
-                } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
-                    throw new IllegalArgumentException("Cannot construct " + parameterType.getName(), e);
-                } catch (IllegalArgumentException e) {
-                    // Argument type mismatch
-                    LOG.debug("{} constructor failed", parameterType.getName(), e);
+    /**
+     * Binds a sequence of records, remembering the setters found for the keys of the previous record.
+     * Not thread safe, each thread needs its own binder.
+     */
+    private class RecordBinder {
+        private BeanPlan plan;
+        private String[] keys = new String[0];
+        private PropertySetter[] setters = new PropertySetter[0];
+
+        void bind(Object bean, Map<String, ?> record) {
+            if (bean == null) {
+                throw new NullPointerException("bean is null");
+            }
+            if (record == null) {
+                throw new NullPointerException("record is null");
+            }
+            if (plan == null || plan.getBeanClass() != bean.getClass()) {
+                plan = plans.get(bean.getClass());
+                Arrays.fill(keys, null);
+            }
+            if (keys.length < record.size()) {
+                keys = Arrays.copyOf(keys, record.size());
+                setters = Arrays.copyOf(setters, record.size());
+            }
+            int i = 0;
+            for (Map.Entry<String, ?> property : record.entrySet()) {
+                String propertyName = property.getKey();
+                PropertySetter setter;
+                if (keys[i] == propertyName) {
+                    setter = setters[i];
+                } else {
+                    setter = plan.getSetter(propertyName);
+                    keys[i] = propertyName;
+                    setters[i] = setter;
+                }
+                i++;
+                if (setter == null) {
+                    missingSetter(plan, propertyName);
+                    continue;
                 }
+                setProperty(bean, setter, propertyName, property.getValue());
             }
+            bound(bean);
+        }
+    }
+
+    private class BindingSpliterator<T> implements Spliterator<T> {
+        private final Supplier<? extends T> beanSupplier;
+        private final Spliterator<? extends Map<String, ?>> records;
+        private final RecordBinder binder = new RecordBinder();
+
+        BindingSpliterator(Supplier<? extends T> beanSupplier, Spliterator<? extends Map<String, ?>> records) {
+            this.beanSupplier = beanSupplier;
+            this.records = records;
+        }
+
+        @Override // Spliterator
+        public boolean tryAdvance(Consumer<? super T> action) {
+            return records.tryAdvance(record -> action.accept(bind(record)));
+        }
+
+        @Override // Spliterator
+        public void forEachRemaining(Consumer<? super T> action) {
+            records.forEachRemaining(record -> action.accept(bind(record)));
+        }
+
+        private T bind(Map<String, ?> record) {
+            T bean = beanSupplier.get();
+            binder.bind(bean, record);
+            return bean;
+        }
+
+        @Override // Spliterator
+        public Spliterator<T> trySplit() {
+            Spliterator<? extends Map<String, ?>> split = records.trySplit();
+            return split != null ? new BindingSpliterator<T>(beanSupplier, split) : null;
+        }
+
+        @Override // Spliterator
+        public long estimateSize() {
+            return records.estimateSize();
+        }
+
+        @Override // Spliterator
+        public int characteristics() {
+            return records.characteristics() & (ORDERED | SIZED | SUBSIZED);
+        }
+    }
+
+    private void invokeSetter(PropertySetter setter, Object bean, Object value) {
+        if (metrics != null && setter.isReflective(value)) {
+            metrics.reflectiveSet(bean.getClass(), setter.getPropertyName());
         }
+        try {
+            setter.invoke(bean, value);
+        } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
+            propertyFailed(bean, setter);
+            throw new IllegalArgumentException(
+                "Failed to set property \"" + setter.getPropertyName() + "\", cannot invoke setter", e);
+        }
+    }
 
-        throw new IllegalArgumentException("Cannot convert " + propertyType.getName()  + " to " + parameterType.getName());
+    private void propertyFailed(Object bean, PropertySetter setter) {
+        if (metrics != null) {
+            metrics.propertyFailed(bean.getClass(), setter.getPropertyName());
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    private Function<Object, Object> getTypeConverter(Class<?> in, Class<?> out) {
-        return (Function) typeConverters.get(new TypeConverterKey(toBoxedType(in), toBoxedType(out)));
+    // Uses the converter last resolved for the setter if it was for the same type
+    private Converter getConverter(PropertySetter setter, Class<?> propertyType) {
+        Converter converter = setter.getConverter(propertyType);
+        if (converter == null) {
+            converter = getConverter(propertyType, setter.getBoxedType());
+            setter.setConverter(converter);
+        } else {
+            conversionCacheHit();
+        }
+        return converter;
+    }
+
+    Converter getConverter(Class<?> in, Class<?> out) {
+        ConcurrentMap<Class<?>, Converter> byOut = converters.get(in);
+        if (byOut == null) {
+            byOut = converters.computeIfAbsent(in, c -> new ConcurrentHashMap<>());
+        }
+        Converter converter = byOut.get(out);
+        if (converter != null) {
+            conversionCacheHit();
+            return converter;
+        }
+        conversionCacheMisses.increment();
+        if (metrics != null) {
+            metrics.conversionCacheMiss();
+        }
+        converter = Converter.resolve(in, out, typeConverters.get(in, out), useMethodHandles);
+        Converter existing = byOut.putIfAbsent(out, converter);
+        return existing != null ? existing : converter;
+    }
+
+    private void conversionCacheHit() {
+        conversionCacheHits.increment();
+        if (metrics != null) {
+            metrics.conversionCacheHit();
+        }
     }
 
-    private static Class<?> toBoxedType(Class<?> type) {
+    /**
+     * Returns the number of conversions that used an already resolved conversion strategy.
+     */
+    public long getConversionCacheHits() {
+        return conversionCacheHits.sum();
+    }
+
+    /**
+     * Returns the number of conversions that had to resolve a conversion strategy reflectively.
+     */
+    public long getConversionCacheMisses() {
+        return conversionCacheMisses.sum();
+    }
+
+    static boolean isWidening(Class<?> from, Class<?> to) {
+        if (to == short.class) {
+            return from == Byte.class;
+        } else if (to == int.class) {
+            return from == Byte.class || from == Short.class || from == Character.class;
+        } else if (to == long.class) {
+            return from == Byte.class || from == Short.class || from == Character.class || from == Integer.class;
+        } else if (to == float.class || to == double.class) {
+            return from == Byte.class || from == Short.class || from == Character.class || from == Integer.class ||
+                from == Long.class || (to == double.class && from == Float.class);
+        }
+        return false;
+    }
+
+    static Class<?> toBoxedType(Class<?> type) {
         if (!type.isPrimitive()) {
             return type;
         } else if (type == boolean.class) {
@@ -229,31 +568,4 @@ public class BeanSetter {
             throw new IllegalArgumentException("Unknown primitive type?! " + type.getName());
         }
     }
-
-    // TODO: cache this
-    private static Map<String, Method> getSetters(Class<?> beanClass) {
-        Map<String, Method> setters = new HashMap<>();
-        Method[] methods = beanClass.getMethods();
-        LOG.debug("Found {} methods", methods.length);
-        for (Method method : methods) {
-            if (Modifier.isStatic(method.getModifiers())) {
-                LOG.debug("Skipping method, is static: {}", method);
-            } else if (method.getReturnType() != void.class) {
-                LOG.debug("Skipping method, not void return: {}", method);
-            } else if (!method.getName().startsWith("set")) {
-                LOG.debug("Skipping method, does not start with \"set\": {}", method);
-            }  else if (method.getParameterTypes().length != 1) {
-                LOG.debug("Skipping method, does not have exactly one parameter: {}", method);
-            } else {
-                LOG.debug("Found setter: {}", method);
-                setters.put(method.getName(), method);
-            }
-        }
-        LOG.debug("Found {} setters", setters.size());
-        return setters;
-    }
-
-    private static String getSetterName(String propertyName) {
-        return "set" + Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
-    }
 }
@@ -0,0 +1,108 @@
+package org.korz.beanmagic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bean that reads and writes fixed size records of a buffer, created by {@link BeanFactory#createView}.
+ * The bean holds no values of its own and is moved between records, so scanning a buffer allocates nothing.
+ * Buffers may be direct or memory mapped, larger datasets can be scanned by moving the view between buffers.
+ * The bean is a cursor, so it should be copied (e.g. with {@link BeanFactory#freeze}) rather than kept,
+ * and its equals and hashCode change as it moves.
+ * Views are not thread safe.
+ */
+public class BeanView<T> {
+    private final BufferBeanClass bufferClass;
+    private final T bean;
+    private final int recordSize;
+    private ByteBuffer buffer;
+    private int offset;
+
+    @SuppressWarnings("unchecked")
+    BeanView(BufferBeanClass bufferClass, ByteBuffer buffer) {
+        this.bufferClass = bufferClass;
+        this.bean = (T) bufferClass.newInstance();
+        this.recordSize = bufferClass.getBinaryLayout().getRecordSize();
+        moveTo(buffer, 0);
+    }
+
+    /**
+     * Returns the bean, which reads and writes the current record.
+     */
+    public T getBean() {
+        return bean;
+    }
+
+    /**
+     * Returns the number of bytes of each record.
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset of the current record in the buffer.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of whole records before the limit of the buffer.
+     */
+    public int getRecordCount() {
+        return buffer.limit() / recordSize;
+    }
+
+    /**
+     * Moves to the record at an index, i.e. at offset {@code index * getRecordSize()}.
+     *
+     * @return the bean
+     */
+    public T moveToRecord(int index) {
+        return moveTo((long) index * recordSize);
+    }
+
+    /**
+     * Moves to the record at an offset of the buffer, which need not be a multiple of the record size.
+     *
+     * @return the bean
+     */
+    public T moveTo(int offset) {
+        return moveTo((long) offset);
+    }
+
+    /**
+     * Moves to the record at an offset of another buffer.
+     *
+     * @return the bean
+     */
+    public T moveTo(ByteBuffer buffer, int offset) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer is null");
+        }
+        checkOffset(buffer, offset);
+        this.buffer = buffer;
+        this.offset = offset;
+        bufferClass.moveTo(bean, buffer, offset);
+        return bean;
+    }
+
+    private T moveTo(long offset) {
+        checkOffset(buffer, offset);
+        this.offset = (int) offset;
+        bufferClass.moveTo(bean, buffer, this.offset);
+        return bean;
+    }
+
+    private void checkOffset(ByteBuffer buffer, long offset) {
+        // An empty buffer is allowed at offset 0, so a view can be created before there are records
+        if (offset < 0 || (offset + recordSize > buffer.limit() && !(offset == 0 && buffer.limit() == 0))) {
+            throw new IndexOutOfBoundsException(
+                "Record at offset " + offset + " is outside the limit " + buffer.limit());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.korz.beanmagic;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads what {@link BinaryOutput} writes.
+ */
+abstract class BinaryInput {
+    /**
+     * Returns the next byte, 0 to 255.
+     */
+    abstract int readByte() throws IOException;
+
+    abstract void readFully(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Fails early if fewer bytes are available, so a corrupt length does not allocate a huge array.
+     */
+    void checkAvailable(int length) throws IOException {
+    }
+
+    long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    long readZigZag() throws IOException {
+        long value = readVarint();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Reads a varint that must fit an int, e.g. a length.
+     */
+    int readLength() throws IOException {
+        long value = readVarint();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Malformed length: " + value);
+        }
+        return (int) value;
+    }
+
+    int readInt() throws IOException {
+        return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+
+    long readLong() throws IOException {
+        return (long) readInt() << 32 | readInt() & 0xffffffffL;
+    }
+
+    /**
+     * Reads from a buffer from its position.
+     */
+    static class Buffer extends BinaryInput {
+        private final ByteBuffer buffer;
+        private final boolean bigEndian;
+
+        Buffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        }
+
+        @Override // BinaryInput
+        int readByte() {
+            return buffer.get() & 0xff;
+        }
+
+        @Override // BinaryInput
+        void readFully(byte[] bytes, int offset, int length) {
+            buffer.get(bytes, offset, length);
+        }
+
+        @Override // BinaryInput
+        void checkAvailable(int length) {
+            if (length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+        }
+
+        @Override // BinaryInput
+        int readInt() {
+            int value = buffer.getInt();
+            return bigEndian ? value : Integer.reverseBytes(value);
+        }
+
+        @Override // BinaryInput
+        long readLong() {
+            long value = buffer.getLong();
+            return bigEndian ? value : Long.reverseBytes(value);
+        }
+    }
+
+    /**
+     * Reads a byte at a time, so no more than the encoded beans is read from the stream.
+     */
+    static class Stream extends BinaryInput {
+        private final InputStream in;
+
+        Stream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override // BinaryInput
+        int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        @Override // BinaryInput
+        void readFully(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int read = in.read(bytes, offset, length);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+                offset += read;
+                length -= read;
+            }
+        }
+    }
+}
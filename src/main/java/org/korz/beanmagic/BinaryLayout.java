@@ -0,0 +1,234 @@
+package org.korz.beanmagic;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The binary layout of a bean interface with only primitive properties, each at a fixed offset within a record.
+ * Properties are ordered by descending size, so each is aligned to its size if records are.
+ * Values use the byte order of the buffer, booleans are a byte of 0 or 1.
+ */
+class BinaryLayout {
+    private static final ClassValue<BinaryLayout> LAYOUTS = new ClassValue<BinaryLayout>() {
+        @Override // ClassValue
+        protected BinaryLayout computeValue(Class<?> beanInterface) {
+            return new BinaryLayout(BeanLayout.of(beanInterface));
+        }
+    };
+
+    private final BeanLayout layout;
+    private final int[] offsets;
+    private final int recordSize;
+    // Offsets by index within each storage, for proxy beans
+    private final int[] integralOffsets;
+    private final Class<?>[] integralTypes;
+    private final int[] floatingOffsets;
+    private final Class<?>[] floatingTypes;
+    private final int[] booleanOffsets;
+
+    private BinaryLayout(BeanLayout layout) {
+        this.layout = layout;
+        int count = layout.getPropertyCount();
+        if (count == 0) {
+            // Records would take no space, so a buffer would hold any number of them
+            throw new IllegalArgumentException("No properties: " + layout.getBeanInterface().getName());
+        }
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < count; slot++) {
+            Class<?> type = layout.getPropertyType(slot);
+            if (type == null || !type.isPrimitive()) {
+                throw new IllegalArgumentException(
+                    "Property \"" + layout.getPropertyName(slot) + "\" of " +
+                        layout.getBeanInterface().getName() + " is not a primitive");
+            }
+            slots.add(slot);
+        }
+        if (layout.hasCompareAndSet()) {
+            throw new IllegalArgumentException(
+                "Buffer beans cannot compare-and-set: " + layout.getBeanInterface().getName());
+        }
+        // Stable, so properties of the same size keep the order of their slots
+        slots.sort(Comparator.comparingInt((Integer slot) -> sizeOf(layout.getPropertyType(slot))).reversed());
+
+        this.offsets = new int[count];
+        this.integralOffsets = new int[layout.getCount(BeanLayout.Storage.INTEGRAL)];
+        this.integralTypes = new Class<?>[integralOffsets.length];
+        this.floatingOffsets = new int[layout.getCount(BeanLayout.Storage.FLOATING)];
+        this.floatingTypes = new Class<?>[floatingOffsets.length];
+        this.booleanOffsets = new int[layout.getCount(BeanLayout.Storage.BOOLEAN)];
+        int offset = 0;
+        int alignment = 1;
+        for (int slot : slots) {
+            int size = sizeOf(layout.getPropertyType(slot));
+            offsets[slot] = offset;
+            int index = layout.getIndex(slot);
+            switch (layout.getStorage(slot)) {
+                case INTEGRAL:
+                    integralOffsets[index] = offset;
+                    integralTypes[index] = layout.getPropertyType(slot);
+                    break;
+                case FLOATING:
+                    floatingOffsets[index] = offset;
+                    floatingTypes[index] = layout.getPropertyType(slot);
+                    break;
+                default:
+                    booleanOffsets[index] = offset;
+                    break;
+            }
+            offset += size;
+            alignment = Math.max(alignment, size);
+        }
+        // Padded so that consecutive records stay aligned
+        this.recordSize = (offset + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the interface has no properties or a property is not primitive
+     */
+    public static BinaryLayout of(Class<?> beanInterface) {
+        return LAYOUTS.get(beanInterface);
+    }
+
+    public BeanLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the number of bytes of each record.
+     */
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    /**
+     * Returns the offset of a property within a record.
+     */
+    public int getOffset(int slot) {
+        return offsets[slot];
+    }
+
+    public int getIntegralOffset(int index) {
+        return integralOffsets[index];
+    }
+
+    public Class<?> getIntegralType(int index) {
+        return integralTypes[index];
+    }
+
+    public int getFloatingOffset(int index) {
+        return floatingOffsets[index];
+    }
+
+    public Class<?> getFloatingType(int index) {
+        return floatingTypes[index];
+    }
+
+    public int getBooleanOffset(int index) {
+        return booleanOffsets[index];
+    }
+
+    /**
+     * Returns the value of a property of the record at an offset, boxed as its getter would.
+     */
+    public Object get(ByteBuffer buffer, int offset, int slot) {
+        Class<?> type = layout.getPropertyType(slot);
+        int index = offset + offsets[slot];
+        if (type == int.class) {
+            return buffer.getInt(index);
+        } else if (type == long.class) {
+            return buffer.getLong(index);
+        } else if (type == double.class) {
+            return buffer.getDouble(index);
+        } else if (type == float.class) {
+            return buffer.getFloat(index);
+        } else if (type == short.class) {
+            return buffer.getShort(index);
+        } else if (type == byte.class) {
+            return buffer.get(index);
+        } else if (type == char.class) {
+            return buffer.getChar(index);
+        } else {
+            return getBoolean(buffer, index);
+        }
+    }
+
+    /**
+     * Sets a property of the record at an offset from a value boxed as its getter would return it.
+     */
+    public void set(ByteBuffer buffer, int offset, int slot, Object value) {
+        Class<?> type = layout.getPropertyType(slot);
+        int index = offset + offsets[slot];
+        if (type == boolean.class) {
+            putBoolean(buffer, index, (Boolean) value);
+        } else if (type == char.class) {
+            buffer.putChar(index, (Character) value);
+        } else if (type == float.class || type == double.class) {
+            putFloating(buffer, index, type, ((Number) value).doubleValue());
+        } else {
+            putIntegral(buffer, index, type, ((Number) value).longValue());
+        }
+    }
+
+    static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    static long getIntegral(ByteBuffer buffer, int index, Class<?> type) {
+        if (type == int.class) {
+            return buffer.getInt(index);
+        } else if (type == long.class) {
+            return buffer.getLong(index);
+        } else if (type == short.class) {
+            return buffer.getShort(index);
+        } else if (type == byte.class) {
+            return buffer.get(index);
+        } else {
+            return buffer.getChar(index);
+        }
+    }
+
+    static void putIntegral(ByteBuffer buffer, int index, Class<?> type, long value) {
+        if (type == int.class) {
+            buffer.putInt(index, (int) value);
+        } else if (type == long.class) {
+            buffer.putLong(index, value);
+        } else if (type == short.class) {
+            buffer.putShort(index, (short) value);
+        } else if (type == byte.class) {
+            buffer.put(index, (byte) value);
+        } else {
+            buffer.putChar(index, (char) value);
+        }
+    }
+
+    static double getFloating(ByteBuffer buffer, int index, Class<?> type) {
+        return type == float.class ? buffer.getFloat(index) : buffer.getDouble(index);
+    }
+
+    static void putFloating(ByteBuffer buffer, int index, Class<?> type, double value) {
+        if (type == float.class) {
+            buffer.putFloat(index, (float) value);
+        } else {
+            buffer.putDouble(index, value);
+        }
+    }
+
+    // Only the low bit, the same as generated classes
+    static boolean getBoolean(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 1) != 0;
+    }
+
+    static void putBoolean(ByteBuffer buffer, int index, boolean value) {
+        buffer.put(index, (byte) (value ? 1 : 0));
+    }
+}
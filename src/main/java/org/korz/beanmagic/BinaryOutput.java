@@ -0,0 +1,120 @@
+package org.korz.beanmagic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes the primitives of the {@link BeanCodec} format, big-endian with variable length integers.
+ */
+abstract class BinaryOutput {
+    abstract void writeByte(int value) throws IOException;
+
+    abstract void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Writes 7 bits per byte, low bits first, with the high bit set on all but the last byte.
+     */
+    void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            writeByte((int) value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    /**
+     * Writes a signed value so that small negative values are short too.
+     */
+    void writeZigZag(long value) throws IOException {
+        writeVarint(value << 1 ^ value >> 63);
+    }
+
+    void writeInt(int value) throws IOException {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * Writes to a buffer from its position, big-endian whatever the order of the buffer.
+     */
+    static class Buffer extends BinaryOutput {
+        private final ByteBuffer buffer;
+        private final boolean bigEndian;
+
+        Buffer(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        }
+
+        @Override // BinaryOutput
+        void writeByte(int value) {
+            buffer.put((byte) value);
+        }
+
+        @Override // BinaryOutput
+        void write(byte[] bytes, int offset, int length) {
+            buffer.put(bytes, offset, length);
+        }
+
+        @Override // BinaryOutput
+        void writeInt(int value) {
+            buffer.putInt(bigEndian ? value : Integer.reverseBytes(value));
+        }
+
+        @Override // BinaryOutput
+        void writeLong(long value) {
+            buffer.putLong(bigEndian ? value : Long.reverseBytes(value));
+        }
+    }
+
+    /**
+     * Collects bytes in an array, written to a stream by {@link #flush}.
+     */
+    static class Stream extends BinaryOutput {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[8192];
+        private int count;
+
+        Stream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override // BinaryOutput
+        void writeByte(int value) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) value;
+        }
+
+        @Override // BinaryOutput
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - count) {
+                flush();
+                if (length > buffer.length) {
+                    out.write(bytes, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        /**
+         * Writes the collected bytes to the stream, without flushing the stream itself.
+         */
+        void flush() throws IOException {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
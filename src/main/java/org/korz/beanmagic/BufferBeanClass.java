@@ -0,0 +1,30 @@
+package org.korz.beanmagic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Creates beans that read and write a record of a buffer instead of holding their own values.
+ */
+abstract class BufferBeanClass extends BeanClass {
+    private final BinaryLayout binaryLayout;
+
+    protected BufferBeanClass(BinaryLayout binaryLayout) {
+        super(binaryLayout.getLayout());
+        this.binaryLayout = binaryLayout;
+    }
+
+    public BinaryLayout getBinaryLayout() {
+        return binaryLayout;
+    }
+
+    /**
+     * Creates a bean that must be moved to a record before it is used.
+     */
+    @Override // BeanClass
+    public abstract Object newInstance();
+
+    /**
+     * Moves a bean of this class to the record at an offset of a buffer.
+     */
+    public abstract void moveTo(Object bean, ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,99 @@
+package org.korz.beanmagic;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A proxy bean reading and writing the record at an offset of a buffer, moved by {@link BeanView}.
+ * Every property of a record is set.
+ */
+class BufferBeanInvocationHandler extends BeanInvocationHandler {
+    private final BinaryLayout binaryLayout;
+    private ByteBuffer buffer;
+    private int offset;
+
+    BufferBeanInvocationHandler(BinaryLayout binaryLayout) {
+        super(binaryLayout.getLayout());
+        this.binaryLayout = binaryLayout;
+    }
+
+    void moveTo(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean isSet(int slot) {
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    void reset() {
+        throw new UnsupportedOperationException("buffer beans cannot be reset");
+    }
+
+    @Override // BeanInvocationHandler
+    Object getReference(int index) {
+        throw new IllegalStateException("buffer beans have no reference properties");
+    }
+
+    @Override // BeanInvocationHandler
+    long getIntegral(int index) {
+        return BinaryLayout.getIntegral(buffer, offset + binaryLayout.getIntegralOffset(index),
+                                        binaryLayout.getIntegralType(index));
+    }
+
+    @Override // BeanInvocationHandler
+    double getFloating(int index) {
+        return BinaryLayout.getFloating(buffer, offset + binaryLayout.getFloatingOffset(index),
+                                        binaryLayout.getFloatingType(index));
+    }
+
+    @Override // BeanInvocationHandler
+    boolean getBoolean(int index) {
+        return BinaryLayout.getBoolean(buffer, offset + binaryLayout.getBooleanOffset(index));
+    }
+
+    @Override // BeanInvocationHandler
+    void setReference(int slot, int index, Object value) {
+        throw new IllegalStateException("buffer beans have no reference properties");
+    }
+
+    @Override // BeanInvocationHandler
+    void setIntegral(int slot, int index, long value) {
+        BinaryLayout.putIntegral(buffer, offset + binaryLayout.getIntegralOffset(index),
+                                 binaryLayout.getIntegralType(index), value);
+    }
+
+    @Override // BeanInvocationHandler
+    void setFloating(int slot, int index, double value) {
+        BinaryLayout.putFloating(buffer, offset + binaryLayout.getFloatingOffset(index),
+                                 binaryLayout.getFloatingType(index), value);
+    }
+
+    @Override // BeanInvocationHandler
+    void setBoolean(int slot, int index, boolean value) {
+        BinaryLayout.putBoolean(buffer, offset + binaryLayout.getBooleanOffset(index), value);
+    }
+
+    // Binary layouts reject interfaces with compare-and-set accessors
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetReference(int slot, int index, Object expect, Object update) {
+        throw new UnsupportedOperationException("buffer beans cannot compare-and-set");
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetIntegral(int slot, int index, long expect, long update) {
+        throw new UnsupportedOperationException("buffer beans cannot compare-and-set");
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetFloating(int slot, int index, double expect, double update) {
+        throw new UnsupportedOperationException("buffer beans cannot compare-and-set");
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetBoolean(int slot, int index, boolean expect, boolean update) {
+        throw new UnsupportedOperationException("buffer beans cannot compare-and-set");
+    }
+}
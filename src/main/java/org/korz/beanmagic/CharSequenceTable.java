@@ -0,0 +1,61 @@
+package org.korz.beanmagic;
+
+import java.util.Map;
+
+/**
+ * An immutable table of strings, looked up by a range of a {@link CharSequence} without creating a String.
+ */
+class CharSequenceTable<V> {
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    CharSequenceTable(Map<String, ? extends V> entries) {
+        int size = Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) * 2;
+        this.keys = new String[size];
+        this.values = new Object[size];
+        this.mask = size - 1;
+        for (Map.Entry<String, ? extends V> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            int i = hash(key, 0, key.length()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = entry.getValue();
+        }
+    }
+
+    /**
+     * Returns the value of the key equal to the characters from start to end, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(CharSequence chars, int start, int end) {
+        for (int i = hash(chars, start, end) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (matches(keys[i], chars, start, end)) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String key, CharSequence chars, int start, int end) {
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,347 @@
+package org.korz.beanmagic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes just enough of the class file format to generate simple bean classes.
+ * Classes are written as version 49 so methods do not need stack map frames.
+ */
+class ClassFileWriter {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private final DataOutputStream constants = new DataOutputStream(constantPool);
+    private final Map<String, Integer> constantIndexes = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * @param className internal name of the class, e.g. "java/lang/Object"
+     */
+    public ClassFileWriter(String className, String superClassName) {
+        thisClass = classConstant(className);
+        superClass = classConstant(superClassName);
+        utf8Constant("Code");
+    }
+
+    public void addInterface(String interfaceName) {
+        interfaces.add(classConstant(interfaceName));
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    public Code addMethod(int access, String name, String descriptor) {
+        Code code = new Code(access, utf8Constant(name), utf8Constant(descriptor));
+        methods.add(null);
+        code.index = methods.size() - 1;
+        return code;
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantCount);
+            constantPool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int i : interfaces) {
+                out.writeShort(i);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                if (method == null) {
+                    throw new IllegalStateException("method code not finished");
+                }
+                out.write(method);
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    public static String descriptor(Class<?> type) {
+        if (type == void.class) {
+            return "V";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == byte.class) {
+            return "B";
+        } else if (type == short.class) {
+            return "S";
+        } else if (type == int.class) {
+            return "I";
+        } else if (type == long.class) {
+            return "J";
+        } else if (type == char.class) {
+            return "C";
+        } else if (type == float.class) {
+            return "F";
+        } else if (type == double.class) {
+            return "D";
+        } else if (type.isArray()) {
+            return internalName(type);
+        } else {
+            return "L" + internalName(type) + ";";
+        }
+    }
+
+    public static String methodDescriptor(Class<?> returnType, Class<?>... parameterTypes) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> parameterType : parameterTypes) {
+            sb.append(descriptor(parameterType));
+        }
+        return sb.append(')').append(descriptor(returnType)).toString();
+    }
+
+    public int utf8Constant(String value) {
+        return constant("utf8:" + value, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    public int stringConstant(String value) {
+        int utf8 = utf8Constant(value);
+        return constant("string:" + value, out -> {
+            out.writeByte(CONSTANT_STRING);
+            out.writeShort(utf8);
+        });
+    }
+
+    public int integerConstant(int value) {
+        return constant("int:" + value, out -> {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    public int classConstant(String internalName) {
+        int utf8 = utf8Constant(internalName);
+        return constant("class:" + internalName, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(utf8);
+        });
+    }
+
+    public int fieldConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    public int methodConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    public int interfaceMethodConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        int nameAndType = constant("nat:" + name + ":" + descriptor, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + ":" + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int constant(String key, ConstantWriter writer) {
+        Integer existing = constantIndexes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            writer.write(constants);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int index = constantCount++;
+        constantIndexes.put(key, index);
+        return index;
+    }
+
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * The bytecode of a single method, finished with {@link #end}.
+     */
+    public class Code {
+        public static final int ICONST_0 = 0x03;
+        public static final int ICONST_1 = 0x04;
+        public static final int BIPUSH = 0x10;
+        public static final int SIPUSH = 0x11;
+        public static final int ILOAD = 0x15;
+        public static final int LLOAD = 0x16;
+        public static final int FLOAD = 0x17;
+        public static final int DLOAD = 0x18;
+        public static final int ALOAD = 0x19;
+        public static final int IRETURN = 0xac;
+        public static final int LRETURN = 0xad;
+        public static final int FRETURN = 0xae;
+        public static final int DRETURN = 0xaf;
+        public static final int ARETURN = 0xb0;
+        public static final int RETURN = 0xb1;
+        public static final int IADD = 0x60;
+        public static final int IAND = 0x7e;
+        public static final int POP = 0x57;
+        public static final int GETSTATIC = 0xb2;
+        public static final int GETFIELD = 0xb4;
+        public static final int PUTFIELD = 0xb5;
+        public static final int INVOKEVIRTUAL = 0xb6;
+        public static final int INVOKESPECIAL = 0xb7;
+        public static final int INVOKEINTERFACE = 0xb9;
+        public static final int NEW = 0xbb;
+        public static final int ATHROW = 0xbf;
+        public static final int CHECKCAST = 0xc0;
+        public static final int DUP = 0x59;
+        public static final int LDC_W = 0x13;
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int index;
+
+        private Code(int access, int name, int descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        /**
+         * Writes an instruction taking a local variable index, e.g. {@link #ALOAD}.
+         */
+        public Code local(int opcode, int local) {
+            bytes.write(opcode);
+            bytes.write(local);
+            return this;
+        }
+
+        /**
+         * Writes an instruction taking a constant pool index, e.g. {@link #GETFIELD}.
+         */
+        public Code constant(int opcode, int constant) {
+            bytes.write(opcode);
+            bytes.write(constant >> 8);
+            bytes.write(constant);
+            return this;
+        }
+
+        /**
+         * Pushes an int constant with the shortest instruction.
+         */
+        public Code push(int value) {
+            if (value >= -1 && value <= 5) {
+                bytes.write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                bytes.write(SIPUSH);
+                bytes.write(value >> 8);
+                bytes.write(value);
+            } else {
+                constant(LDC_W, integerConstant(value));
+            }
+            return this;
+        }
+
+        public Code invokeInterface(int constant, int argumentSlots) {
+            constant(INVOKEINTERFACE, constant);
+            bytes.write(argumentSlots + 1);
+            bytes.write(0);
+            return this;
+        }
+
+        public void end(int maxStack, int maxLocals) {
+            byte[] code = bytes.toByteArray();
+            ByteArrayOutputStream method = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(method);
+            try {
+                out.writeShort(access);
+                out.writeShort(name);
+                out.writeShort(descriptor);
+                out.writeShort(1); // attributes
+                out.writeShort(utf8Constant("Code"));
+                out.writeInt(12 + code.length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            methods.set(index, method.toByteArray());
+        }
+    }
+}
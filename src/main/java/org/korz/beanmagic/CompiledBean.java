@@ -0,0 +1,44 @@
+package org.korz.beanmagic;
+
+/**
+ * A class implementing a bean interface, generated at compile time for interfaces annotated with
+ * {@link Precompiled}. Implementations are found with {@link java.util.ServiceLoader} and are not meant to be
+ * written by hand. Properties are identified by their index in {@link #getPropertyNames}.
+ */
+public interface CompiledBean<T> {
+    Class<T> getBeanInterface();
+
+    /**
+     * Returns the class of the beans created by {@link #newInstance}.
+     */
+    Class<? extends T> getBeanClass();
+
+    /**
+     * Returns the names of the properties of the interface, in order of index.
+     */
+    String[] getPropertyNames();
+
+    /**
+     * Returns the types of the properties of the interface, in order of index.
+     */
+    Class<?>[] getPropertyTypes();
+
+    T newInstance();
+
+    boolean isSet(T bean, int index);
+
+    /**
+     * Returns the value of a property, boxed as its getter would return it.
+     */
+    Object get(T bean, int index);
+
+    /**
+     * Sets a property from a value boxed as its getter would return it.
+     */
+    void set(T bean, int index, Object value);
+
+    /**
+     * Unsets every property, as if the bean was just created.
+     */
+    void reset(T bean);
+}
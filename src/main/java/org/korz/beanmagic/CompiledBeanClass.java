@@ -0,0 +1,121 @@
+package org.korz.beanmagic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates beans of a class generated at compile time by the annotation processor, see {@link Precompiled}.
+ * The compiled class numbers properties by itself, so the slots of the layout are mapped onto its indexes.
+ */
+class CompiledBeanClass extends BeanClass implements BeanAccess {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledBeanClass.class);
+
+    private static final ClassValue<CompiledBeanClass> CLASSES = new ClassValue<CompiledBeanClass>() {
+        @Override // ClassValue
+        protected CompiledBeanClass computeValue(Class<?> beanInterface) {
+            CompiledBean<?> compiled = CompiledRegistry.getBean(beanInterface);
+            return compiled != null ? create(BeanLayout.of(beanInterface), compiled) : null;
+        }
+    };
+
+    private final CompiledBean<Object> compiled;
+    // The index of the property of each slot
+    private final int[] indexes;
+
+    @SuppressWarnings("unchecked")
+    private CompiledBeanClass(BeanLayout layout, CompiledBean<?> compiled, int[] indexes) {
+        super(layout);
+        this.compiled = (CompiledBean<Object>) compiled;
+        this.indexes = indexes;
+    }
+
+    // Null if the interface has changed since the class was compiled, or needs compare-and-set
+    private static CompiledBeanClass create(BeanLayout layout, CompiledBean<?> compiled) {
+        if (layout.hasCompareAndSet()) {
+            LOG.warn("Ignoring {}, compiled classes cannot compare-and-set properties of {}",
+                     compiled.getBeanClass().getName(), layout.getBeanInterface().getName());
+            return null;
+        }
+        int[] indexes = indexesOf(layout, compiled.getPropertyNames(), compiled.getPropertyTypes());
+        if (indexes == null) {
+            LOG.warn("Ignoring {}, compiled for other properties of {} than {}", compiled.getBeanClass().getName(),
+                     layout.getBeanInterface().getName(), Arrays.toString(compiled.getPropertyNames()));
+            return null;
+        }
+        return new CompiledBeanClass(layout, compiled, indexes);
+    }
+
+    // The index of each slot, or null if the properties do not match the layout
+    private static int[] indexesOf(BeanLayout layout, String[] names, Class<?>[] types) {
+        if (names.length != layout.getPropertyCount()) {
+            return null;
+        }
+        Map<String, Integer> byName = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            byName.put(names[i], i);
+        }
+        int[] indexes = new int[names.length];
+        for (int slot = 0; slot < indexes.length; slot++) {
+            Integer index = byName.get(layout.getPropertyName(slot));
+            if (index == null || types[index] != layout.getPropertyType(slot)) {
+                return null;
+            }
+            indexes[slot] = index;
+        }
+        return indexes;
+    }
+
+    /**
+     * Returns the compiled class of an interface, or null if it has none, it is out of date or it cannot be used.
+     */
+    public static CompiledBeanClass of(Class<?> beanInterface) {
+        return CLASSES.get(beanInterface);
+    }
+
+    /**
+     * Returns the compiled class of a bean, or null if the bean is not an instance of a compiled class.
+     */
+    public static CompiledBeanClass forBean(Object bean) {
+        CompiledBean<?> compiled = CompiledRegistry.getBeanByClass(bean.getClass());
+        return compiled != null ? of(compiled.getBeanInterface()) : null;
+    }
+
+    @Override // BeanAccess
+    public Class<?> getBeanClass() {
+        return compiled.getBeanClass();
+    }
+
+    @Override // BeanClass
+    public Object newInstance() {
+        return compiled.newInstance();
+    }
+
+    @Override // BeanClass
+    public boolean isInstance(Object bean) {
+        return bean != null && bean.getClass() == compiled.getBeanClass();
+    }
+
+    @Override // BeanAccess
+    public boolean isSet(Object bean, int slot) {
+        return compiled.isSet(bean, indexes[slot]);
+    }
+
+    @Override // BeanAccess
+    public Object get(Object bean, int slot) {
+        return compiled.get(bean, indexes[slot]);
+    }
+
+    @Override // BeanAccess
+    public void set(Object bean, int slot, Object value) {
+        compiled.set(bean, indexes[slot], value);
+    }
+
+    @Override // BeanAccess
+    public void reset(Object bean) {
+        compiled.reset(bean);
+    }
+}
@@ -0,0 +1,122 @@
+package org.korz.beanmagic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Finds the classes generated by the annotation processor, see {@link Precompiled}.
+ * Providers are loaded with {@link ServiceLoader} from the class loader of each bean interface or class,
+ * once per class loader.
+ */
+class CompiledRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledRegistry.class);
+
+    private static final CompiledRegistry EMPTY = new CompiledRegistry();
+    // Soft references, so a registry does not keep its class loader alive through the classes it holds
+    private static final Map<ClassLoader, Reference<CompiledRegistry>> REGISTRIES = new WeakHashMap<>();
+
+    private static final ClassValue<CompiledBean<?>> BEANS = new ClassValue<CompiledBean<?>>() {
+        @Override // ClassValue
+        protected CompiledBean<?> computeValue(Class<?> beanInterface) {
+            return registryFor(beanInterface).beans.get(beanInterface);
+        }
+    };
+
+    private static final ClassValue<CompiledBean<?>> BEANS_BY_CLASS = new ClassValue<CompiledBean<?>>() {
+        @Override // ClassValue
+        protected CompiledBean<?> computeValue(Class<?> beanClass) {
+            return registryFor(beanClass).beansByClass.get(beanClass);
+        }
+    };
+
+    private static final ClassValue<CompiledSetters<?>> SETTERS = new ClassValue<CompiledSetters<?>>() {
+        @Override // ClassValue
+        protected CompiledSetters<?> computeValue(Class<?> beanClass) {
+            return registryFor(beanClass).setters.get(beanClass);
+        }
+    };
+
+    private final Map<Class<?>, CompiledBean<?>> beans = new HashMap<>();
+    private final Map<Class<?>, CompiledBean<?>> beansByClass = new HashMap<>();
+    private final Map<Class<?>, CompiledSetters<?>> setters = new HashMap<>();
+
+    private CompiledRegistry() {
+    }
+
+    private CompiledRegistry(ClassLoader loader) {
+        load(CompiledBean.class, loader, bean -> {
+            beans.put(bean.getBeanInterface(), bean);
+            beansByClass.put(bean.getBeanClass(), bean);
+        });
+        load(CompiledSetters.class, loader, compiled -> setters.put(compiled.getBeanClass(), compiled));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Found {} compiled beans and {} compiled setters in {}", beans.size(), setters.size(), loader);
+        }
+    }
+
+    /**
+     * Returns the compiled implementation of a bean interface, or null if there is none.
+     */
+    public static CompiledBean<?> getBean(Class<?> beanInterface) {
+        return BEANS.get(beanInterface);
+    }
+
+    /**
+     * Returns the compiled implementation whose beans are of a class, or null if there is none.
+     */
+    public static CompiledBean<?> getBeanByClass(Class<?> beanClass) {
+        return BEANS_BY_CLASS.get(beanClass);
+    }
+
+    /**
+     * Returns the compiled setters of exactly a class, or null if there are none.
+     */
+    public static CompiledSetters<?> getSetters(Class<?> beanClass) {
+        return SETTERS.get(beanClass);
+    }
+
+    private static synchronized CompiledRegistry registryFor(Class<?> type) {
+        ClassLoader loader = type.getClassLoader();
+        if (loader == null) {
+            // The JDK itself
+            return EMPTY;
+        }
+        Reference<CompiledRegistry> ref = REGISTRIES.get(loader);
+        CompiledRegistry registry = ref != null ? ref.get() : null;
+        if (registry == null) {
+            registry = new CompiledRegistry(loader);
+            REGISTRIES.put(loader, new SoftReference<>(registry));
+        }
+        return registry;
+    }
+
+    // A broken provider only loses its own classes to reflection
+    private static <S> void load(Class<S> service, ClassLoader loader, Consumer<S> consumer) {
+        Iterator<S> providers = ServiceLoader.load(service, loader).iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    return;
+                }
+            } catch (ServiceConfigurationError e) {
+                LOG.warn("Cannot list {} providers, falling back to reflection", service.getSimpleName(), e);
+                return;
+            }
+            try {
+                consumer.accept(providers.next());
+            } catch (ServiceConfigurationError | RuntimeException e) {
+                LOG.warn("Ignoring {} provider, falling back to reflection", service.getSimpleName(), e);
+            }
+        }
+    }
+}
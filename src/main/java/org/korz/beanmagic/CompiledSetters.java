@@ -0,0 +1,27 @@
+package org.korz.beanmagic;
+
+/**
+ * The setters of a bean class, generated at compile time for classes annotated with {@link Precompiled}.
+ * Implementations are found with {@link java.util.ServiceLoader} and are not meant to be written by hand.
+ * Setters are identified by their index in {@link #getSetterNames}.
+ */
+public interface CompiledSetters<T> {
+    Class<T> getBeanClass();
+
+    /**
+     * Returns the names of the setter methods, e.g. "setFoo", in order of index.
+     */
+    String[] getSetterNames();
+
+    /**
+     * Returns the parameter types of the setter methods, in order of index.
+     */
+    Class<?>[] getParameterTypes();
+
+    /**
+     * Invokes a setter with a value of its parameter type, boxed if the type is primitive.
+     *
+     * @throws ClassCastException if the value is not of the parameter type
+     */
+    void set(T bean, int index, Object value);
+}
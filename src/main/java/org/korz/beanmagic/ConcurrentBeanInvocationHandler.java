@@ -0,0 +1,156 @@
+package org.korz.beanmagic;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Stores property values in atomic arrays, so beans can be shared between threads without locking.
+ * Reads are volatile reads, writes are volatile writes and compare-and-set is atomic per property.
+ */
+class ConcurrentBeanInvocationHandler extends BeanInvocationHandler {
+    // Distinguishes references that were never set from references set to null
+    private static final Object UNSET = new Object();
+
+    private final AtomicReferenceArray<Object> references;
+    private final AtomicLongArray integrals;
+    // Raw bits of doubles
+    private final AtomicLongArray floatings;
+    private final AtomicIntegerArray booleans;
+    // Which primitive slots have been set
+    private final AtomicLongArray present;
+
+    public ConcurrentBeanInvocationHandler(BeanLayout layout) {
+        super(layout);
+        int references = layout.getCount(BeanLayout.Storage.REFERENCE);
+        this.references = new AtomicReferenceArray<>(references);
+        for (int i = 0; i < references; i++) {
+            this.references.lazySet(i, UNSET);
+        }
+        this.integrals = new AtomicLongArray(layout.getCount(BeanLayout.Storage.INTEGRAL));
+        this.floatings = new AtomicLongArray(layout.getCount(BeanLayout.Storage.FLOATING));
+        this.booleans = new AtomicIntegerArray(layout.getCount(BeanLayout.Storage.BOOLEAN));
+        this.present = new AtomicLongArray((layout.getPropertyCount() + 63) >>> 6);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean isSet(int slot) {
+        if (getLayout().getStorage(slot) == BeanLayout.Storage.REFERENCE) {
+            return references.get(getLayout().getIndex(slot)) != UNSET;
+        }
+        return (present.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Resets one property at a time, so it must not race with other writes.
+     */
+    @Override // BeanInvocationHandler
+    void reset() {
+        for (int i = 0; i < references.length(); i++) {
+            references.set(i, UNSET);
+        }
+        for (int i = 0; i < integrals.length(); i++) {
+            integrals.set(i, 0);
+        }
+        for (int i = 0; i < floatings.length(); i++) {
+            floatings.set(i, 0);
+        }
+        for (int i = 0; i < booleans.length(); i++) {
+            booleans.set(i, 0);
+        }
+        for (int i = 0; i < present.length(); i++) {
+            present.set(i, 0);
+        }
+    }
+
+    private void markSet(int slot) {
+        long bit = 1L << slot;
+        if ((present.get(slot >>> 6) & bit) == 0) {
+            present.accumulateAndGet(slot >>> 6, bit, (bits, b) -> bits | b);
+        }
+    }
+
+    @Override // BeanInvocationHandler
+    Object getReference(int index) {
+        Object value = references.get(index);
+        return value != UNSET ? value : null;
+    }
+
+    @Override // BeanInvocationHandler
+    long getIntegral(int index) {
+        return integrals.get(index);
+    }
+
+    @Override // BeanInvocationHandler
+    double getFloating(int index) {
+        return Double.longBitsToDouble(floatings.get(index));
+    }
+
+    @Override // BeanInvocationHandler
+    boolean getBoolean(int index) {
+        return booleans.get(index) != 0;
+    }
+
+    @Override // BeanInvocationHandler
+    void setReference(int slot, int index, Object value) {
+        references.set(index, value);
+    }
+
+    @Override // BeanInvocationHandler
+    void setIntegral(int slot, int index, long value) {
+        integrals.set(index, value);
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setFloating(int slot, int index, double value) {
+        floatings.set(index, Double.doubleToRawLongBits(value));
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setBoolean(int slot, int index, boolean value) {
+        booleans.set(index, value ? 1 : 0);
+        markSet(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetReference(int slot, int index, Object expect, Object update) {
+        while (true) {
+            Object current = references.get(index);
+            if (current != expect && !(current == UNSET && expect == null)) {
+                return false;
+            }
+            if (references.compareAndSet(index, current, update)) {
+                return true;
+            }
+        }
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetIntegral(int slot, int index, long expect, long update) {
+        if (!integrals.compareAndSet(index, expect, update)) {
+            return false;
+        }
+        markSet(slot);
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetFloating(int slot, int index, double expect, double update) {
+        if (!floatings.compareAndSet(index, Double.doubleToRawLongBits(expect), Double.doubleToRawLongBits(update))) {
+            return false;
+        }
+        markSet(slot);
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetBoolean(int slot, int index, boolean expect, boolean update) {
+        if (!booleans.compareAndSet(index, expect ? 1 : 0, update ? 1 : 0)) {
+            return false;
+        }
+        markSet(slot);
+        return true;
+    }
+}
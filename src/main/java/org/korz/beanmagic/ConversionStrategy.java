@@ -0,0 +1,19 @@
+package org.korz.beanmagic;
+
+/**
+ * How a value was converted to the type of a setter, in order of priority.
+ */
+public enum ConversionStrategy {
+    /** A function registered with {@link BeanSetter.Builder#addTypeConverter}. */
+    TYPE_CONVERTER,
+    /** Built-in parsing of text to a boxed primitive, enum or java.time type, without creating a String. */
+    TEXT,
+    /** A static valueOf method of the target type, e.g. boxed types and enums. */
+    VALUE_OF,
+    /** A static parse method of the target type, e.g. java.time types. */
+    PARSE,
+    /** A one argument constructor of the target type. */
+    CONSTRUCTOR,
+    /** No way to convert was found. */
+    NONE
+}
@@ -0,0 +1,260 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+
+/**
+ * A resolved strategy for converting values of one type to another.
+ */
+abstract class Converter {
+    private final Class<?> in;
+    private final Class<?> out;
+
+    private Converter(Class<?> in, Class<?> out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    public Class<?> getIn() {
+        return in;
+    }
+
+    public Class<?> getOut() {
+        return out;
+    }
+
+    public abstract Object convert(Object value);
+
+    public abstract ConversionStrategy getStrategy();
+
+    /**
+     * Returns false if no way to convert was found, in which case {@link #convert} always throws.
+     */
+    public boolean canConvert() {
+        return true;
+    }
+
+    /**
+     * Resolves how to convert from one type to another, in order of priority:
+     * registered type converter, built-in parsing of text, static valueOf method, static parse method and finally
+     * a constructor.
+     * If there is no way to convert, the returned converter always throws.
+     */
+    public static Converter resolve(Class<?> in, Class<?> out, Function<Object, Object> typeConverter,
+                                    boolean useMethodHandles) {
+        // Type converter is highest priority since they are explicitly registered
+        if (typeConverter != null) {
+            return new TypeConverter(in, out, typeConverter);
+        }
+
+        // Text is parsed directly for common types, skipping Strings and reflection
+        if (CharSequence.class.isAssignableFrom(in)) {
+            TextParser parser = TextParser.forType(out);
+            if (parser != null) {
+                return new TextConverter(in, out, parser);
+            }
+        }
+
+        Method[] methods = out.getMethods();
+
+        // valueOf is used by boxed types and enums
+        Method valueOf = findFactoryMethod(methods, "valueOf", in, out);
+        if (valueOf != null) {
+            return new MethodConverter(in, out, valueOf, useMethodHandles);
+        }
+
+        // parse is used by java.time types
+        Method parse = findFactoryMethod(methods, "parse", in, out);
+        if (parse != null) {
+            return new MethodConverter(in, out, parse, useMethodHandles);
+        }
+
+        // constructor is lowest priority since it always allocates a new instance
+        for (Constructor<?> ctor : out.getConstructors()) {
+            if (ctor.getParameterTypes().length == 1 && isAssignable(ctor.getParameterTypes()[0], in)) {
+                return new ConstructorConverter(in, out, ctor, useMethodHandles);
+            }
+        }
+
+        return new NoConverter(in, out);
+    }
+
+    private static Method findFactoryMethod(Method[] methods, String name, Class<?> in, Class<?> out) {
+        for (Method method : methods) {
+            if (Modifier.isStatic(method.getModifiers()) &&
+                method.getReturnType() == out &&
+                method.getName().equals(name) &&
+                method.getParameterTypes().length == 1 &&
+                isAssignable(method.getParameterTypes()[0], in)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    // Same rules as reflective invocation: unboxing, widening and reference assignment
+    private static boolean isAssignable(Class<?> parameterType, Class<?> in) {
+        if (parameterType.isPrimitive()) {
+            return BeanSetter.toBoxedType(parameterType) == in || BeanSetter.isWidening(in, parameterType);
+        }
+        return parameterType.isAssignableFrom(in);
+    }
+
+    // Adapts a handle to (Object)Object, casting the argument to the source type before unboxing or widening
+    private static MethodHandle toHandle(MethodHandle handle, Class<?> in) {
+        return handle.asType(MethodType.methodType(Object.class, in))
+                     .asType(MethodType.methodType(Object.class, Object.class));
+    }
+
+    @Override // Object
+    public String toString() {
+        return getClass().getSimpleName() + "(" + in.getName() + " -> " + out.getName() + ")";
+    }
+
+    private static class TypeConverter extends Converter {
+        private final Function<Object, Object> typeConverter;
+
+        TypeConverter(Class<?> in, Class<?> out, Function<Object, Object> typeConverter) {
+            super(in, out);
+            this.typeConverter = typeConverter;
+        }
+
+        @Override // Converter
+        public ConversionStrategy getStrategy() {
+            return ConversionStrategy.TYPE_CONVERTER;
+        }
+
+        @Override // Converter
+        public Object convert(Object value) {
+            try {
+                return typeConverter.apply(value);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                    "Failed invoking type converter from " + getIn().getName() + " to " + getOut().getName(), e);
+            }
+        }
+    }
+
+    private static class TextConverter extends Converter {
+        private final TextParser parser;
+
+        TextConverter(Class<?> in, Class<?> out, TextParser parser) {
+            super(in, out);
+            this.parser = parser;
+        }
+
+        @Override // Converter
+        public ConversionStrategy getStrategy() {
+            return ConversionStrategy.TEXT;
+        }
+
+        @Override // Converter
+        public Object convert(Object value) {
+            CharSequence text = (CharSequence) value;
+            try {
+                return parser.parse(text, 0, text.length());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cannot parse " + getOut().getName(), e);
+            }
+        }
+    }
+
+    private static class MethodConverter extends Converter {
+        private final Method method;
+        private final MethodHandle handle;
+
+        MethodConverter(Class<?> in, Class<?> out, Method method, boolean useMethodHandles) {
+            super(in, out);
+            this.method = method;
+            MethodHandle handle = null;
+            if (useMethodHandles) {
+                try {
+                    handle = toHandle(MethodHandles.publicLookup().unreflect(method), in);
+                } catch (IllegalAccessException e) {
+                    // Fall back to reflection
+                }
+            }
+            this.handle = handle;
+        }
+
+        @Override // Converter
+        public ConversionStrategy getStrategy() {
+            return method.getName().equals("parse") ? ConversionStrategy.PARSE : ConversionStrategy.VALUE_OF;
+        }
+
+        @Override // Converter
+        public Object convert(Object value) {
+            try {
+                if (handle != null) {
+                    return handle.invokeExact(value);
+                }
+                return method.invoke(null, value);
+            } catch (Throwable t) {
+                throw new IllegalArgumentException("Cannot invoke " + getOut().getName() + "." + method.getName(), t);
+            }
+        }
+    }
+
+    private static class ConstructorConverter extends Converter {
+        private final Constructor<?> ctor;
+        private final MethodHandle handle;
+
+        ConstructorConverter(Class<?> in, Class<?> out, Constructor<?> ctor, boolean useMethodHandles) {
+            super(in, out);
+            this.ctor = ctor;
+            MethodHandle handle = null;
+            if (useMethodHandles) {
+                try {
+                    handle = toHandle(MethodHandles.publicLookup().unreflectConstructor(ctor), in);
+                } catch (IllegalAccessException e) {
+                    // Fall back to reflection
+                }
+            }
+            this.handle = handle;
+        }
+
+        @Override // Converter
+        public ConversionStrategy getStrategy() {
+            return ConversionStrategy.CONSTRUCTOR;
+        }
+
+        @Override // Converter
+        public Object convert(Object value) {
+            try {
+                if (handle != null) {
+                    return handle.invokeExact(value);
+                }
+                return ctor.newInstance(value);
+            } catch (Throwable t) {
+                throw new IllegalArgumentException("Cannot construct " + getOut().getName(), t);
+            }
+        }
+    }
+
+    private static class NoConverter extends Converter {
+        NoConverter(Class<?> in, Class<?> out) {
+            super(in, out);
+        }
+
+        @Override // Converter
+        public boolean canConvert() {
+            return false;
+        }
+
+        @Override // Converter
+        public ConversionStrategy getStrategy() {
+            return ConversionStrategy.NONE;
+        }
+
+        @Override // Converter
+        public Object convert(Object value) {
+            throw new IllegalArgumentException("Cannot convert " + getIn().getName() + " to " + getOut().getName());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.korz.beanmagic;
+
+/**
+ * An immutable bean, setters throw and the hash code is computed once.
+ * The arrays are shared with the bean it was frozen from, which copies them before writing again.
+ */
+class FrozenBeanInvocationHandler extends BeanInvocationHandler {
+    private final Object[] references;
+    private final long[] integrals;
+    private final double[] floatings;
+    private final long[] bits;
+    private final int booleanOffset;
+    private final int hashCode;
+
+    FrozenBeanInvocationHandler(BeanLayout layout, Object[] references, long[] integrals, double[] floatings,
+                                long[] bits) {
+        super(layout);
+        this.references = references;
+        this.integrals = integrals;
+        this.floatings = floatings;
+        this.bits = bits;
+        this.booleanOffset = ArrayBeanInvocationHandler.words(layout.getPropertyCount());
+        this.hashCode = super.beanHashCode();
+    }
+
+    /**
+     * Returns a mutable copy, which shares the arrays of this bean until it is first written.
+     */
+    ArrayBeanInvocationHandler thaw() {
+        return new ArrayBeanInvocationHandler(getLayout(), references, integrals, floatings, bits);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean isFrozen() {
+        return true;
+    }
+
+    @Override // BeanInvocationHandler
+    int beanHashCode() {
+        return hashCode;
+    }
+
+    @Override // BeanInvocationHandler
+    boolean isSet(int slot) {
+        return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    @Override // BeanInvocationHandler
+    Object getReference(int index) {
+        return references[index];
+    }
+
+    @Override // BeanInvocationHandler
+    long getIntegral(int index) {
+        return integrals[index];
+    }
+
+    @Override // BeanInvocationHandler
+    double getFloating(int index) {
+        return floatings[index];
+    }
+
+    @Override // BeanInvocationHandler
+    boolean getBoolean(int index) {
+        return (bits[booleanOffset + (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    @Override // BeanInvocationHandler
+    void setReference(int slot, int index, Object value) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setIntegral(int slot, int index, long value) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setFloating(int slot, int index, double value) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void setBoolean(int slot, int index, boolean value) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetReference(int slot, int index, Object expect, Object update) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetIntegral(int slot, int index, long expect, long update) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetFloating(int slot, int index, double expect, double update) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    boolean compareAndSetBoolean(int slot, int index, boolean expect, boolean update) {
+        throw frozen(slot);
+    }
+
+    @Override // BeanInvocationHandler
+    void reset() {
+        throw new UnsupportedOperationException("cannot reset frozen bean");
+    }
+
+    private UnsupportedOperationException frozen(int slot) {
+        return new UnsupportedOperationException("cannot set property of frozen bean: " +
+                                                 getLayout().getPropertyName(slot));
+    }
+}
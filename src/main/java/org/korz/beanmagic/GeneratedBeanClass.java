@@ -0,0 +1,470 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import static org.korz.beanmagic.ClassFileWriter.ACC_PRIVATE;
+import static org.korz.beanmagic.ClassFileWriter.ACC_PUBLIC;
+import static org.korz.beanmagic.ClassFileWriter.ACC_STATIC;
+import static org.korz.beanmagic.ClassFileWriter.Code.*;
+import static org.korz.beanmagic.ClassFileWriter.descriptor;
+import static org.korz.beanmagic.ClassFileWriter.internalName;
+import static org.korz.beanmagic.ClassFileWriter.methodDescriptor;
+
+/**
+ * A class generated to implement a bean interface with a typed field per property.
+ * Generated classes only link against the bean interface and the JDK,
+ * toString, equals and hashCode call back into this class through static fields.
+ */
+class GeneratedBeanClass extends BeanClass implements BeanAccess {
+    private static final String SET_SUFFIX = "$set";
+    private static final String TO_STRING = "$toString";
+    private static final String EQUALS = "$equals";
+    private static final String HASH_CODE = "$hashCode";
+
+    private static final ClassValue<GeneratedBeanClass> CLASSES = new ClassValue<GeneratedBeanClass>() {
+        @Override // ClassValue
+        protected GeneratedBeanClass computeValue(Class<?> beanInterface) {
+            return new GeneratedBeanClass(BeanLayout.of(beanInterface));
+        }
+    };
+
+    // Java 9+ can define classes in the package of the bean interface, even if it is not public
+    private static final Method PRIVATE_LOOKUP_IN;
+    private static final Method DEFINE_CLASS;
+
+    static {
+        Method privateLookupIn = null;
+        Method defineClass = null;
+        try {
+            privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+            defineClass = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+        } catch (NoSuchMethodException e) {
+            // Java 8
+        }
+        PRIVATE_LOOKUP_IN = privateLookupIn;
+        DEFINE_CLASS = defineClass;
+    }
+
+    private final Class<?> beanClass;
+    private final MethodHandle constructor;
+    private final MethodHandle[] getters;
+    private final MethodHandle[] presence;
+    private final MethodHandle[] setters;
+    private final MethodHandle[] presenceSetters;
+    // The values of fields that have never been set, boxed
+    private final Object[] defaults;
+
+    private GeneratedBeanClass(BeanLayout layout) {
+        super(layout);
+        Class<?> beanInterface = layout.getBeanInterface();
+        String className = beanInterface.getName() + "$$Bean";
+        byte[] bytes = generate(layout, internalName(beanInterface).concat("$$Bean"));
+        try {
+            MethodHandles.Lookup lookup = lookupFor(beanInterface);
+            beanClass = defineClass(lookup, beanInterface, className, bytes);
+
+            constructor = lookup.findConstructor(beanClass, MethodType.methodType(void.class))
+                                .asType(MethodType.methodType(Object.class));
+            int count = layout.getPropertyCount();
+            getters = new MethodHandle[count];
+            presence = new MethodHandle[count];
+            setters = new MethodHandle[count];
+            presenceSetters = new MethodHandle[count];
+            defaults = new Object[count];
+            for (int slot = 0; slot < count; slot++) {
+                String name = layout.getPropertyName(slot);
+                getters[slot] = lookup.findGetter(beanClass, name, layout.getPropertyType(slot))
+                                      .asType(MethodType.methodType(Object.class, Object.class));
+                presence[slot] = lookup.findGetter(beanClass, name + SET_SUFFIX, boolean.class)
+                                       .asType(MethodType.methodType(boolean.class, Object.class));
+                setters[slot] = lookup.findSetter(beanClass, name, layout.getPropertyType(slot))
+                                      .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                presenceSetters[slot] = lookup.findSetter(beanClass, name + SET_SUFFIX, boolean.class)
+                                              .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+                defaults[slot] = Array.get(Array.newInstance(layout.getPropertyType(slot), 1), 0);
+            }
+
+            setObjectMethods(beanClass, this::beanToString, this::beanEquals, this::beanHashCode);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot define class for " + beanInterface.getName(), e.getCause());
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot define class for " + beanInterface.getName(), t);
+        }
+    }
+
+    /**
+     * Returns a lookup that can access classes defined by {@link #defineClass} for the interface.
+     */
+    static MethodHandles.Lookup lookupFor(Class<?> beanInterface) throws ReflectiveOperationException {
+        if (DEFINE_CLASS != null) {
+            return privateLookupIn(beanInterface);
+        }
+        return MethodHandles.publicLookup();
+    }
+
+    /**
+     * Returns a lookup with private access to a class, such as a generated class or an interface with default methods.
+     */
+    static MethodHandles.Lookup privateLookupIn(Class<?> type) throws ReflectiveOperationException {
+        if (PRIVATE_LOOKUP_IN != null) {
+            return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, type, MethodHandles.lookup());
+        }
+        // Java 8 only has a private constructor for such lookups
+        Constructor<MethodHandles.Lookup> constructor =
+            MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+        constructor.setAccessible(true);
+        int allModes = MethodHandles.Lookup.PUBLIC | MethodHandles.Lookup.PRIVATE | MethodHandles.Lookup.PROTECTED |
+            MethodHandles.Lookup.PACKAGE;
+        return constructor.newInstance(type, allModes);
+    }
+
+    /**
+     * Defines a class in the package of the interface, or in a new class loader on Java 8.
+     * Returns the class already defined if another thread got there first, as {@link ClassValue} may compute
+     * the value of an interface on several threads at once.
+     */
+    static Class<?> defineClass(MethodHandles.Lookup lookup, Class<?> beanInterface, String className, byte[] bytes)
+        throws ReflectiveOperationException {
+        if (DEFINE_CLASS != null) {
+            try {
+                return (Class<?>) DEFINE_CLASS.invoke(lookup, (Object) bytes);
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof LinkageError)) {
+                    throw e;
+                }
+                try {
+                    return Class.forName(className, false, beanInterface.getClassLoader());
+                } catch (ClassNotFoundException notDefined) {
+                    // Not a duplicate definition
+                    throw e;
+                }
+            }
+        }
+        return new BeanClassLoader(beanInterface.getClassLoader()).define(className, bytes);
+    }
+
+    public static GeneratedBeanClass of(Class<?> beanInterface) {
+        return CLASSES.get(beanInterface);
+    }
+
+    /**
+     * Returns the generated class of a bean, or null if the bean is not an instance of a generated class.
+     */
+    public static GeneratedBeanClass forBean(Object bean) {
+        Class<?> beanClass = bean.getClass();
+        Class<?>[] interfaces = beanClass.getInterfaces();
+        if (interfaces.length != 1 || !beanClass.getName().equals(interfaces[0].getName() + "$$Bean")) {
+            return null;
+        }
+        GeneratedBeanClass generated = of(interfaces[0]);
+        return generated.getBeanClass() == beanClass ? generated : null;
+    }
+
+    /**
+     * Checks if a class can be generated for an interface on this JVM.
+     */
+    public static boolean isSupported(Class<?> beanInterface) {
+        return DEFINE_CLASS != null || Modifier.isPublic(beanInterface.getModifiers());
+    }
+
+    @Override // BeanAccess
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    @Override // BeanClass
+    public Object newInstance() {
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Cannot construct " + beanClass.getName(), t);
+        }
+    }
+
+    @Override // BeanClass
+    public boolean isInstance(Object bean) {
+        return bean != null && bean.getClass() == beanClass;
+    }
+
+    @Override // BeanAccess
+    public Object get(Object bean, int slot) {
+        try {
+            return getters[slot].invokeExact(bean);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override // BeanAccess
+    public void set(Object bean, int slot, Object value) {
+        try {
+            setters[slot].invokeExact(bean, value);
+            presenceSetters[slot].invokeExact(bean, true);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override // BeanAccess
+    public void reset(Object bean) {
+        try {
+            for (int slot = 0; slot < setters.length; slot++) {
+                setters[slot].invokeExact(bean, defaults[slot]);
+                presenceSetters[slot].invokeExact(bean, false);
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override // BeanAccess
+    public boolean isSet(Object bean, int slot) {
+        try {
+            return (boolean) presence[slot].invokeExact(bean);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private Object beanToString(Object bean) {
+        // Same as a proxy bean, the map of properties that have been set
+        Map<String, Object> properties = new HashMap<>();
+        for (int slot = 0; slot < getters.length; slot++) {
+            if (isSet(bean, slot)) {
+                properties.put(getLayout().getPropertyName(slot), get(bean, slot));
+            }
+        }
+        return properties.toString();
+    }
+
+    private boolean beanEquals(Object bean, Object other) {
+        if (other == bean) {
+            return true;
+        }
+        if (other == null || other.getClass() != beanClass) {
+            return false;
+        }
+        for (int slot = 0; slot < getters.length; slot++) {
+            boolean set = isSet(bean, slot);
+            if (set != isSet(other, slot) || (set && !Objects.equals(get(bean, slot), get(other, slot)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int beanHashCode(Object bean) {
+        int hashCode = 0;
+        for (int slot = 0; slot < getters.length; slot++) {
+            if (isSet(bean, slot)) {
+                hashCode += getLayout().getPropertyName(slot).hashCode() ^ Objects.hashCode(get(bean, slot));
+            }
+        }
+        return hashCode;
+    }
+
+    private static byte[] generate(BeanLayout layout, String className) {
+        Class<?> beanInterface = layout.getBeanInterface();
+        String object = internalName(Object.class);
+        ClassFileWriter cw = new ClassFileWriter(className, object);
+        cw.addInterface(internalName(beanInterface));
+
+        // Fields
+        for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+            Class<?> type = layout.getPropertyType(slot);
+            if (type == null) {
+                throw new IllegalArgumentException(
+                    "Property \"" + layout.getPropertyName(slot) + "\" of " + beanInterface.getName() +
+                        " does not have a consistent type");
+            }
+            cw.addField(ACC_PUBLIC, layout.getPropertyName(slot), descriptor(type));
+            cw.addField(ACC_PUBLIC, layout.getPropertyName(slot) + SET_SUFFIX, "Z");
+        }
+
+        // Constructor
+        cw.addMethod(ACC_PUBLIC, "<init>", "()V")
+          .local(ALOAD, 0)
+          .constant(INVOKESPECIAL, cw.methodConstant(object, "<init>", "()V"))
+          .op(RETURN)
+          .end(1, 1);
+
+        generateObjectMethods(cw, className);
+
+        // Interface methods
+        Set<String> generated = objectMethodSignatures();
+        for (Method method : beanInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.isDefault()) {
+                continue;
+            }
+            String signature = methodDescriptor(method.getReturnType(), method.getParameterTypes());
+            if (!generated.add(method.getName() + signature)) {
+                continue;
+            }
+            BeanMethod beanMethod = BeanMethod.classify(method, layout);
+            ClassFileWriter.Code code = cw.addMethod(ACC_PUBLIC, method.getName(), signature);
+            if (beanMethod instanceof BeanMethod.Getter && isGetter(method, layout, (BeanMethod.Getter) beanMethod)) {
+                int slot = ((BeanMethod.Getter) beanMethod).getSlot();
+                Class<?> type = layout.getPropertyType(slot);
+                code.local(ALOAD, 0)
+                    .constant(GETFIELD, cw.fieldConstant(className, layout.getPropertyName(slot), descriptor(type)))
+                    .op(returnOpcode(type))
+                    .end(size(type), 1);
+            } else if (beanMethod instanceof BeanMethod.Setter &&
+                       isSetter(method, layout, (BeanMethod.Setter) beanMethod)) {
+                int slot = ((BeanMethod.Setter) beanMethod).getSlot();
+                Class<?> type = layout.getPropertyType(slot);
+                String name = layout.getPropertyName(slot);
+                code.local(ALOAD, 0)
+                    .local(loadOpcode(type), 1)
+                    .constant(PUTFIELD, cw.fieldConstant(className, name, descriptor(type)))
+                    .local(ALOAD, 0)
+                    .op(ICONST_1)
+                    .constant(PUTFIELD, cw.fieldConstant(className, name + SET_SUFFIX, "Z"))
+                    .op(RETURN)
+                    .end(1 + size(type), 1 + size(type));
+            } else {
+                generateUnhandled(cw, code, method);
+            }
+        }
+        return cw.toByteArray();
+    }
+
+    /**
+     * Adds toString, equals and hashCode, which call the functions set by {@link #setObjectMethods}.
+     */
+    static void generateObjectMethods(ClassFileWriter cw, String className) {
+        // Private, so only setObjectMethods can change them
+        cw.addField(ACC_PRIVATE | ACC_STATIC, TO_STRING, descriptor(Function.class));
+        cw.addField(ACC_PRIVATE | ACC_STATIC, EQUALS, descriptor(BiPredicate.class));
+        cw.addField(ACC_PRIVATE | ACC_STATIC, HASH_CODE, descriptor(ToIntFunction.class));
+        cw.addMethod(ACC_PUBLIC, "toString", methodDescriptor(String.class))
+          .constant(GETSTATIC, cw.fieldConstant(className, TO_STRING, descriptor(Function.class)))
+          .local(ALOAD, 0)
+          .invokeInterface(cw.interfaceMethodConstant(internalName(Function.class), "apply",
+                                                      methodDescriptor(Object.class, Object.class)), 1)
+          .constant(CHECKCAST, cw.classConstant(internalName(String.class)))
+          .op(ARETURN)
+          .end(2, 1);
+        cw.addMethod(ACC_PUBLIC, "equals", methodDescriptor(boolean.class, Object.class))
+          .constant(GETSTATIC, cw.fieldConstant(className, EQUALS, descriptor(BiPredicate.class)))
+          .local(ALOAD, 0)
+          .local(ALOAD, 1)
+          .invokeInterface(cw.interfaceMethodConstant(internalName(BiPredicate.class), "test",
+                                                      methodDescriptor(boolean.class, Object.class, Object.class)), 2)
+          .op(IRETURN)
+          .end(3, 2);
+        cw.addMethod(ACC_PUBLIC, "hashCode", methodDescriptor(int.class))
+          .constant(GETSTATIC, cw.fieldConstant(className, HASH_CODE, descriptor(ToIntFunction.class)))
+          .local(ALOAD, 0)
+          .invokeInterface(cw.interfaceMethodConstant(internalName(ToIntFunction.class), "applyAsInt",
+                                                      methodDescriptor(int.class, Object.class)), 1)
+          .op(IRETURN)
+          .end(2, 1);
+    }
+
+    static void setObjectMethods(Class<?> beanClass, Function<Object, Object> toString,
+                                 BiPredicate<Object, Object> equals, ToIntFunction<Object> hashCode)
+        throws Throwable {
+        MethodHandles.Lookup lookup = privateLookupIn(beanClass);
+        lookup.findStaticSetter(beanClass, TO_STRING, Function.class).invoke(toString);
+        lookup.findStaticSetter(beanClass, EQUALS, BiPredicate.class).invoke(equals);
+        lookup.findStaticSetter(beanClass, HASH_CODE, ToIntFunction.class).invoke(hashCode);
+    }
+
+    /**
+     * Returns the name and descriptor of each method added by {@link #generateObjectMethods}.
+     */
+    static Set<String> objectMethodSignatures() {
+        Set<String> signatures = new HashSet<>();
+        signatures.add("toString" + methodDescriptor(String.class));
+        signatures.add("equals" + methodDescriptor(boolean.class, Object.class));
+        signatures.add("hashCode" + methodDescriptor(int.class));
+        return signatures;
+    }
+
+    /**
+     * Generates a method that fails when invoked, the same as proxy beans.
+     */
+    static void generateUnhandled(ClassFileWriter cw, ClassFileWriter.Code code, Method method) {
+        String exception = internalName(IllegalArgumentException.class);
+        String constructor = methodDescriptor(void.class, String.class);
+        int locals = 1;
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            locals += size(parameterType);
+        }
+        code.constant(NEW, cw.classConstant(exception))
+            .op(DUP)
+            .constant(LDC_W, cw.stringConstant("cannot handle method: " + method.getName()))
+            .constant(INVOKESPECIAL, cw.methodConstant(exception, "<init>", constructor))
+            .op(ATHROW)
+            .end(3, locals);
+    }
+
+    static boolean isGetter(Method method, BeanLayout layout, BeanMethod.Getter getter) {
+        return method.getParameterTypes().length == 0 &&
+            method.getReturnType() == layout.getPropertyType(getter.getSlot());
+    }
+
+    static boolean isSetter(Method method, BeanLayout layout, BeanMethod.Setter setter) {
+        return method.getParameterTypes().length == 1 &&
+            method.getParameterTypes()[0] == layout.getPropertyType(setter.getSlot()) &&
+            method.getReturnType() == void.class;
+    }
+
+    static int size(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    static int loadOpcode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return ALOAD;
+        } else if (type == long.class) {
+            return LLOAD;
+        } else if (type == float.class) {
+            return FLOAD;
+        } else if (type == double.class) {
+            return DLOAD;
+        } else {
+            return ILOAD;
+        }
+    }
+
+    static int returnOpcode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return ARETURN;
+        } else if (type == long.class) {
+            return LRETURN;
+        } else if (type == float.class) {
+            return FRETURN;
+        } else if (type == double.class) {
+            return DRETURN;
+        } else {
+            return IRETURN;
+        }
+    }
+
+    private static class BeanClassLoader extends ClassLoader {
+        BeanClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
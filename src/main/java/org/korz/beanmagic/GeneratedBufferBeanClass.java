@@ -0,0 +1,282 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.korz.beanmagic.ClassFileWriter.ACC_PUBLIC;
+import static org.korz.beanmagic.ClassFileWriter.Code.*;
+import static org.korz.beanmagic.ClassFileWriter.descriptor;
+import static org.korz.beanmagic.ClassFileWriter.internalName;
+import static org.korz.beanmagic.ClassFileWriter.methodDescriptor;
+
+/**
+ * A class generated to implement a bean interface over a record of a {@link ByteBuffer}.
+ * Getters and setters call the absolute get and put methods of the buffer at a constant offset from the record,
+ * so they neither box nor allocate.
+ */
+class GeneratedBufferBeanClass extends BufferBeanClass implements BeanAccess {
+    private static final String BUFFER = "$buffer";
+    private static final String OFFSET = "$offset";
+
+    private static final ClassValue<GeneratedBufferBeanClass> CLASSES = new ClassValue<GeneratedBufferBeanClass>() {
+        @Override // ClassValue
+        protected GeneratedBufferBeanClass computeValue(Class<?> beanInterface) {
+            return new GeneratedBufferBeanClass(BinaryLayout.of(beanInterface));
+        }
+    };
+
+    private final Class<?> beanClass;
+    private final MethodHandle constructor;
+    private final MethodHandle getBuffer;
+    private final MethodHandle getOffset;
+    private final MethodHandle setBuffer;
+    private final MethodHandle setOffset;
+
+    private GeneratedBufferBeanClass(BinaryLayout binaryLayout) {
+        super(binaryLayout);
+        Class<?> beanInterface = binaryLayout.getLayout().getBeanInterface();
+        String className = beanInterface.getName() + "$$View";
+        byte[] bytes = generate(binaryLayout, internalName(beanInterface).concat("$$View"));
+        try {
+            MethodHandles.Lookup lookup = GeneratedBeanClass.lookupFor(beanInterface);
+            beanClass = GeneratedBeanClass.defineClass(lookup, beanInterface, className, bytes);
+
+            constructor = lookup.findConstructor(beanClass, MethodType.methodType(void.class))
+                                .asType(MethodType.methodType(Object.class));
+            getBuffer = lookup.findGetter(beanClass, BUFFER, ByteBuffer.class)
+                              .asType(MethodType.methodType(ByteBuffer.class, Object.class));
+            getOffset = lookup.findGetter(beanClass, OFFSET, int.class)
+                              .asType(MethodType.methodType(int.class, Object.class));
+            setBuffer = lookup.findSetter(beanClass, BUFFER, ByteBuffer.class)
+                              .asType(MethodType.methodType(void.class, Object.class, ByteBuffer.class));
+            setOffset = lookup.findSetter(beanClass, OFFSET, int.class)
+                              .asType(MethodType.methodType(void.class, Object.class, int.class));
+
+            GeneratedBeanClass.setObjectMethods(beanClass, this::beanToString, this::beanEquals, this::beanHashCode);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot define class for " + beanInterface.getName(), e.getCause());
+        } catch (Throwable t) {
+            throw new IllegalArgumentException("Cannot define class for " + beanInterface.getName(), t);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a property is not primitive
+     */
+    public static GeneratedBufferBeanClass of(Class<?> beanInterface) {
+        return CLASSES.get(beanInterface);
+    }
+
+    /**
+     * Returns the generated class of a bean, or null if the bean is not an instance of a generated buffer class.
+     */
+    public static GeneratedBufferBeanClass forBean(Object bean) {
+        Class<?> beanClass = bean.getClass();
+        Class<?>[] interfaces = beanClass.getInterfaces();
+        if (interfaces.length != 1 || !beanClass.getName().equals(interfaces[0].getName() + "$$View")) {
+            return null;
+        }
+        GeneratedBufferBeanClass generated = of(interfaces[0]);
+        return generated.beanClass == beanClass ? generated : null;
+    }
+
+    public static boolean isSupported(Class<?> beanInterface) {
+        return GeneratedBeanClass.isSupported(beanInterface);
+    }
+
+    @Override // BufferBeanClass
+    public Object newInstance() {
+        try {
+            return constructor.invokeExact();
+        } catch (Throwable t) {
+            throw new IllegalStateException("Cannot construct " + beanClass.getName(), t);
+        }
+    }
+
+    @Override // BeanClass
+    public boolean isInstance(Object bean) {
+        return bean != null && bean.getClass() == beanClass;
+    }
+
+    @Override // BufferBeanClass
+    public void moveTo(Object bean, ByteBuffer buffer, int offset) {
+        try {
+            setBuffer.invokeExact(bean, buffer);
+            setOffset.invokeExact(bean, offset);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override // BeanAccess
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    /**
+     * Every property of a view is set.
+     */
+    @Override // BeanAccess
+    public boolean isSet(Object bean, int slot) {
+        return true;
+    }
+
+    @Override // BeanAccess
+    public Object get(Object bean, int slot) {
+        try {
+            return getBinaryLayout().get((ByteBuffer) getBuffer.invokeExact(bean), (int) getOffset.invokeExact(bean),
+                                         slot);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override // BeanAccess
+    public void set(Object bean, int slot, Object value) {
+        try {
+            getBinaryLayout().set((ByteBuffer) getBuffer.invokeExact(bean), (int) getOffset.invokeExact(bean),
+                                  slot, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override // BeanAccess
+    public void reset(Object bean) {
+        throw new UnsupportedOperationException("buffer beans cannot be reset");
+    }
+
+    private Object beanToString(Object bean) {
+        // Same as a proxy bean, every property is set
+        Map<String, Object> properties = new HashMap<>();
+        for (int slot = 0; slot < getLayout().getPropertyCount(); slot++) {
+            properties.put(getLayout().getPropertyName(slot), get(bean, slot));
+        }
+        return properties.toString();
+    }
+
+    private boolean beanEquals(Object bean, Object other) {
+        if (other == bean) {
+            return true;
+        }
+        if (other == null || other.getClass() != beanClass) {
+            return false;
+        }
+        for (int slot = 0; slot < getLayout().getPropertyCount(); slot++) {
+            if (!Objects.equals(get(bean, slot), get(other, slot))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int beanHashCode(Object bean) {
+        int hashCode = 0;
+        for (int slot = 0; slot < getLayout().getPropertyCount(); slot++) {
+            hashCode += getLayout().getPropertyName(slot).hashCode() ^ Objects.hashCode(get(bean, slot));
+        }
+        return hashCode;
+    }
+
+    private static byte[] generate(BinaryLayout binaryLayout, String className) {
+        BeanLayout layout = binaryLayout.getLayout();
+        Class<?> beanInterface = layout.getBeanInterface();
+        String object = internalName(Object.class);
+        String byteBuffer = internalName(ByteBuffer.class);
+        ClassFileWriter cw = new ClassFileWriter(className, object);
+        cw.addInterface(internalName(beanInterface));
+
+        // Fields
+        cw.addField(ACC_PUBLIC, BUFFER, descriptor(ByteBuffer.class));
+        cw.addField(ACC_PUBLIC, OFFSET, "I");
+        int buffer = cw.fieldConstant(className, BUFFER, descriptor(ByteBuffer.class));
+        int offset = cw.fieldConstant(className, OFFSET, "I");
+
+        // Constructor
+        cw.addMethod(ACC_PUBLIC, "<init>", "()V")
+          .local(ALOAD, 0)
+          .constant(INVOKESPECIAL, cw.methodConstant(object, "<init>", "()V"))
+          .op(RETURN)
+          .end(1, 1);
+
+        GeneratedBeanClass.generateObjectMethods(cw, className);
+
+        // Interface methods
+        Set<String> generated = GeneratedBeanClass.objectMethodSignatures();
+        for (Method method : beanInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.isDefault()) {
+                continue;
+            }
+            String signature = methodDescriptor(method.getReturnType(), method.getParameterTypes());
+            if (!generated.add(method.getName() + signature)) {
+                continue;
+            }
+            BeanMethod beanMethod = BeanMethod.classify(method, layout);
+            ClassFileWriter.Code code = cw.addMethod(ACC_PUBLIC, method.getName(), signature);
+            if (beanMethod instanceof BeanMethod.Getter &&
+                GeneratedBeanClass.isGetter(method, layout, (BeanMethod.Getter) beanMethod)) {
+                int slot = ((BeanMethod.Getter) beanMethod).getSlot();
+                Class<?> type = layout.getPropertyType(slot);
+                // buffer.getX(offset + propertyOffset)
+                code.local(ALOAD, 0)
+                    .constant(GETFIELD, buffer)
+                    .local(ALOAD, 0)
+                    .constant(GETFIELD, offset)
+                    .push(binaryLayout.getOffset(slot))
+                    .op(IADD)
+                    .constant(INVOKEVIRTUAL, cw.methodConstant(byteBuffer, "get" + accessorSuffix(type),
+                                                               methodDescriptor(storedType(type), int.class)));
+                if (type == boolean.class) {
+                    // Same as BinaryLayout.getBoolean, only the low bit
+                    code.op(ICONST_1).op(IAND);
+                }
+                code.op(GeneratedBeanClass.returnOpcode(type))
+                    .end(3, 1);
+            } else if (beanMethod instanceof BeanMethod.Setter &&
+                       GeneratedBeanClass.isSetter(method, layout, (BeanMethod.Setter) beanMethod)) {
+                int slot = ((BeanMethod.Setter) beanMethod).getSlot();
+                Class<?> type = layout.getPropertyType(slot);
+                int size = GeneratedBeanClass.size(type);
+                // buffer.putX(offset + propertyOffset, value), a boolean is already 0 or 1
+                code.local(ALOAD, 0)
+                    .constant(GETFIELD, buffer)
+                    .local(ALOAD, 0)
+                    .constant(GETFIELD, offset)
+                    .push(binaryLayout.getOffset(slot))
+                    .op(IADD)
+                    .local(GeneratedBeanClass.loadOpcode(type), 1)
+                    .constant(INVOKEVIRTUAL,
+                              cw.methodConstant(byteBuffer, "put" + accessorSuffix(type),
+                                                methodDescriptor(ByteBuffer.class, int.class, storedType(type))))
+                    .op(POP)
+                    .op(RETURN)
+                    .end(Math.max(3, 2 + size), 1 + size);
+            } else {
+                GeneratedBeanClass.generateUnhandled(cw, code, method);
+            }
+        }
+        return cw.toByteArray();
+    }
+
+    // The suffix of the ByteBuffer methods for a type, e.g. getInt
+    private static String accessorSuffix(Class<?> type) {
+        if (type == byte.class || type == boolean.class) {
+            return "";
+        }
+        String name = type.getName();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Class<?> storedType(Class<?> type) {
+        return type == boolean.class ? byte.class : type;
+    }
+}
@@ -0,0 +1,60 @@
+package org.korz.beanmagic;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in buckets of powers of two nanoseconds. Recording does not lock or allocate.
+ */
+public class LatencyHistogram {
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        // Bucket i holds latencies from 2^i up to 2^(i+1), and bucket 0 also holds 0
+        buckets[nanos > 0 ? Long.SIZE - Long.numberOfLeadingZeros(nanos) - 1 : 0].increment();
+        totalNanos.add(nanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Returns an upper bound of the latency at a percentile, e.g. 99 for the 99th percentile,
+     * or 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i < Long.SIZE - 2 ? (2L << i) - 1 : Long.MAX_VALUE;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,20 @@
+package org.korz.beanmagic;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bean interface or bean class for the beanmagic annotation processor.
+ * For an interface the processor generates a {@link CompiledBean} implementing it, which {@link BeanFactory} creates
+ * instead of a proxy. For a class it generates {@link CompiledSetters}, which {@link BeanSetter} invokes instead of
+ * the setter methods found by reflection.
+ * Nothing is generated unless the processor is on the annotation processor path of the compiler.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Precompiled {
+}
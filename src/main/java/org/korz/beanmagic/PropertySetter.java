@@ -0,0 +1,159 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+class PropertySetter {
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String propertyName;
+    private final Method method;
+    private final Class<?> parameterType;
+    private final Class<?> boxedType;
+    private final MethodHandle handle;
+    // Null unless the setter was generated at compile time
+    private final CompiledSetters<Object> compiled;
+    private final int index;
+
+    // Last resolved converter, most properties only ever see a single source type
+    private volatile Converter converter;
+
+    public PropertySetter(String propertyName, Method method, MethodHandle handle) {
+        this.propertyName = propertyName;
+        this.method = method;
+        this.parameterType = method.getParameterTypes()[0];
+        this.boxedType = BeanSetter.toBoxedType(parameterType);
+        this.handle = handle;
+        this.compiled = null;
+        this.index = -1;
+    }
+
+    /**
+     * A setter generated at compile time, invoked without reflection or method handles.
+     */
+    @SuppressWarnings("unchecked")
+    public PropertySetter(String propertyName, Class<?> parameterType, CompiledSetters<?> compiled, int index) {
+        this.propertyName = propertyName;
+        this.method = null;
+        this.parameterType = parameterType;
+        this.boxedType = BeanSetter.toBoxedType(parameterType);
+        this.handle = null;
+        this.compiled = (CompiledSetters<Object>) compiled;
+        this.index = index;
+    }
+
+    /**
+     * Returns a handle invoking the setter with erased types, or null if the setter is not accessible.
+     */
+    public static MethodHandle toHandle(Method method) {
+        try {
+            return MethodHandles.lookup().unreflect(method).asType(SETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    /**
+     * Returns the setter method, or null if the setter was generated at compile time.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    public Class<?> getParameterType() {
+        return parameterType;
+    }
+
+    public Class<?> getBoxedType() {
+        return boxedType;
+    }
+
+    /**
+     * Checks if the value can be passed to the setter as is, including primitive widening.
+     */
+    public boolean accepts(Object value) {
+        if (value == null) {
+            return !parameterType.isPrimitive();
+        }
+        return boxedType.isInstance(value) || BeanSetter.isWidening(value.getClass(), parameterType);
+    }
+
+    public boolean hasHandle() {
+        return handle != null;
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Checks if setting the value needs reflection, the erased handle can only unbox so widening is left to it.
+     */
+    public boolean isReflective(Object value) {
+        if (compiled != null) {
+            return false;
+        }
+        return handle == null || (value != null && !boxedType.isInstance(value));
+    }
+
+    /**
+     * Invokes the setter, the value must be {@link #accepts accepted}.
+     */
+    public void invoke(Object bean, Object value) throws IllegalAccessException, InvocationTargetException {
+        if (compiled != null) {
+            if (value != null && !boxedType.isInstance(value)) {
+                value = widen(value, parameterType);
+            }
+            try {
+                compiled.set(bean, index, value);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        } else if (!isReflective(value)) {
+            try {
+                handle.invokeExact(bean, value);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        } else {
+            method.invoke(bean, value);
+        }
+    }
+
+    // The compiled setter casts to the boxed parameter type, so widen as reflection would
+    private static Object widen(Object value, Class<?> type) {
+        Number number = value instanceof Character ? (int) (Character) value : (Number) value;
+        if (type == short.class) {
+            return number.shortValue();
+        } else if (type == int.class) {
+            return number.intValue();
+        } else if (type == long.class) {
+            return number.longValue();
+        } else if (type == float.class) {
+            return number.floatValue();
+        } else {
+            return number.doubleValue();
+        }
+    }
+
+    public Converter getConverter(Class<?> propertyType) {
+        Converter c = converter;
+        return c != null && c.getIn() == propertyType ? c : null;
+    }
+
+    public void setConverter(Converter converter) {
+        this.converter = converter;
+    }
+
+    @Override // Object
+    public String toString() {
+        return propertyName + " -> " + (method != null ? method : "compiled " + compiled.getClass().getName());
+    }
+}
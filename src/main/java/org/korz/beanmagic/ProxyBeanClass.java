@@ -0,0 +1,77 @@
+package org.korz.beanmagic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates proxy beans, resolving the proxy class and its constructor once.
+ */
+class ProxyBeanClass extends BeanClass {
+    private final Class<?> proxyClass;
+    private final MethodHandle constructor;
+    private final boolean concurrent;
+
+    public ProxyBeanClass(BeanLayout layout, ClassLoader classLoader, boolean concurrent) {
+        super(layout);
+        this.concurrent = concurrent;
+        Class<?> beanInterface = layout.getBeanInterface();
+        proxyClass = Proxy.newProxyInstance(classLoader,
+                                            new Class[] { beanInterface },
+                                            newHandler()).getClass();
+        try {
+            Constructor<?> ctor = proxyClass.getConstructor(InvocationHandler.class);
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.lookup().unreflectConstructor(ctor);
+            } catch (IllegalAccessException e) {
+                // Proxy classes of non-public interfaces are not public
+                ctor.setAccessible(true);
+                handle = MethodHandles.lookup().unreflectConstructor(ctor);
+            }
+            constructor = handle.asType(MethodType.methodType(Object.class, InvocationHandler.class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot construct proxy for " + beanInterface.getName(), e);
+        }
+    }
+
+    private BeanInvocationHandler newHandler() {
+        if (concurrent) {
+            return new ConcurrentBeanInvocationHandler(getLayout());
+        }
+        return new ArrayBeanInvocationHandler(getLayout());
+    }
+
+    @Override // BeanClass
+    public Object newInstance() {
+        return newInstance(newHandler());
+    }
+
+    @Override // BeanClass
+    public boolean isInstance(Object bean) {
+        if (!isProxy(bean)) {
+            return false;
+        }
+        Class<?> handlerClass = Proxy.getInvocationHandler(bean).getClass();
+        return handlerClass == (concurrent ? ConcurrentBeanInvocationHandler.class : ArrayBeanInvocationHandler.class);
+    }
+
+    /**
+     * Checks if a bean is an instance of the proxy class, whatever its handler.
+     */
+    public boolean isProxy(Object bean) {
+        return bean != null && bean.getClass() == proxyClass;
+    }
+
+    public Object newInstance(BeanInvocationHandler handler) {
+        try {
+            return constructor.invokeExact((InvocationHandler) handler);
+        } catch (Throwable t) {
+            throw new IllegalStateException(
+                "Cannot construct proxy for " + getLayout().getBeanInterface().getName(), t);
+        }
+    }
+}
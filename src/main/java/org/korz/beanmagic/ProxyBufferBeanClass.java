@@ -0,0 +1,31 @@
+package org.korz.beanmagic;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+/**
+ * Creates proxy buffer beans, for interfaces that a class cannot be generated for.
+ */
+class ProxyBufferBeanClass extends BufferBeanClass {
+    private final ProxyBeanClass proxyClass;
+
+    ProxyBufferBeanClass(BinaryLayout binaryLayout, ClassLoader classLoader) {
+        super(binaryLayout);
+        this.proxyClass = new ProxyBeanClass(binaryLayout.getLayout(), classLoader, false);
+    }
+
+    @Override // BufferBeanClass
+    public Object newInstance() {
+        return proxyClass.newInstance(new BufferBeanInvocationHandler(getBinaryLayout()));
+    }
+
+    @Override // BeanClass
+    public boolean isInstance(Object bean) {
+        return proxyClass.isProxy(bean) && Proxy.getInvocationHandler(bean) instanceof BufferBeanInvocationHandler;
+    }
+
+    @Override // BufferBeanClass
+    public void moveTo(Object bean, ByteBuffer buffer, int offset) {
+        ((BufferBeanInvocationHandler) Proxy.getInvocationHandler(bean)).moveTo(buffer, offset);
+    }
+}
@@ -0,0 +1,300 @@
+package org.korz.beanmagic;
+
+import java.nio.CharBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Parses values directly from a range of a {@link CharSequence}, without creating a String first.
+ * Accepts the same text as the valueOf or parse method of the type.
+ */
+abstract class TextParser {
+    private static final Map<Class<?>, TextParser> PARSERS = new HashMap<>();
+    private static final ClassValue<TextParser> ENUM_PARSERS = new ClassValue<TextParser>() {
+        @Override // ClassValue
+        protected TextParser computeValue(Class<?> enumClass) {
+            return new EnumParser(enumClass);
+        }
+    };
+
+    // Powers of ten that are exact as doubles, for parsing simple decimals
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        PARSERS.put(Integer.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseInt(chars, start, end);
+            }
+        });
+        PARSERS.put(Long.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseLong(chars, start, end);
+            }
+        });
+        PARSERS.put(Short.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseShort(chars, start, end);
+            }
+        });
+        PARSERS.put(Byte.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseByte(chars, start, end);
+            }
+        });
+        PARSERS.put(Character.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseChar(chars, start, end);
+            }
+        });
+        PARSERS.put(Double.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseDouble(chars, start, end);
+            }
+        });
+        PARSERS.put(Float.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseFloat(chars, start, end);
+            }
+        });
+        PARSERS.put(Boolean.class, new TextParser() {
+            @Override // TextParser
+            public Object parse(CharSequence chars, int start, int end) {
+                return parseBoolean(chars, start, end);
+            }
+        });
+
+        // java.time types parse any CharSequence
+        Map<Class<?>, Function<CharSequence, ?>> times = new LinkedHashMap<>();
+        times.put(LocalDate.class, LocalDate::parse);
+        times.put(LocalTime.class, LocalTime::parse);
+        times.put(LocalDateTime.class, LocalDateTime::parse);
+        times.put(OffsetDateTime.class, OffsetDateTime::parse);
+        times.put(OffsetTime.class, OffsetTime::parse);
+        times.put(ZonedDateTime.class, ZonedDateTime::parse);
+        times.put(Instant.class, Instant::parse);
+        times.put(Year.class, Year::parse);
+        times.put(YearMonth.class, YearMonth::parse);
+        times.put(MonthDay.class, MonthDay::parse);
+        times.put(Duration.class, Duration::parse);
+        times.put(Period.class, Period::parse);
+        for (Map.Entry<Class<?>, Function<CharSequence, ?>> time : times.entrySet()) {
+            PARSERS.put(time.getKey(), new TimeParser(time.getValue()));
+        }
+
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Parses the characters from start to end.
+     *
+     * @throws IllegalArgumentException if the text cannot be parsed, e.g. {@link NumberFormatException}
+     */
+    public abstract Object parse(CharSequence chars, int start, int end);
+
+    /**
+     * Returns a parser for a boxed primitive, enum or java.time type, or null if the type is not supported.
+     */
+    public static TextParser forType(Class<?> type) {
+        if (type.isEnum()) {
+            return ENUM_PARSERS.get(type);
+        }
+        return PARSERS.get(BeanSetter.toBoxedType(type));
+    }
+
+    public static int parseInt(CharSequence chars, int start, int end) {
+        return (int) parseLong(chars, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public static long parseLong(CharSequence chars, int start, int end) {
+        return parseLong(chars, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public static short parseShort(CharSequence chars, int start, int end) {
+        return (short) parseLong(chars, start, end, Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    public static byte parseByte(CharSequence chars, int start, int end) {
+        return (byte) parseLong(chars, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    // Same as Long.parseLong, accumulating negatively so that the minimum value does not overflow
+    private static long parseLong(CharSequence chars, int start, int end, long min, long max) {
+        if (start >= end) {
+            throw numberFormat(chars, start, end);
+        }
+        int i = start;
+        boolean negative = false;
+        char first = chars.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                throw numberFormat(chars, start, end);
+            }
+        }
+        long limit = negative ? min : -max;
+        long multiplicationLimit = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(chars.charAt(i), 10);
+            if (digit < 0 || result < multiplicationLimit) {
+                throw numberFormat(chars, start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormat(chars, start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    public static double parseDouble(CharSequence chars, int start, int end) {
+        // Simple decimals with up to 15 digits are exact, anything else is left to Double
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        int i = start;
+        boolean negative = i < end && chars.charAt(i) == '-';
+        if (i < end && (negative || chars.charAt(i) == '+')) {
+            i++;
+        }
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 15) {
+            double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(chars.subSequence(start, end).toString());
+    }
+
+    public static float parseFloat(CharSequence chars, int start, int end) {
+        // Same as parseDouble, with the limits that keep float arithmetic exact
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        int i = start;
+        boolean negative = i < end && chars.charAt(i) == '-';
+        if (i < end && (negative || chars.charAt(i) == '+')) {
+            i++;
+        }
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 7 && scale <= 10) {
+            float value = scale > 0 ? mantissa / (float) POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -value : value;
+        }
+        return Float.parseFloat(chars.subSequence(start, end).toString());
+    }
+
+    /**
+     * Same as Boolean.parseBoolean, true ignoring case and anything else false.
+     */
+    public static boolean parseBoolean(CharSequence chars, int start, int end) {
+        return end - start == 4 &&
+            Character.toLowerCase(chars.charAt(start)) == 't' &&
+            Character.toLowerCase(chars.charAt(start + 1)) == 'r' &&
+            Character.toLowerCase(chars.charAt(start + 2)) == 'u' &&
+            Character.toLowerCase(chars.charAt(start + 3)) == 'e';
+    }
+
+    public static char parseChar(CharSequence chars, int start, int end) {
+        if (end - start != 1) {
+            throw new IllegalArgumentException(
+                "Not a single character: \"" + chars.subSequence(start, end) + "\"");
+        }
+        return chars.charAt(start);
+    }
+
+    private static NumberFormatException numberFormat(CharSequence chars, int start, int end) {
+        return new NumberFormatException("For input string: \"" + chars.subSequence(start, end) + "\"");
+    }
+
+    /**
+     * Looks up constants by name in a table built once, the same names as Enum.valueOf.
+     */
+    private static class EnumParser extends TextParser {
+        private final Class<?> enumClass;
+        private final CharSequenceTable<Object> constants;
+
+        EnumParser(Class<?> enumClass) {
+            this.enumClass = enumClass;
+            Map<String, Object> constants = new HashMap<>();
+            for (Object constant : enumClass.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+            this.constants = new CharSequenceTable<>(constants);
+        }
+
+        @Override // TextParser
+        public Object parse(CharSequence chars, int start, int end) {
+            Object constant = constants.get(chars, start, end);
+            if (constant == null) {
+                throw new IllegalArgumentException(
+                    "No enum constant " + enumClass.getName() + "." + chars.subSequence(start, end));
+            }
+            return constant;
+        }
+    }
+
+    private static class TimeParser extends TextParser {
+        private final Function<CharSequence, ?> parse;
+
+        TimeParser(Function<CharSequence, ?> parse) {
+            this.parse = parse;
+        }
+
+        @Override // TextParser
+        public Object parse(CharSequence chars, int start, int end) {
+            // A view of the range, the characters are not copied
+            return parse.apply(start == 0 && end == chars.length() ? chars : CharBuffer.wrap(chars, start, end));
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.korz.beanmagic;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Binds records of {@code key=value} lines to beans, prepared by {@link BeanSetter#newTextBinder}.
+ * Records are separated by blank lines and lines starting with {@code #} are comments.
+ * Keys are looked up and primitive values are parsed and set directly from the text, so binding them creates no
+ * Strings or boxed values. Other properties are converted from a String of their value as usual.
+ * Binders are thread safe.
+ */
+public class TextRecordBinder<T> {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final BeanSetter beanSetter;
+    private final Class<T> beanClass;
+    private final BeanPlan plan;
+    private final CharSequenceTable<TextProperty> properties;
+
+    TextRecordBinder(BeanSetter beanSetter, Class<T> beanClass, BeanPlan plan, boolean useMethodHandles) {
+        this.beanSetter = beanSetter;
+        this.beanClass = beanClass;
+        this.plan = plan;
+        Map<String, TextProperty> properties = new HashMap<>();
+        for (Map.Entry<String, PropertySetter> setter : plan.getSetters().entrySet()) {
+            properties.put(setter.getKey(), new TextProperty(setter.getValue(), useMethodHandles));
+        }
+        this.properties = new CharSequenceTable<>(properties);
+    }
+
+    public Class<T> getBeanClass() {
+        return beanClass;
+    }
+
+    /**
+     * Binds each record of the text to a new bean and passes it to the consumer.
+     *
+     * @return the number of records
+     */
+    public long bindAll(CharSequence text, Supplier<? extends T> beanSupplier, Consumer<? super T> consumer) {
+        if (text == null) {
+            throw new NullPointerException("text is null");
+        }
+        Records records = new Records(beanSupplier, consumer);
+        int lineStart = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                records.line(text, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        records.line(text, lineStart, text.length());
+        return records.end();
+    }
+
+    /**
+     * Binds each record of ISO-8859-1 (or ASCII) text, e.g. a memory mapped file, without decoding it first.
+     * Reads from the position to the limit of the buffer, without changing them.
+     *
+     * @see #bindAll(CharSequence, Supplier, Consumer)
+     */
+    public long bindAll(ByteBuffer text, Supplier<? extends T> beanSupplier, Consumer<? super T> consumer) {
+        if (text == null) {
+            throw new NullPointerException("text is null");
+        }
+        return bindAll(new Latin1Sequence(text, text.position(), text.limit()), beanSupplier, consumer);
+    }
+
+    /**
+     * Reads and binds each record, reusing a single buffer for the text.
+     *
+     * @see #bindAll(CharSequence, Supplier, Consumer)
+     */
+    public long bindAll(Reader reader, Supplier<? extends T> beanSupplier, Consumer<? super T> consumer)
+        throws IOException {
+        if (reader == null) {
+            throw new NullPointerException("reader is null");
+        }
+        Records records = new Records(beanSupplier, consumer);
+        char[] buffer = new char[BUFFER_SIZE];
+        // Absolute indexes of the wrapped array, the position is never moved
+        CharBuffer chars = CharBuffer.wrap(buffer);
+        int end = 0;
+        int scanned = 0;
+        int read;
+        while ((read = reader.read(buffer, end, buffer.length - end)) >= 0) {
+            end += read;
+            int lineStart = 0;
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    records.line(chars, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            // Keep the incomplete last line at the start of the buffer, growing it for long lines
+            end -= lineStart;
+            System.arraycopy(buffer, lineStart, buffer, 0, end);
+            scanned = end;
+            if (end == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                chars = CharBuffer.wrap(buffer);
+            }
+        }
+        records.line(chars, 0, end);
+        return records.end();
+    }
+
+    /**
+     * The state of one call, the bean of the current record.
+     */
+    private class Records {
+        private final Supplier<? extends T> beanSupplier;
+        private final Consumer<? super T> consumer;
+        private T bean;
+        private long count;
+        private int lineNumber;
+
+        Records(Supplier<? extends T> beanSupplier, Consumer<? super T> consumer) {
+            if (beanSupplier == null) {
+                throw new NullPointerException("beanSupplier is null");
+            }
+            if (consumer == null) {
+                throw new NullPointerException("consumer is null");
+            }
+            this.beanSupplier = beanSupplier;
+            this.consumer = consumer;
+        }
+
+        void line(CharSequence chars, int start, int end) {
+            lineNumber++;
+            if (end > start && chars.charAt(end - 1) == '\r') {
+                end--;
+            }
+            if (start == end) {
+                endRecord();
+                return;
+            }
+            if (chars.charAt(start) == '#') {
+                return;
+            }
+            int equals = start;
+            while (equals < end && chars.charAt(equals) != '=') {
+                equals++;
+            }
+            if (equals == end) {
+                throw new IllegalArgumentException("Line " + lineNumber + " is not key=value");
+            }
+            if (bean == null) {
+                bean = beanSupplier.get();
+                if (bean == null) {
+                    throw new NullPointerException("bean is null");
+                }
+            }
+            TextProperty property = properties.get(chars, start, equals);
+            if (property == null) {
+                beanSetter.missingSetter(plan, chars.subSequence(start, equals).toString());
+                return;
+            }
+            property.set(beanSetter, bean, chars, equals + 1, end);
+        }
+
+        private void endRecord() {
+            if (bean != null) {
+                beanSetter.bound(bean);
+                consumer.accept(bean);
+                bean = null;
+                count++;
+            }
+        }
+
+        long end() {
+            endRecord();
+            return count;
+        }
+    }
+
+    /**
+     * A property set from text, primitives through a handle taking a long, double or boolean.
+     */
+    private static class TextProperty {
+        private final PropertySetter setter;
+        private final Class<?> type;
+        private final BeanLayout.Storage storage;
+        // Null if the type is not parsed directly
+        private final TextParser parser;
+        // Null unless the type is primitive and the setter is an accessible method
+        private final MethodHandle primitive;
+
+        TextProperty(PropertySetter setter, boolean useMethodHandles) {
+            this.setter = setter;
+            this.type = setter.getParameterType();
+            this.storage = BeanLayout.Storage.of(type);
+            this.parser = TextParser.forType(type);
+            boolean direct = type.isPrimitive() && useMethodHandles && !setter.isCompiled();
+            this.primitive = direct ? toHandle(setter, type) : null;
+        }
+
+        private static MethodHandle toHandle(PropertySetter setter, Class<?> type) {
+            Class<?> storageType;
+            switch (BeanLayout.Storage.of(type)) {
+                case INTEGRAL:
+                    storageType = long.class;
+                    break;
+                case FLOATING:
+                    storageType = double.class;
+                    break;
+                default:
+                    storageType = boolean.class;
+                    break;
+            }
+            try {
+                // Narrows the long or double back to the type of the setter, which fits after parsing
+                return MethodHandles.explicitCastArguments(
+                    MethodHandles.lookup().unreflect(setter.getMethod()),
+                    MethodType.methodType(void.class, Object.class, storageType));
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        void set(BeanSetter beanSetter, Object bean, CharSequence chars, int start, int end) {
+            if (primitive == null) {
+                Object value = parser != null ? parse(chars, start, end) : chars.subSequence(start, end).toString();
+                beanSetter.setProperty(bean, setter, setter.getPropertyName(), value);
+                return;
+            }
+            long integral = 0;
+            double floating = 0;
+            boolean bool = false;
+            try {
+                switch (storage) {
+                    case INTEGRAL:
+                        integral = parseIntegral(chars, start, end);
+                        break;
+                    case FLOATING:
+                        floating = type == float.class ? TextParser.parseFloat(chars, start, end)
+                                                       : TextParser.parseDouble(chars, start, end);
+                        break;
+                    default:
+                        bool = TextParser.parseBoolean(chars, start, end);
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                throw parseFailed(chars, start, end, e);
+            }
+            try {
+                switch (storage) {
+                    case INTEGRAL:
+                        primitive.invokeExact(bean, integral);
+                        break;
+                    case FLOATING:
+                        primitive.invokeExact(bean, floating);
+                        break;
+                    default:
+                        primitive.invokeExact(bean, bool);
+                        break;
+                }
+            } catch (Throwable t) {
+                throw new IllegalArgumentException(
+                    "Failed to set property \"" + setter.getPropertyName() + "\", cannot invoke setter", t);
+            }
+        }
+
+        private long parseIntegral(CharSequence chars, int start, int end) {
+            if (type == int.class) {
+                return TextParser.parseInt(chars, start, end);
+            } else if (type == long.class) {
+                return TextParser.parseLong(chars, start, end);
+            } else if (type == short.class) {
+                return TextParser.parseShort(chars, start, end);
+            } else if (type == byte.class) {
+                return TextParser.parseByte(chars, start, end);
+            } else {
+                return TextParser.parseChar(chars, start, end);
+            }
+        }
+
+        private Object parse(CharSequence chars, int start, int end) {
+            try {
+                return parser.parse(chars, start, end);
+            } catch (RuntimeException e) {
+                throw parseFailed(chars, start, end, e);
+            }
+        }
+
+        private IllegalArgumentException parseFailed(CharSequence chars, int start, int end, RuntimeException e) {
+            return new IllegalArgumentException(
+                "Failed to set property \"" + setter.getPropertyName() + "\", failed to parse \"" +
+                    chars.subSequence(start, end) + "\" as " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Bytes read as ISO-8859-1 characters, by absolute index so the buffer is not changed.
+     */
+    private static class Latin1Sequence implements CharSequence {
+        private final ByteBuffer bytes;
+        private final int start;
+        private final int end;
+
+        Latin1Sequence(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override // CharSequence
+        public int length() {
+            return end - start;
+        }
+
+        @Override // CharSequence
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xff);
+        }
+
+        @Override // CharSequence
+        public CharSequence subSequence(int start, int end) {
+            return new Latin1Sequence(bytes, this.start + start, this.start + end);
+        }
+
+        @Override // Object
+        public String toString() {
+            char[] chars = new char[length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
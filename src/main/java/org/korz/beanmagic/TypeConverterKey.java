@@ -1,7 +1,5 @@
 package org.korz.beanmagic;
 
-import java.util.Objects;
-
 class TypeConverterKey {
     private final Class<?> in;
     private final Class<?> out;
@@ -11,6 +9,14 @@ class TypeConverterKey {
         this.out = out;
     }
 
+    public Class<?> getIn() {
+        return in;
+    }
+
+    public Class<?> getOut() {
+        return out;
+    }
+
     @Override // Object
     public String toString() {
         return String.format("(%s, %s)", in.getName(), out.getName());
@@ -30,6 +36,7 @@ class TypeConverterKey {
 
     @Override // Object
     public int hashCode() {
-        return Objects.hash(in, out);
+        // Not Objects.hash, which allocates an array
+        return 31 * in.hashCode() + out.hashCode();
     }
 }
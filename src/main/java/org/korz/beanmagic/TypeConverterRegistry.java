@@ -0,0 +1,130 @@
+package org.korz.beanmagic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Type converters registered with a {@link BeanSetter.Builder}, immutable so that every BeanSetter built from the
+ * builder can share it.
+ * A converter also applies to subtypes of its input and to supertypes of its output, e.g. a converter from
+ * {@code Number} applies to {@code Integer}. The closest match for each pair of types is found once and remembered,
+ * so lookups do not allocate or lock.
+ */
+class TypeConverterRegistry {
+    static final TypeConverterRegistry EMPTY = new TypeConverterRegistry(Collections.emptyMap());
+
+    // Matching Object is less specific than any other supertype
+    private static final int OBJECT_DISTANCE = Integer.MAX_VALUE;
+
+    private final Map<TypeConverterKey, Function<Object, Object>> typeConverters;
+    // Values are stored on classes such as String, so they must not refer back to this registry or its ClassValue,
+    // or neither could be collected
+    private final ClassValue<Matches> matches = new ClassValue<Matches>() {
+        @Override // ClassValue
+        protected Matches computeValue(Class<?> in) {
+            return new Matches(in, typeConverters);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    TypeConverterRegistry(Map<TypeConverterKey, Function<?, ?>> typeConverters) {
+        // Keep the order of registration, the first of equally close matches wins
+        Map<TypeConverterKey, Function<Object, Object>> copy = new LinkedHashMap<>();
+        for (Map.Entry<TypeConverterKey, Function<?, ?>> typeConverter : typeConverters.entrySet()) {
+            copy.put(typeConverter.getKey(), (Function<Object, Object>) typeConverter.getValue());
+        }
+        this.typeConverters = Collections.unmodifiableMap(copy);
+    }
+
+    public boolean isEmpty() {
+        return typeConverters.isEmpty();
+    }
+
+    /**
+     * Returns the closest matching converter, or null if there is none.
+     */
+    public Function<Object, Object> get(Class<?> in, Class<?> out) {
+        if (typeConverters.isEmpty()) {
+            return null;
+        }
+        return matches.get(BeanSetter.toBoxedType(in)).get(BeanSetter.toBoxedType(out));
+    }
+
+    /**
+     * The closest matching converter from one input type by output type, null if none matches.
+     */
+    private static final class Matches extends ClassValue<Function<Object, Object>> {
+        private final Class<?> in;
+        private final Map<TypeConverterKey, Function<Object, Object>> typeConverters;
+
+        Matches(Class<?> in, Map<TypeConverterKey, Function<Object, Object>> typeConverters) {
+            this.in = in;
+            this.typeConverters = typeConverters;
+        }
+
+        @Override // ClassValue
+        protected Function<Object, Object> computeValue(Class<?> out) {
+            return findMatch(typeConverters, in, out);
+        }
+    }
+
+    private static Function<Object, Object> findMatch(Map<TypeConverterKey, Function<Object, Object>> typeConverters,
+                                                      Class<?> in, Class<?> out) {
+        Function<Object, Object> exact = typeConverters.get(new TypeConverterKey(in, out));
+        if (exact != null) {
+            return exact;
+        }
+        Function<Object, Object> match = null;
+        int matchInDistance = 0;
+        int matchOutDistance = 0;
+        for (Map.Entry<TypeConverterKey, Function<Object, Object>> typeConverter : typeConverters.entrySet()) {
+            int inDistance = distance(in, typeConverter.getKey().getIn());
+            int outDistance = distance(typeConverter.getKey().getOut(), out);
+            if (inDistance < 0 || outDistance < 0) {
+                continue;
+            }
+            // Closest input first, then closest output
+            if (match == null || inDistance < matchInDistance ||
+                (inDistance == matchInDistance && outDistance < matchOutDistance)) {
+                match = typeConverter.getValue();
+                matchInDistance = inDistance;
+                matchOutDistance = outDistance;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Returns how many steps up the type hierarchy a supertype is, or -1 if it is not a supertype.
+     */
+    static int distance(Class<?> type, Class<?> supertype) {
+        if (type == supertype) {
+            return 0;
+        }
+        if (!supertype.isAssignableFrom(type)) {
+            return -1;
+        }
+        if (supertype == Object.class) {
+            return OBJECT_DISTANCE;
+        }
+        List<Class<?>> level = Collections.singletonList(type);
+        for (int distance = 1; !level.isEmpty(); distance++) {
+            List<Class<?>> next = new ArrayList<>();
+            for (Class<?> clazz : level) {
+                if (clazz.getSuperclass() != null) {
+                    next.add(clazz.getSuperclass());
+                }
+                Collections.addAll(next, clazz.getInterfaces());
+            }
+            if (next.contains(supertype)) {
+                return distance;
+            }
+            level = next;
+        }
+        return -1;
+    }
+}
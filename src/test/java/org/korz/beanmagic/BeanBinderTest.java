@@ -0,0 +1,106 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BeanBinderTest {
+    public static class RowBean {
+        private String name;
+        private int count;
+        private LocalDate date;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+    }
+
+    @Test
+    public void objects() {
+        BeanBinder<RowBean> binder = new BeanSetter().newBinder(RowBean.class, "name", "count", "date");
+        RowBean bean = new RowBean();
+        binder.bind(bean, new Object[] { "fred", 42, "2018-09-01" });
+        assertThat(bean.getName(), is("fred"));
+        assertThat(bean.getCount(), is(42));
+        assertThat(bean.getDate(), is(LocalDate.of(2018, 9, 1)));
+    }
+
+    @Test
+    public void objectConversions() {
+        BeanSetter setter = new BeanSetter();
+        BeanBinder<RowBean> binder = setter.newBinder(RowBean.class, "name", "count", "date");
+        long hits = setter.getConversionCacheHits();
+        long misses = setter.getConversionCacheMisses();
+        RowBean bean = new RowBean();
+        for (int i = 1; i <= 3; i++) {
+            binder.bind(bean, new Object[] { "fred", String.valueOf(i), "2018-09-0" + i });
+            assertThat(bean.getCount(), is(i));
+            assertThat(bean.getDate(), is(LocalDate.of(2018, 9, i)));
+        }
+        // Resolved by the binder, not looked up again for each value
+        assertThat(setter.getConversionCacheHits(), is(hits));
+        assertThat(setter.getConversionCacheMisses(), is(misses));
+        binder.bind(bean, new Object[] { "fred", new StringBuilder("4"), LocalDate.of(2018, 9, 4) });
+        assertThat(bean.getCount(), is(4));
+        assertThat(bean.getDate(), is(LocalDate.of(2018, 9, 4)));
+        binder.bind(bean, new Object[] { "fred", "5", null });
+        assertThat(bean.getCount(), is(5));
+        assertThat(bean.getDate(), is(nullValue()));
+    }
+
+    @Test
+    public void text() {
+        BeanBinder<RowBean> binder = new BeanSetter().newBinder(RowBean.class, "date", "count", "name");
+        RowBean bean = new RowBean();
+        binder.bind(bean, new CharSequence[] { new StringBuilder("2018-09-01"), "42", null });
+        assertThat(bean.getName(), is(nullValue()));
+        assertThat(bean.getCount(), is(42));
+        assertThat(bean.getDate(), is(LocalDate.of(2018, 9, 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unusedError() {
+        new BeanSetter().newBinder(RowBean.class, "name", "llamo");
+    }
+
+    @Test
+    public void ignoreUnused() {
+        BeanBinder<RowBean> binder = BeanSetter.newBuilder()
+            .setErrorOnUnused(false)
+            .build()
+            .newBinder(RowBean.class, "name", "llamo");
+        RowBean bean = new RowBean();
+        binder.bind(bean, new Object[] { "fred", "federico" });
+        assertThat(bean.getName(), is("fred"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongLength() {
+        BeanBinder<RowBean> binder = new BeanSetter().newBinder(RowBean.class, "name", "count");
+        binder.bind(new RowBean(), new Object[] { "fred" });
+    }
+}
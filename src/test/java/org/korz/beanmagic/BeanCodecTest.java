@@ -0,0 +1,228 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BeanCodecTest {
+    public interface PersonBean {
+        String getName();
+        void setName(String name);
+        int getAge();
+        void setAge(int age);
+        long getId();
+        void setId(long id);
+        double getScore();
+        void setScore(double score);
+        float getWeight();
+        void setWeight(float weight);
+        boolean isActive();
+        void setActive(boolean active);
+        char getInitial();
+        void setInitial(char initial);
+        byte getLevel();
+        void setLevel(byte level);
+        short getRank();
+        void setRank(short rank);
+        Integer getLimit();
+        void setLimit(Integer limit);
+        TimeUnit getUnit();
+        void setUnit(TimeUnit unit);
+        byte[] getPhoto();
+        void setPhoto(byte[] photo);
+        PersonBean getManager();
+        void setManager(PersonBean manager);
+    }
+
+    public interface CountBean {
+        int getCount();
+        void setCount(int count);
+    }
+
+    interface ListBean {
+        List<String> getNames();
+        void setNames(List<String> names);
+    }
+
+    private static PersonBean fill(PersonBean person) {
+        person.setName("fr\u00e9d");
+        person.setAge(-42);
+        person.setId(1L << 50);
+        person.setScore(0.1);
+        person.setWeight(72.5f);
+        person.setActive(true);
+        person.setInitial('\u20ac');
+        person.setLevel((byte) -3);
+        person.setRank(Short.MIN_VALUE);
+        person.setLimit(100);
+        person.setUnit(TimeUnit.SECONDS);
+        return person;
+    }
+
+    @Test
+    public void roundTrip() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        PersonBean person = fill(factory.createBean(PersonBean.class));
+        PersonBean decoded = codec.decode(codec.encode(person));
+        assertThat(decoded, is(person));
+        assertThat(decoded.getName(), is("fr\u00e9d"));
+        assertThat(decoded.getInitial(), is('\u20ac'));
+        assertThat(decoded.getLimit(), is(100));
+    }
+
+    @Test
+    public void unset() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        PersonBean person = factory.createBean(PersonBean.class);
+        person.setAge(0);
+        person.setName(null);
+        byte[] bytes = codec.encode(person);
+        // Two bitmap bytes for 13 properties, a null name and a zero age
+        assertThat(bytes.length, is(4));
+        PersonBean decoded = codec.decode(bytes);
+        assertThat(decoded, is(person));
+        assertThat(decoded.toString(), is(person.toString()));
+    }
+
+    @Test
+    public void compact() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<CountBean> codec = factory.newCodec(CountBean.class);
+        CountBean bean = factory.createBean(CountBean.class);
+        bean.setCount(-1);
+        assertThat(codec.encode(bean), is(new byte[] { 1, 1 }));
+        bean.setCount(300);
+        assertThat(codec.encode(bean), is(new byte[] { 1, (byte) 0xd8, 0x04 }));
+    }
+
+    @Test
+    public void nested() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        PersonBean person = fill(factory.createBean(PersonBean.class));
+        PersonBean manager = factory.createBean(PersonBean.class);
+        manager.setName("zed");
+        manager.setPhoto(new byte[] { 1, 2, 3 });
+        person.setManager(manager);
+        PersonBean decoded = codec.decode(codec.encode(person));
+        assertThat(decoded.getManager().getName(), is("zed"));
+        assertThat(decoded.getManager().getPhoto(), is(new byte[] { 1, 2, 3 }));
+        assertThat(decoded.getManager().getManager(), is(nullValue()));
+    }
+
+    @Test
+    public void generated() {
+        BeanFactory proxies = new BeanFactory();
+        BeanFactory generated = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        PersonBean proxy = fill(proxies.createBean(PersonBean.class));
+        byte[] bytes = proxies.newCodec(PersonBean.class).encode(proxy);
+
+        BeanCodec<PersonBean> codec = generated.newCodec(PersonBean.class);
+        PersonBean decoded = codec.decode(bytes);
+        assertThat(decoded.getClass() == proxy.getClass(), is(false));
+        assertThat(decoded.toString(), is(proxy.toString()));
+        assertThat(codec.encode(decoded), is(bytes));
+    }
+
+    @Test
+    public void frozenAndConcurrent() {
+        BeanFactory factory = new BeanFactory();
+        BeanFactory concurrent = BeanFactory.newBuilder().setConcurrent(true).build();
+        PersonBean person = fill(factory.createBean(PersonBean.class));
+        byte[] bytes = factory.newCodec(PersonBean.class).encode(person);
+        assertThat(factory.newCodec(PersonBean.class).encode(factory.freeze(person)), is(bytes));
+        PersonBean decoded = concurrent.newCodec(PersonBean.class).decode(bytes);
+        assertThat(decoded.toString(), is(person.toString()));
+        assertThat(concurrent.newCodec(PersonBean.class).encode(decoded), is(bytes));
+    }
+
+    @Test
+    public void view() {
+        BeanFactory factory = new BeanFactory();
+        BeanView<CountBean> view = factory.createView(CountBean.class, ByteBuffer.allocate(4));
+        view.getBean().setCount(300);
+        BeanCodec<CountBean> codec = factory.newCodec(CountBean.class);
+        assertThat(codec.decode(codec.encode(view.getBean())).getCount(), is(300));
+    }
+
+    @Test
+    public void bulkBuffer() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        List<PersonBean> people = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            PersonBean person = fill(factory.createBean(PersonBean.class));
+            person.setAge(i);
+            people.add(person);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8192).order(ByteOrder.LITTLE_ENDIAN);
+        codec.encodeAll(people, buffer);
+        buffer.flip();
+        assertThat(codec.decodeAll(buffer), is(people));
+        assertThat(buffer.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void bulkStream() throws IOException {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        List<PersonBean> people = Arrays.asList(fill(factory.createBean(PersonBean.class)),
+                                                factory.createBean(PersonBean.class));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encodeAll(people, out);
+        codec.encode(people.get(0), out);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertThat(codec.decodeAll(in), is(people));
+        assertThat(codec.decode(in), is(people.get(0)));
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    public void overflow() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+        buffer.put((byte) 7);
+        try {
+            codec.encode(fill(factory.createBean(PersonBean.class)), buffer);
+            throw new AssertionError("expected overflow");
+        } catch (BufferOverflowException e) {
+            assertThat(buffer.position(), is(1));
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncated() throws IOException {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PersonBean> codec = factory.newCodec(PersonBean.class);
+        byte[] bytes = codec.encode(fill(factory.createBean(PersonBean.class)));
+        codec.decode(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformed() {
+        BeanCodec<CountBean> codec = new BeanFactory().newCodec(CountBean.class);
+        codec.decode(new byte[] { 3 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notEncodable() {
+        new BeanFactory().newCodec(ListBean.class);
+    }
+}
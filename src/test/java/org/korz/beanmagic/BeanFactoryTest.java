@@ -2,12 +2,24 @@ package org.korz.beanmagic;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class BeanFactoryTest {
     interface SimpleBean {
@@ -89,4 +101,490 @@ public class BeanFactoryTest {
         bean.setEnabled(true);
         assertThat(bean.isEnabled(), is(true));
     }
+
+    interface PersonBean {
+        String getName();
+        void setName(String name);
+        Integer getAge();
+        void setAge(Integer age);
+        String getEmail();
+        void setEmail(String email);
+    }
+
+    @Test
+    public void sameAsMap() {
+        PersonBean bean = new BeanFactory().createBean(PersonBean.class);
+        bean.setName("fred");
+        bean.setAge(42);
+        bean.setEmail(null);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", "fred");
+        properties.put("age", 42);
+        properties.put("email", null);
+        assertThat(bean.toString(), is(properties.toString()));
+        assertThat(bean.hashCode(), is(properties.hashCode()));
+    }
+
+    @Test
+    public void notEqualUnset() {
+        PersonBean bean = new BeanFactory().createBean(PersonBean.class);
+        bean.setEmail(null);
+        PersonBean bean2 = new BeanFactory().createBean(PersonBean.class);
+        assertThat(bean.getEmail(), is(bean2.getEmail()));
+        assertThat(bean, not(bean2));
+    }
+
+    public interface PrimitiveBean {
+        int getCount();
+        void setCount(int count);
+        long getTotal();
+        void setTotal(long total);
+        double getRatio();
+        void setRatio(double ratio);
+        boolean isEnabled();
+        void setEnabled(boolean enabled);
+        char getGrade();
+        void setGrade(char grade);
+        String getName();
+        void setName(String name);
+    }
+
+    private static PrimitiveBean fill(PrimitiveBean bean) {
+        bean.setCount(42);
+        bean.setTotal(1L << 40);
+        bean.setRatio(0.5);
+        bean.setEnabled(true);
+        bean.setGrade('A');
+        bean.setName(null);
+        return bean;
+    }
+
+    @Test
+    public void generated() {
+        BeanFactory factory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        PrimitiveBean bean = fill(factory.createBean(PrimitiveBean.class));
+        assertThat(Proxy.isProxyClass(bean.getClass()), is(false));
+        assertThat(bean.getCount(), is(42));
+        assertThat(bean.getTotal(), is(1L << 40));
+        assertThat(bean.getRatio(), is(0.5));
+        assertThat(bean.isEnabled(), is(true));
+        assertThat(bean.getGrade(), is('A'));
+        assertThat(bean.getName(), is(nullValue()));
+    }
+
+    @Test
+    public void generatedObjectMethodsPrivate() throws Exception {
+        BeanFactory factory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        Class<?> beanClass = factory.createBean(PrimitiveBean.class).getClass();
+        for (String name : new String[] { "$toString", "$equals", "$hashCode" }) {
+            assertThat(Modifier.isPrivate(beanClass.getDeclaredField(name).getModifiers()), is(true));
+        }
+        assertThat(fill(factory.createBean(PrimitiveBean.class)).toString(), containsString("count=42"));
+    }
+
+    @Test
+    public void generatedFallback() {
+        // No class can be generated with a field of inconsistent type, so beans are proxies
+        BeanFactory factory = BeanFactory.newBuilder().setValidateInterface(false).setGenerateClasses(true).build();
+        MismatchedTypeBean bean = factory.createBean(MismatchedTypeBean.class);
+        assertThat(Proxy.isProxyClass(bean.getClass()), is(true));
+        assertThat(bean.getName(), is(nullValue()));
+    }
+
+    @Test
+    public void generatedParity() {
+        PrimitiveBean proxy = fill(new BeanFactory().createBean(PrimitiveBean.class));
+        BeanFactory factory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        PrimitiveBean generated = fill(factory.createBean(PrimitiveBean.class));
+        assertThat(generated.toString(), is(proxy.toString()));
+        assertThat(generated.hashCode(), is(proxy.hashCode()));
+        assertThat(generated, is(fill(factory.createBean(PrimitiveBean.class))));
+        PrimitiveBean other = fill(factory.createBean(PrimitiveBean.class));
+        other.setCount(7);
+        assertThat(generated, not(other));
+    }
+
+    @Test
+    public void generatedNonPublic() {
+        BeanFactory factory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        SimpleBean bean = factory.createBean(SimpleBean.class);
+        bean.setName("fred");
+        SimpleBean proxy = new BeanFactory().createBean(SimpleBean.class);
+        proxy.setName("fred");
+        assertThat(bean.getName(), is("fred"));
+        assertThat(bean.toString(), is(proxy.toString()));
+        assertThat(bean.hashCode(), is(proxy.hashCode()));
+    }
+
+    @Test
+    public void reuseFactory() {
+        BeanFactory factory = new BeanFactory();
+        PrimitiveBean bean = fill(factory.createBean(PrimitiveBean.class));
+        PrimitiveBean bean2 = fill(factory.createBean(PrimitiveBean.class));
+        assertThat(bean == bean2, is(false));
+        assertThat(bean.getClass() == bean2.getClass(), is(true));
+        assertThat(bean, is(bean2));
+        bean2.setCount(7);
+        assertThat(bean.getCount(), is(42));
+    }
+
+    interface MissingSetterBean {
+        String getName();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingSetter() {
+        new BeanFactory().createBean(MissingSetterBean.class);
+    }
+
+    interface MismatchedTypeBean {
+        String getName();
+        void setName(CharSequence name);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedType() {
+        new BeanFactory().createBean(MismatchedTypeBean.class);
+    }
+
+    interface NotAccessorBean {
+        String getName();
+        void setName(String name);
+        void run();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAccessor() {
+        new BeanFactory().prepare(NotAccessorBean.class);
+    }
+
+    @Test
+    public void noValidation() {
+        BeanFactory factory = BeanFactory.newBuilder().setValidateInterface(false).build();
+        MissingSetterBean bean = factory.createBean(MissingSetterBean.class);
+        assertThat(bean.getName(), is(nullValue()));
+    }
+
+    @Test
+    public void prepare() {
+        BeanFactory factory = new BeanFactory();
+        factory.prepare(SimpleBean.class, PrimitiveBean.class);
+        SimpleBean bean = factory.createBean(SimpleBean.class);
+        bean.setName("fred");
+        assertThat(bean.getName(), is("fred"));
+    }
+
+    @Test
+    public void primitiveDefaults() {
+        PrimitiveBean bean = new BeanFactory().createBean(PrimitiveBean.class);
+        assertThat(bean.getCount(), is(0));
+        assertThat(bean.getTotal(), is(0L));
+        assertThat(bean.getRatio(), is(0.0));
+        assertThat(bean.isEnabled(), is(false));
+        assertThat(bean.getGrade(), is('\0'));
+        assertThat(bean.toString(), is("{}"));
+    }
+
+    @Test
+    public void primitives() {
+        PrimitiveBean bean = fill(new BeanFactory().createBean(PrimitiveBean.class));
+        assertThat(bean.getCount(), is(42));
+        assertThat(bean.getTotal(), is(1L << 40));
+        assertThat(bean.getRatio(), is(0.5));
+        assertThat(bean.isEnabled(), is(true));
+        assertThat(bean.getGrade(), is('A'));
+        bean.setEnabled(false);
+        assertThat(bean.isEnabled(), is(false));
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", 42);
+        properties.put("total", 1L << 40);
+        properties.put("ratio", 0.5);
+        properties.put("enabled", false);
+        properties.put("grade", 'A');
+        properties.put("name", null);
+        assertThat(bean.hashCode(), is(properties.hashCode()));
+    }
+
+    @Test
+    public void notEqualPrimitiveUnset() {
+        PrimitiveBean bean = new BeanFactory().createBean(PrimitiveBean.class);
+        bean.setCount(0);
+        PrimitiveBean bean2 = new BeanFactory().createBean(PrimitiveBean.class);
+        assertThat(bean, not(bean2));
+        bean2.setCount(0);
+        assertThat(bean, is(bean2));
+    }
+
+    public interface CounterBean {
+        int getCount();
+        void setCount(int count);
+        boolean compareAndSetCount(int expect, int update);
+        String getOwner();
+        void setOwner(String owner);
+        boolean compareAndSetOwner(String expect, String update);
+    }
+
+    @Test
+    public void compareAndSet() {
+        CounterBean bean = new BeanFactory().createBean(CounterBean.class);
+        assertThat(bean.compareAndSetCount(1, 2), is(false));
+        assertThat(bean.compareAndSetCount(0, 2), is(true));
+        assertThat(bean.getCount(), is(2));
+        assertThat(bean.compareAndSetOwner(null, "fred"), is(true));
+        assertThat(bean.getOwner(), is("fred"));
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        BeanFactory factory = BeanFactory.newBuilder().setConcurrent(true).build();
+        CounterBean bean = factory.createBean(CounterBean.class);
+        assertThat(bean.compareAndSetOwner(null, "fred"), is(true));
+        assertThat(bean.compareAndSetOwner(null, "zed"), is(false));
+        assertThat(bean.getOwner(), is("fred"));
+
+        int threadCount = 8;
+        int increments = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < increments; j++) {
+                    int count;
+                    do {
+                        count = bean.getCount();
+                    } while (!bean.compareAndSetCount(count, count + 1));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(bean.getCount(), is(threadCount * increments));
+
+        CounterBean bean2 = new BeanFactory().createBean(CounterBean.class);
+        bean2.setOwner("fred");
+        bean2.setCount(threadCount * increments);
+        assertThat(bean.toString(), is(bean2.toString()));
+        assertThat(bean.hashCode(), is(bean2.hashCode()));
+        assertThat(bean, is(bean2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void concurrentGenerated() {
+        BeanFactory.newBuilder().setConcurrent(true).setGenerateClasses(true).build();
+    }
+
+    @Test
+    public void freeze() {
+        BeanFactory factory = new BeanFactory();
+        PrimitiveBean bean = factory.createBean(PrimitiveBean.class);
+        bean.setCount(42);
+        bean.setName("fred");
+        PrimitiveBean frozen = factory.freeze(bean);
+        assertThat(factory.isFrozen(frozen), is(true));
+        assertThat(factory.isFrozen(bean), is(false));
+        assertThat(factory.freeze(frozen) == frozen, is(true));
+        assertThat(frozen, is(bean));
+        assertThat(frozen.hashCode(), is(bean.hashCode()));
+        assertThat(frozen.toString(), is(bean.toString()));
+
+        // The original stays mutable, without changing the frozen copy
+        bean.setCount(43);
+        bean.setEnabled(true);
+        assertThat(frozen.getCount(), is(42));
+        assertThat(frozen.isEnabled(), is(false));
+        assertThat(frozen, not(bean));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void freezeSet() {
+        BeanFactory factory = new BeanFactory();
+        PersonBean bean = factory.freeze(factory.createBean(PersonBean.class));
+        bean.setName("fred");
+    }
+
+    @Test
+    public void derive() {
+        BeanFactory factory = new BeanFactory();
+        PersonBean bean = factory.createBean(PersonBean.class);
+        bean.setName("fred");
+        bean.setAge(42);
+        PersonBean frozen = factory.freeze(bean);
+        PersonBean derived = factory.derive(frozen, b -> b.setAge(43));
+        assertThat(factory.isFrozen(derived), is(true));
+        assertThat(derived.getName(), is("fred"));
+        assertThat(derived.getAge(), is(43));
+        assertThat(frozen.getAge(), is(42));
+        assertThat(derived, not(frozen));
+        assertThat(factory.derive(frozen, b -> b.setAge(42)), is(frozen));
+    }
+
+    @Test
+    public void freezeOther() {
+        BeanFactory concurrentFactory = BeanFactory.newBuilder().setConcurrent(true).build();
+        BeanFactory generatedFactory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        for (BeanFactory factory : new BeanFactory[] { concurrentFactory, generatedFactory }) {
+            PrimitiveBean bean = factory.createBean(PrimitiveBean.class);
+            bean.setCount(42);
+            bean.setGrade('A');
+            bean.setName("fred");
+            PrimitiveBean frozen = factory.freeze(bean);
+            assertThat(factory.isFrozen(frozen), is(true));
+            assertThat(frozen.toString(), is(bean.toString()));
+            assertThat(frozen.hashCode(), is(bean.hashCode()));
+            assertThat(frozen.getGrade(), is('A'));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void freezeNotBean() {
+        new BeanFactory().freeze("fred");
+    }
+
+    @Test
+    public void reset() {
+        BeanFactory concurrentFactory = BeanFactory.newBuilder().setConcurrent(true).build();
+        BeanFactory generatedFactory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        for (BeanFactory factory : new BeanFactory[] { new BeanFactory(), concurrentFactory, generatedFactory }) {
+            PrimitiveBean bean = fill(factory.createBean(PrimitiveBean.class));
+            PrimitiveBean frozen = factory.freeze(bean);
+            factory.reset(bean);
+            assertThat(bean, is(factory.createBean(PrimitiveBean.class)));
+            assertThat(bean.toString(), is("{}"));
+            assertThat(bean.getCount(), is(0));
+            assertThat(bean.isEnabled(), is(false));
+            assertThat(bean.getGrade(), is('\0'));
+            // The frozen copy is not reset
+            assertThat(frozen.getCount(), is(42));
+            assertThat(frozen.toString(), is(fill(bean).toString()));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void resetFrozen() {
+        BeanFactory factory = new BeanFactory();
+        factory.reset(factory.freeze(factory.createBean(SimpleBean.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resetNotBean() {
+        new BeanFactory().reset("fred");
+    }
+
+    public interface RaceBean {
+        int getCount();
+        void setCount(int count);
+    }
+
+    // Loads its own copy of an interface, so that classes are generated for it again
+    private static class ReloadingClassLoader extends ClassLoader {
+        ReloadingClassLoader() {
+            super(BeanFactoryTest.class.getClassLoader());
+        }
+
+        Class<?> reload(Class<?> type) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (InputStream in = type.getResourceAsStream(type.getName().replaceAll(".*\\.", "") + ".class")) {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    bytes.write(buffer, 0, n);
+                }
+            }
+            return defineClass(type.getName(), bytes.toByteArray(), 0, bytes.size());
+        }
+    }
+
+    /**
+     * Runs a first use of a newly loaded copy of an interface on several threads at once, many times.
+     */
+    static void firstUseConcurrently(Class<?> type, ThrowingConsumer<Class<?>> firstUse) throws Exception {
+        for (int round = 0; round < 50; round++) {
+            Class<?> beanInterface = new ReloadingClassLoader().reload(type);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        firstUse.accept(beanInterface);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (failure.get() != null) {
+                throw new AssertionError("Failed in round " + round, failure.get());
+            }
+        }
+    }
+
+    interface ThrowingConsumer<T> {
+        void accept(T t) throws Exception;
+    }
+
+    @Test
+    public void generatedConcurrently() throws Exception {
+        firstUseConcurrently(RaceBean.class, beanInterface -> {
+            BeanFactory factory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+            Object bean = factory.createBean(beanInterface);
+            assertThat(Proxy.isProxyClass(bean.getClass()), is(false));
+            beanInterface.getMethod("setCount", int.class).invoke(bean, 42);
+            assertThat(bean.toString(), is("{count=42}"));
+        });
+    }
+
+    public interface DefaultMethodBean {
+        String getName();
+        void setName(String name);
+        int getCount();
+        void setCount(int count);
+
+        default String getGreeting() {
+            return "hello " + getName();
+        }
+
+        default void increment(int by) {
+            setCount(getCount() + by);
+        }
+
+        default void check() throws IOException {
+            throw new IOException("checked");
+        }
+    }
+
+    @Test
+    public void defaultMethods() {
+        BeanFactory concurrentFactory = BeanFactory.newBuilder().setConcurrent(true).build();
+        BeanFactory generatedFactory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        BeanFactory unvalidatedFactory = BeanFactory.newBuilder().setValidateInterface(false).build();
+        for (BeanFactory factory : new BeanFactory[] {
+            new BeanFactory(), concurrentFactory, generatedFactory, unvalidatedFactory }) {
+            factory.prepare(DefaultMethodBean.class);
+            DefaultMethodBean bean = factory.createBean(DefaultMethodBean.class);
+            bean.setName("fred");
+            bean.increment(2);
+            bean.increment(3);
+            assertThat(bean.getGreeting(), is("hello fred"));
+            assertThat(bean.getCount(), is(5));
+            // Not a property
+            assertThat(factory.freeze(bean).toString().contains("greeting"), is(false));
+            try {
+                bean.check();
+                fail();
+            } catch (IOException e) {
+                assertThat(e.getMessage(), is("checked"));
+            }
+        }
+        assertThat(Proxy.isProxyClass(new BeanFactory().createBean(DefaultMethodBean.class).getClass()), is(true));
+        assertThat(Proxy.isProxyClass(generatedFactory.createBean(DefaultMethodBean.class).getClass()), is(false));
+    }
 }
@@ -0,0 +1,245 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BeanMapperTest {
+    public static class TextBean {
+        private String name;
+        private String count;
+        private String date;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getCount() {
+            return count;
+        }
+
+        public void setCount(String count) {
+            this.count = count;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public void setDate(String date) {
+            this.date = date;
+        }
+    }
+
+    public static class RowBean {
+        private String name;
+        private int count;
+        private LocalDate date;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+    }
+
+    public interface RowInterface {
+        String getName();
+        void setName(String name);
+        int getCount();
+        void setCount(int count);
+        LocalDate getDate();
+        void setDate(LocalDate date);
+    }
+
+    private static TextBean text() {
+        TextBean bean = new TextBean();
+        bean.setName("fred");
+        bean.setCount("42");
+        bean.setDate("2018-09-01");
+        return bean;
+    }
+
+    @Test
+    public void convert() {
+        BeanMapper<TextBean, RowBean> mapper = new BeanSetter().newMapper(TextBean.class, RowBean.class);
+        RowBean bean = mapper.map(text(), RowBean::new);
+        assertThat(bean.getName(), is("fred"));
+        assertThat(bean.getCount(), is(42));
+        assertThat(bean.getDate(), is(LocalDate.of(2018, 9, 1)));
+    }
+
+    @Test
+    public void typeConverter() {
+        BeanSetter beanSetter = BeanSetter.newBuilder()
+            .addTypeConverter(LocalDate.class, String.class, d -> d.getDayOfMonth() + "/" + d.getMonthValue())
+            .build();
+        RowBean row = new RowBean();
+        row.setDate(LocalDate.of(2018, 9, 1));
+        TextBean bean = beanSetter.newMapper(RowBean.class, TextBean.class).map(row, TextBean::new);
+        assertThat(bean.getDate(), is("1/9"));
+        assertThat(bean.getCount(), is("0"));
+        assertThat(bean.getName(), is(nullValue()));
+    }
+
+    @Test
+    public void fromProxy() {
+        BeanFactory factory = new BeanFactory();
+        BeanMapper<RowInterface, TextBean> mapper = new BeanSetter().newMapper(RowInterface.class, TextBean.class);
+        for (BeanFactory f : new BeanFactory[] { factory, BeanFactory.newBuilder().setGenerateClasses(true).build() }) {
+            RowInterface row = f.createBean(RowInterface.class);
+            row.setCount(42);
+            TextBean bean = text();
+            mapper.copy(row, bean);
+            assertThat(bean.getCount(), is("42"));
+            // Unset properties are not copied
+            assertThat(bean.getName(), is("fred"));
+            assertThat(bean.getDate(), is("2018-09-01"));
+        }
+    }
+
+    @Test
+    public void toProxy() {
+        BeanFactory factory = new BeanFactory();
+        BeanMapper<TextBean, RowInterface> mapper = new BeanSetter().newMapper(TextBean.class, RowInterface.class);
+        RowInterface row = mapper.map(text(), () -> factory.createBean(RowInterface.class));
+        assertThat(row.getName(), is("fred"));
+        assertThat(row.getCount(), is(42));
+        assertThat(row.getDate(), is(LocalDate.of(2018, 9, 1)));
+    }
+
+    public static class NameBean {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unusedError() {
+        new BeanSetter().newMapper(TextBean.class, NameBean.class);
+    }
+
+    @Test
+    public void unusedIgnored() {
+        BeanSetter beanSetter = BeanSetter.newBuilder().setErrorOnUnused(false).build();
+        NameBean bean = beanSetter.newMapper(TextBean.class, NameBean.class).map(text(), NameBean::new);
+        assertThat(bean.getName(), is("fred"));
+    }
+
+    public interface PersonInterface {
+        String getFirst();
+        void setFirst(String first);
+        String getLast();
+        void setLast(String last);
+
+        default String getFull() {
+            return getFirst() + " " + getLast();
+        }
+    }
+
+    public static class PersonBean implements PersonInterface {
+        private String first;
+        private String last;
+
+        @Override // PersonInterface
+        public String getFirst() {
+            return first;
+        }
+
+        @Override // PersonInterface
+        public void setFirst(String first) {
+            this.first = first;
+        }
+
+        @Override // PersonInterface
+        public String getLast() {
+            return last;
+        }
+
+        @Override // PersonInterface
+        public void setLast(String last) {
+            this.last = last;
+        }
+    }
+
+    public static class FullNameBean {
+        private String first;
+        private String last;
+        private String full;
+
+        public String getFirst() {
+            return first;
+        }
+
+        public void setFirst(String first) {
+            this.first = first;
+        }
+
+        public String getLast() {
+            return last;
+        }
+
+        public void setLast(String last) {
+            this.last = last;
+        }
+
+        public String getFull() {
+            return full;
+        }
+
+        public void setFull(String full) {
+            this.full = full;
+        }
+    }
+
+    @Test
+    public void defaultGetter() {
+        BeanMapper<PersonInterface, FullNameBean> mapper =
+            new BeanSetter().newMapper(PersonInterface.class, FullNameBean.class);
+        BeanFactory proxyFactory = new BeanFactory();
+        BeanFactory generatedFactory = BeanFactory.newBuilder().setGenerateClasses(true).build();
+        for (PersonInterface person : new PersonInterface[] {
+                new PersonBean(),
+                proxyFactory.createBean(PersonInterface.class),
+                generatedFactory.createBean(PersonInterface.class) }) {
+            person.setFirst("Fred");
+            person.setLast("Bloggs");
+            FullNameBean bean = mapper.map(person, FullNameBean::new);
+            assertThat(bean.getFirst(), is("Fred"));
+            assertThat(bean.getLast(), is("Bloggs"));
+            assertThat(bean.getFull(), is("Fred Bloggs"));
+        }
+    }
+}
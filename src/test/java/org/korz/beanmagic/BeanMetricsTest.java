@@ -0,0 +1,83 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BeanMetricsTest {
+    public static class NumberBean {
+        private long count;
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+    }
+
+    interface SimpleBean {
+        String getName();
+        void setName(String name);
+    }
+
+    @Test
+    public void beanSetter() {
+        BeanMetricsRecorder metrics = new BeanMetricsRecorder();
+        BeanSetter setter = BeanSetter.newBuilder().setMetrics(metrics).build();
+        for (Object count : new Object[] { "1", "2", 3 }) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("count", count);
+            setter.setProperties(new NumberBean(), properties);
+        }
+        assertThat(metrics.getBeansBound(NumberBean.class), is(3L));
+        assertThat(metrics.getConversions(ConversionStrategy.TEXT), is(2L));
+        assertThat(metrics.getConversionLatency(ConversionStrategy.TEXT).getCount(), is(2L));
+        assertThat(metrics.getConversionCacheMisses(), is(1L));
+        assertThat(metrics.getConversionCacheHits(), is(1L));
+        assertThat(metrics.getConversionCacheHitRatio(), is(0.5));
+        // Integer to long is widened by reflection
+        assertThat(metrics.getReflectiveSets(), is(1L));
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", "fred");
+        try {
+            setter.setProperties(new NumberBean(), properties);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertThat(metrics.getPropertyFailures(), is(1L));
+    }
+
+    @Test
+    public void beanFactory() {
+        BeanMetricsRecorder metrics = new BeanMetricsRecorder();
+        BeanFactory factory = BeanFactory.newBuilder().setMetrics(metrics).build();
+        factory.createBean(SimpleBean.class);
+        factory.createBean(SimpleBean.class);
+        assertThat(metrics.getBeansCreated(SimpleBean.class), is(2L));
+        assertThat(metrics.getBeansCreated(NumberBean.class), is(0L));
+    }
+
+    @Test
+    public void histogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getPercentileNanos(50), is(0L));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(5000);
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getTotalNanos(), is(99 * 100L + 5000));
+        assertThat(histogram.getPercentileNanos(50), is(127L));
+        assertThat(histogram.getPercentileNanos(99), is(127L));
+        assertThat(histogram.getPercentileNanos(100), is(8191L));
+    }
+}
@@ -0,0 +1,159 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BeanPoolTest {
+    interface MessageBean {
+        long getId();
+        void setId(long id);
+        String getBody();
+        void setBody(String body);
+    }
+
+    @Test
+    public void reuse() {
+        BeanMetricsRecorder metrics = new BeanMetricsRecorder();
+        BeanFactory proxyFactory = BeanFactory.newBuilder().setPoolCapacity(4).setMetrics(metrics).build();
+        BeanFactory generatedFactory = BeanFactory.newBuilder().setPoolCapacity(4).setGenerateClasses(true).build();
+        for (BeanFactory factory : new BeanFactory[] { proxyFactory, generatedFactory }) {
+            MessageBean bean = factory.acquire(MessageBean.class);
+            bean.setId(7);
+            bean.setBody("hello");
+            factory.release(bean);
+            for (int i = 0; i < 100; i++) {
+                MessageBean reused = factory.acquire(MessageBean.class);
+                assertThat(reused, sameInstance(bean));
+                assertThat(reused.toString(), is("{}"));
+                reused.setId(i);
+                factory.release(reused);
+            }
+        }
+        assertThat(metrics.getBeansCreated(MessageBean.class), is(1L));
+    }
+
+    @Test
+    public void bounded() {
+        BeanFactory factory = BeanFactory.newBuilder().setPoolCapacity(1).build();
+        MessageBean bean = factory.acquire(MessageBean.class);
+        MessageBean bean2 = factory.acquire(MessageBean.class);
+        factory.release(bean);
+        factory.release(bean2);
+        assertThat(factory.acquire(MessageBean.class), sameInstance(bean));
+        assertThat(factory.acquire(MessageBean.class) == bean2, is(false));
+    }
+
+    @Test
+    public void disabled() {
+        BeanFactory factory = new BeanFactory();
+        MessageBean bean = factory.acquire(MessageBean.class);
+        bean.setId(7);
+        factory.release(bean);
+        assertThat(factory.acquire(MessageBean.class) == bean, is(false));
+        // Dropped rather than reset
+        assertThat(bean.getId(), is(7L));
+    }
+
+    @Test
+    public void otherThreads() throws InterruptedException {
+        BeanFactory factory = BeanFactory.newBuilder().setPoolCapacity(1024).build();
+        List<MessageBean> beans = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            beans.add(factory.acquire(MessageBean.class));
+        }
+        Thread thread = new Thread(() -> beans.forEach(factory::release));
+        thread.start();
+        thread.join();
+        for (int i = 0; i < 8; i++) {
+            assertThat(beans.remove(factory.acquire(MessageBean.class)), is(true));
+        }
+    }
+
+    @Test
+    public void capacityNotExceeded() throws InterruptedException {
+        BeanFactory factory = new BeanFactory();
+        for (int capacity = 1; capacity <= 100; capacity++) {
+            BeanPool pool = new BeanPool(MessageBean.class, capacity, false, factory::reset);
+            assertThat(pool.getCapacity(), is(capacity));
+        }
+        // Released from many threads, so every stripe fills up
+        BeanPool pool = new BeanPool(MessageBean.class, 7, false, factory::reset);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10; j++) {
+                    pool.release(factory.createBean(MessageBean.class));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        int pooled = 0;
+        while (pool.acquire() != null) {
+            pooled++;
+        }
+        assertThat(pooled, is(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseOtherFactory() {
+        BeanFactory factory = BeanFactory.newBuilder().setPoolCapacity(1).build();
+        factory.acquire(MessageBean.class);
+        BeanFactory concurrent = BeanFactory.newBuilder().setConcurrent(true).build();
+        factory.release(concurrent.createBean(MessageBean.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseFrozen() {
+        BeanFactory factory = BeanFactory.newBuilder().setPoolCapacity(1).build();
+        factory.release(factory.freeze(factory.acquire(MessageBean.class)));
+    }
+
+    @Test
+    public void doubleRelease() {
+        BeanFactory factory = BeanFactory.newBuilder().setPoolCapacity(4).setPoolDebug(true).build();
+        MessageBean bean = factory.acquire(MessageBean.class);
+        factory.release(bean);
+        try {
+            factory.release(bean);
+            fail();
+        } catch (IllegalStateException e) {
+            // Already released
+        }
+        assertThat(factory.acquire(MessageBean.class), sameInstance(bean));
+        assertThat(factory.acquire(MessageBean.class) == bean, is(false));
+        try {
+            factory.release(factory.createBean(MessageBean.class));
+            fail();
+        } catch (IllegalStateException e) {
+            // Not acquired
+        }
+    }
+
+    @Test
+    public void leak() throws InterruptedException {
+        BeanFactory factory = new BeanFactory();
+        BeanPool pool = new BeanPool(MessageBean.class, 4, true, factory::reset);
+        pool.created(factory.createBean(MessageBean.class));
+        Object released = factory.createBean(MessageBean.class);
+        pool.created(released);
+        pool.release(released);
+        assertThat(pool.getLeaseCount(), is(1));
+        for (int i = 0; i < 100 && pool.getLeaseCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(pool.getLeaseCount(), is(0));
+    }
+}
@@ -2,11 +2,20 @@ package org.korz.beanmagic;
 
 import org.junit.Test;
 
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class BeanSetterTest {
     class SimpleBean {
@@ -32,6 +41,28 @@ public class BeanSetterTest {
         assertThat(bean.getName(), is("fred"));
     }
 
+    @Test
+    public void reuse() {
+        BeanSetter setter = new BeanSetter();
+        for (String name : new String[] { "fred", "zed" }) {
+            SimpleBean bean = new SimpleBean();
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("name", name);
+            setter.setProperties(bean, properties);
+            assertThat(bean.getName(), is(name));
+        }
+    }
+
+    @Test
+    public void capitalizedProperty() {
+        SimpleBean bean = new SimpleBean();
+        BeanSetter setter = new BeanSetter();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("Name", "fred");
+        setter.setProperties(bean, properties);
+        assertThat(bean.getName(), is("fred"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void unusedError() {
         SimpleBean bean = new SimpleBean();
@@ -92,4 +123,294 @@ public class BeanSetterTest {
         setter.setProperties(bean, properties);
         assertThat(bean.getCount(), is(42));
     }
+
+    @Test
+    public void hierarchyTypeConvert() {
+        BeanSetter setter = BeanSetter.newBuilder()
+            .addTypeConverter(Object.class, int.class, o -> 1)
+            .addTypeConverter(CharSequence.class, int.class, s -> s.length())
+            .addTypeConverter(Number.class, Color.class, n -> Color.values()[n.intValue()])
+            .build();
+        NumberBean bean = new NumberBean();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", new StringBuilder("fish"));
+        setter.setProperties(bean, properties);
+        assertThat(bean.getCount(), is(4));
+        properties.put("count", Color.RED);
+        setter.setProperties(bean, properties);
+        assertThat(bean.getCount(), is(1));
+
+        ConvertBean convertBean = new ConvertBean();
+        Map<String, Object> colors = new HashMap<>();
+        colors.put("color", 1L);
+        setter.setProperties(convertBean, colors);
+        assertThat(convertBean.getColor(), is(Color.GREEN));
+    }
+
+    @Test
+    public void removeTypeConvert() {
+        NumberBean bean = new NumberBean();
+        BeanSetter setter = BeanSetter.newBuilder()
+            .addTypeConverter(String.class, int.class, str -> 42)
+            .removeTypeConverter(String.class, int.class)
+            .build();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", "7");
+        setter.setProperties(bean, properties);
+        assertThat(bean.getCount(), is(7));
+    }
+
+    @Test
+    public void typeDistance() {
+        assertThat(TypeConverterRegistry.distance(Integer.class, Integer.class), is(0));
+        assertThat(TypeConverterRegistry.distance(Integer.class, Number.class), is(1));
+        assertThat(TypeConverterRegistry.distance(StringBuilder.class, CharSequence.class), is(1));
+        assertThat(TypeConverterRegistry.distance(Integer.class, CharSequence.class), is(-1));
+        assertThat(TypeConverterRegistry.distance(Integer.class, Object.class), is(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void typeConverterRegistryCollected() throws InterruptedException {
+        TypeConverterRegistry registry = new TypeConverterRegistry(Collections.singletonMap(
+            new TypeConverterKey(String.class, Integer.class), (String value) -> Integer.valueOf(value)));
+        assertThat(registry.get(String.class, int.class).apply("7"), is(7));
+        // Cached on String and Integer, which must not keep the registry alive
+        WeakReference<TypeConverterRegistry> ref = new WeakReference<>(registry);
+        registry = null;
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(ref.get() == null, is(true));
+    }
+
+    @Test
+    public void reflective() {
+        NumberBean bean = new NumberBean();
+        BeanSetter setter = BeanSetter.newBuilder()
+            .setUseMethodHandles(false)
+            .build();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", "42");
+        setter.setProperties(bean, properties);
+        assertThat(bean.getCount(), is(42));
+    }
+
+    @Test
+    public void primitiveWidening() {
+        NumberBean bean = new NumberBean();
+        BeanSetter setter = new BeanSetter();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", (short) 42);
+        setter.setProperties(bean, properties);
+        assertThat(bean.getCount(), is(42));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void primitiveNull() {
+        NumberBean bean = new NumberBean();
+        BeanSetter setter = new BeanSetter();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", null);
+        setter.setProperties(bean, properties);
+    }
+
+    enum Color {
+        RED, GREEN
+    }
+
+    class ConvertBean {
+        private Color color;
+        private LocalDate date;
+        private BigDecimal amount;
+
+        public Color getColor() {
+            return color;
+        }
+
+        @SuppressWarnings("unused") // reflection
+        public void setColor(Color color) {
+            this.color = color;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        @SuppressWarnings("unused") // reflection
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        @SuppressWarnings("unused") // reflection
+        public void setAmount(BigDecimal amount) {
+            this.amount = amount;
+        }
+    }
+
+    @Test
+    public void conversionStrategies() {
+        ConvertBean bean = new ConvertBean();
+        BeanSetter setter = new BeanSetter();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("color", "GREEN");
+        properties.put("date", "2018-09-01");
+        properties.put("amount", "1.50");
+        setter.setProperties(bean, properties);
+        assertThat(bean.getColor(), is(Color.GREEN));
+        assertThat(bean.getDate(), is(LocalDate.of(2018, 9, 1)));
+        assertThat(bean.getAmount(), is(new BigDecimal("1.50")));
+    }
+
+    @Test
+    public void conversionCache() {
+        BeanSetter setter = new BeanSetter();
+        for (int i = 0; i < 3; i++) {
+            NumberBean bean = new NumberBean();
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("count", String.valueOf(i));
+            setter.setProperties(bean, properties);
+            assertThat(bean.getCount(), is(i));
+        }
+        assertThat(setter.getConversionCacheMisses(), is(1L));
+        assertThat(setter.getConversionCacheHits(), is(2L));
+    }
+
+    @Test
+    public void conversionFailureCached() {
+        BeanSetter setter = new BeanSetter();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("color", 42);
+            try {
+                setter.setProperties(new ConvertBean(), properties);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertThat(setter.getConversionCacheMisses(), is(1L));
+    }
+
+    private static List<Map<String, Object>> records(int count) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> record = new HashMap<>();
+            record.put("count", String.valueOf(i));
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void setPropertiesAll() {
+        BeanSetter setter = new BeanSetter();
+        List<NumberBean> beans = setter.setPropertiesAll(NumberBean::new, records(10));
+        assertThat(beans.size(), is(10));
+        for (int i = 0; i < beans.size(); i++) {
+            assertThat(beans.get(i).getCount(), is(i));
+        }
+    }
+
+    @Test
+    public void setPropertiesAllParallel() {
+        BeanSetter setter = new BeanSetter();
+        List<NumberBean> beans = setter.setPropertiesAll(NumberBean::new, records(10000).parallelStream())
+                                        .collect(Collectors.toList());
+        assertThat(beans.size(), is(10000));
+        for (int i = 0; i < beans.size(); i++) {
+            assertThat(beans.get(i).getCount(), is(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setPropertiesAllUnusedError() {
+        List<Map<String, Object>> records = records(2);
+        records.get(1).put("llamo", "federico");
+        new BeanSetter().setPropertiesAll(NumberBean::new, records);
+    }
+
+    public static class ExplainBean {
+        private int count;
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public static void setDefaultCount(int count) {
+        }
+
+        public ExplainBean setName(String name) {
+            return this;
+        }
+    }
+
+    @Test
+    public void explain() {
+        BeanSetter setter = BeanSetter.newBuilder().setErrorOnUnused(false).build();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("count", "42");
+        properties.put("name", "fred");
+        setter.setProperties(new ExplainBean(), properties);
+        String explanation = setter.explain(ExplainBean.class);
+        assertThat(explanation, containsString("property \"count\": public void " +
+                                               ExplainBean.class.getName() + ".setCount(int) (method handle)"));
+        assertThat(explanation, containsString("setDefaultCount(int): is static"));
+        assertThat(explanation, containsString("setName(java.lang.String): not void return"));
+        assertThat(explanation, containsString("conversion java.lang.String -> java.lang.Integer: TEXT"));
+        assertThat(explanation, containsString("unused properties seen: [name]"));
+    }
+
+    @Test
+    public void unusedPerClass() {
+        BeanSetter setter = BeanSetter.newBuilder().setErrorOnUnused(false).build();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("foo", "bar");
+        setter.setProperties(new SimpleBean(), properties);
+        setter.setProperties(new ExplainBean(), properties);
+        assertThat(setter.explain(SimpleBean.class), containsString("unused properties seen: [foo]"));
+        assertThat(setter.explain(ExplainBean.class), containsString("unused properties seen: [foo]"));
+    }
+
+    @Test
+    public void unusedBounded() {
+        BeanSetter setter = BeanSetter.newBuilder().setErrorOnUnused(false).build();
+        for (int i = 0; i < BeanPlan.MAX_UNUSED + 10; i++) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("unknown" + i, "bar");
+            setter.setProperties(new SimpleBean(), properties);
+            // Seen again, suppressed ones are counted again
+            setter.setProperties(new SimpleBean(), properties);
+        }
+        String explanation = setter.explain(SimpleBean.class);
+        assertThat(explanation, containsString("unknown0"));
+        assertThat(explanation.contains("unknown" + BeanPlan.MAX_UNUSED + ","), is(false));
+        assertThat(explanation, containsString("] and 20 more occurrences"));
+    }
+
+    @Test
+    public void unusedBoundedConcurrently() throws InterruptedException {
+        BeanPlan plan = BeanPlan.compile(SimpleBean.class, true, false);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int thread = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < BeanPlan.MAX_UNUSED; j++) {
+                    plan.addUnused("unknown" + thread + "-" + j);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(plan.getUnused().size(), is(BeanPlan.MAX_UNUSED));
+        assertThat(plan.getSuppressedUnused(), is(7L * BeanPlan.MAX_UNUSED));
+    }
 }
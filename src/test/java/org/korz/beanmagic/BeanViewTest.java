@@ -0,0 +1,216 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+public class BeanViewTest {
+    public interface TradeBean {
+        long getId();
+        void setId(long id);
+        int getQuantity();
+        void setQuantity(int quantity);
+        double getPrice();
+        void setPrice(double price);
+        float getFee();
+        void setFee(float fee);
+        short getVenue();
+        void setVenue(short venue);
+        char getSide();
+        void setSide(char side);
+        byte getFlags();
+        void setFlags(byte flags);
+        boolean isSettled();
+        void setSettled(boolean settled);
+    }
+
+    interface EmptyBean {
+    }
+
+    interface NotPrimitiveBean {
+        String getName();
+        void setName(String name);
+    }
+
+    private static TradeBean fill(TradeBean trade, int i) {
+        trade.setId(1L << 40 | i);
+        trade.setQuantity(i * 100);
+        trade.setPrice(i + 0.25);
+        trade.setFee(0.5f);
+        trade.setVenue((short) -i);
+        trade.setSide(i % 2 == 0 ? 'B' : 'S');
+        trade.setFlags((byte) i);
+        trade.setSettled(i % 2 == 0);
+        return trade;
+    }
+
+    private static void check(TradeBean trade, int i) {
+        assertThat(trade.getId(), is(1L << 40 | i));
+        assertThat(trade.getQuantity(), is(i * 100));
+        assertThat(trade.getPrice(), is(i + 0.25));
+        assertThat(trade.getFee(), is(0.5f));
+        assertThat(trade.getVenue(), is((short) -i));
+        assertThat(trade.getSide(), is(i % 2 == 0 ? 'B' : 'S'));
+        assertThat(trade.getFlags(), is((byte) i));
+        assertThat(trade.isSettled(), is(i % 2 == 0));
+    }
+
+    @Test
+    public void recordSize() {
+        // 8 + 8 + 4 + 4 + 2 + 2 + 1 + 1, padded to 8
+        assertThat(new BeanFactory().getRecordSize(TradeBean.class), is(32));
+    }
+
+    @Test
+    public void readWrite() {
+        BeanFactory factory = new BeanFactory();
+        ByteBuffer buffer = ByteBuffer.allocate(factory.getRecordSize(TradeBean.class) * 10);
+        BeanView<TradeBean> view = factory.createView(TradeBean.class, buffer);
+        assertThat(view.getRecordCount(), is(10));
+        for (int i = 0; i < 10; i++) {
+            fill(view.moveToRecord(i), i);
+        }
+        BeanView<TradeBean> other = factory.createView(TradeBean.class, buffer);
+        for (int i = 9; i >= 0; i--) {
+            check(other.moveToRecord(i), i);
+        }
+        assertThat(other.getOffset(), is(0));
+        assertThat(view.getBean() == view.moveToRecord(3), is(true));
+    }
+
+    @Test
+    public void byteOrder() {
+        BeanFactory factory = new BeanFactory();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(factory.getRecordSize(TradeBean.class))
+                                      .order(ByteOrder.LITTLE_ENDIAN);
+        TradeBean trade = factory.createView(TradeBean.class, buffer).getBean();
+        trade.setId(1);
+        assertThat(buffer.get(0), is((byte) 1));
+        assertThat(trade.getId(), is(1L));
+    }
+
+    @Test
+    public void mapped() throws IOException {
+        BeanFactory factory = new BeanFactory();
+        int recordSize = factory.getRecordSize(TradeBean.class);
+        File file = File.createTempFile("trades", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordSize * 100);
+            BeanView<TradeBean> view = factory.createView(TradeBean.class, buffer);
+            for (int i = 0; i < view.getRecordCount(); i++) {
+                fill(view.moveToRecord(i), i);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            BeanView<TradeBean> view = factory.createView(
+                TradeBean.class, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            assertThat(view.getRecordCount(), is(100));
+            for (int i = 0; i < view.getRecordCount(); i++) {
+                check(view.moveToRecord(i), i);
+            }
+        }
+    }
+
+    @Test
+    public void objectMethods() {
+        BeanFactory factory = new BeanFactory();
+        ByteBuffer buffer = ByteBuffer.allocate(factory.getRecordSize(TradeBean.class) * 2);
+        TradeBean trade = fill(factory.createView(TradeBean.class, buffer).getBean(), 1);
+        TradeBean proxy = fill(factory.createBean(TradeBean.class), 1);
+        assertThat(trade.toString(), is(proxy.toString()));
+        assertThat(trade.hashCode(), is(proxy.hashCode()));
+
+        BeanView<TradeBean> other = factory.createView(TradeBean.class, buffer);
+        assertThat(trade, is(other.getBean()));
+        assertThat(trade, not(other.moveToRecord(1)));
+    }
+
+    @Test
+    public void proxy() {
+        // Used where classes cannot be generated, i.e. non-public interfaces on Java 8
+        BinaryLayout binaryLayout = BinaryLayout.of(TradeBean.class);
+        BufferBeanClass bufferClass = new ProxyBufferBeanClass(binaryLayout, getClass().getClassLoader());
+        ByteBuffer buffer = ByteBuffer.allocate(binaryLayout.getRecordSize() * 2);
+        BeanView<TradeBean> view = new BeanView<>(bufferClass, buffer);
+        fill(view.moveToRecord(1), 1);
+        check(new BeanFactory().createView(TradeBean.class, buffer).moveToRecord(1), 1);
+        check(view.getBean(), 1);
+        TradeBean proxy = fill(new BeanFactory().createBean(TradeBean.class), 1);
+        assertThat(view.getBean().toString(), is(proxy.toString()));
+        assertThat(view.getBean().hashCode(), is(proxy.hashCode()));
+    }
+
+    @Test
+    public void freeze() {
+        BeanFactory factory = new BeanFactory();
+        ByteBuffer buffer = ByteBuffer.allocate(factory.getRecordSize(TradeBean.class));
+        BeanView<TradeBean> view = factory.createView(TradeBean.class, buffer);
+        TradeBean frozen = factory.freeze(fill(view.getBean(), 2));
+        view.getBean().setQuantity(0);
+        check(frozen, 2);
+        assertThat(factory.isFrozen(frozen), is(true));
+    }
+
+    @Test
+    public void emptyBuffer() {
+        BeanView<TradeBean> view = new BeanFactory().createView(TradeBean.class, ByteBuffer.allocate(0));
+        assertThat(view.getRecordCount(), is(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBounds() {
+        BeanFactory factory = new BeanFactory();
+        ByteBuffer buffer = ByteBuffer.allocate(factory.getRecordSize(TradeBean.class) * 2);
+        factory.createView(TradeBean.class, buffer).moveToRecord(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notPrimitive() {
+        new BeanFactory().createView(NotPrimitiveBean.class, ByteBuffer.allocate(64));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noProperties() {
+        new BeanFactory().createView(EmptyBean.class, ByteBuffer.allocate(64));
+    }
+
+    @Test
+    public void layoutOffsets() {
+        BinaryLayout binaryLayout = BinaryLayout.of(TradeBean.class);
+        BeanLayout layout = binaryLayout.getLayout();
+        Map<String, Integer> offsets = new HashMap<>();
+        for (int slot = 0; slot < layout.getPropertyCount(); slot++) {
+            int offset = binaryLayout.getOffset(slot);
+            int size = BinaryLayout.sizeOf(layout.getPropertyType(slot));
+            assertThat(layout.getPropertyName(slot) + " is aligned", offset % size, is(0));
+            offsets.put(layout.getPropertyName(slot), offset);
+        }
+        assertThat(offsets.size(), is(8));
+        assertThat(offsets.get("flags") >= 28, is(true));
+    }
+
+    @Test
+    public void generatedConcurrently() throws Exception {
+        BeanFactoryTest.firstUseConcurrently(BeanFactoryTest.RaceBean.class, beanInterface -> {
+            BeanFactory factory = new BeanFactory();
+            Object bean = factory.createView(beanInterface, ByteBuffer.allocate(64)).getBean();
+            assertThat(Proxy.isProxyClass(bean.getClass()), is(false));
+            beanInterface.getMethod("setCount", int.class).invoke(bean, 42);
+            assertThat(beanInterface.getMethod("getCount").invoke(bean), is(42));
+        });
+    }
+}
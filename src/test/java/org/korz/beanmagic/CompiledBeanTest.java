@@ -0,0 +1,296 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Classes written as the annotation processor would generate them, registered in META-INF/services of the tests.
+ */
+public class CompiledBeanTest {
+    public interface PointBean {
+        int getX();
+        void setX(int x);
+        String getLabel();
+        void setLabel(String label);
+    }
+
+    public static final class PointBeanImpl implements PointBean {
+        private int x;
+        private boolean x$set;
+        private String label;
+        private boolean label$set;
+
+        @Override
+        public int getX() {
+            return x;
+        }
+
+        @Override
+        public void setX(int value) {
+            x = value;
+            x$set = true;
+        }
+
+        @Override
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        public void setLabel(String value) {
+            label = value;
+            label$set = true;
+        }
+    }
+
+    public static final class PointProvider implements CompiledBean<PointBean> {
+        @Override
+        public Class<PointBean> getBeanInterface() {
+            return PointBean.class;
+        }
+
+        @Override
+        public Class<PointBeanImpl> getBeanClass() {
+            return PointBeanImpl.class;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return new String[] { "label", "x" };
+        }
+
+        @Override
+        public Class<?>[] getPropertyTypes() {
+            return new Class<?>[] { String.class, int.class };
+        }
+
+        @Override
+        public PointBean newInstance() {
+            return new PointBeanImpl();
+        }
+
+        @Override
+        public boolean isSet(PointBean bean, int index) {
+            return index == 0 ? ((PointBeanImpl) bean).label$set : ((PointBeanImpl) bean).x$set;
+        }
+
+        @Override
+        public Object get(PointBean bean, int index) {
+            return index == 0 ? bean.getLabel() : bean.getX();
+        }
+
+        @Override
+        public void set(PointBean bean, int index, Object value) {
+            if (index == 0) {
+                bean.setLabel((String) value);
+            } else {
+                bean.setX((Integer) value);
+            }
+        }
+
+        @Override
+        public void reset(PointBean bean) {
+            PointBeanImpl impl = (PointBeanImpl) bean;
+            impl.label = null;
+            impl.label$set = false;
+            impl.x = 0;
+            impl.x$set = false;
+        }
+    }
+
+    // Compiled before the interface gained a property
+    public interface StaleBean {
+        int getX();
+        void setX(int x);
+        int getY();
+        void setY(int y);
+    }
+
+    public static final class StaleProvider implements CompiledBean<StaleBean> {
+        @Override
+        public Class<StaleBean> getBeanInterface() {
+            return StaleBean.class;
+        }
+
+        @Override
+        public Class<? extends StaleBean> getBeanClass() {
+            return StaleBean.class;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return new String[] { "x" };
+        }
+
+        @Override
+        public Class<?>[] getPropertyTypes() {
+            return new Class<?>[] { int.class };
+        }
+
+        @Override
+        public StaleBean newInstance() {
+            throw new AssertionError("stale");
+        }
+
+        @Override
+        public boolean isSet(StaleBean bean, int index) {
+            throw new AssertionError("stale");
+        }
+
+        @Override
+        public Object get(StaleBean bean, int index) {
+            throw new AssertionError("stale");
+        }
+
+        @Override
+        public void set(StaleBean bean, int index, Object value) {
+            throw new AssertionError("stale");
+        }
+
+        @Override
+        public void reset(StaleBean bean) {
+            throw new AssertionError("stale");
+        }
+    }
+
+    public static class Target {
+        private long id;
+        private String label;
+        private int x;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public void setX(int x) {
+            this.x = x;
+        }
+    }
+
+    public static final class TargetSetters implements CompiledSetters<Target> {
+        @Override
+        public Class<Target> getBeanClass() {
+            return Target.class;
+        }
+
+        @Override
+        public String[] getSetterNames() {
+            return new String[] { "setId", "setLabel", "setX" };
+        }
+
+        @Override
+        public Class<?>[] getParameterTypes() {
+            return new Class<?>[] { long.class, String.class, int.class };
+        }
+
+        @Override
+        public void set(Target bean, int index, Object value) {
+            if (index == 0) {
+                bean.setId((Long) value);
+            } else if (index == 1) {
+                bean.setLabel((String) value);
+            } else {
+                bean.setX((Integer) value);
+            }
+        }
+    }
+
+    @Test
+    public void createBean() {
+        PointBean bean = new BeanFactory().createBean(PointBean.class);
+        assertThat(bean instanceof PointBeanImpl, is(true));
+        bean.setX(3);
+        assertThat(bean.getX(), is(3));
+        new BeanFactory().reset(bean);
+        assertThat(bean.getX(), is(0));
+        assertThat(new BeanFactory().freeze(bean).toString(), is("{}"));
+
+        BeanFactory proxies = BeanFactory.newBuilder().setUseCompiled(false).build();
+        assertThat(Proxy.isProxyClass(proxies.createBean(PointBean.class).getClass()), is(true));
+        BeanFactory concurrent = BeanFactory.newBuilder().setConcurrent(true).build();
+        assertThat(Proxy.isProxyClass(concurrent.createBean(PointBean.class).getClass()), is(true));
+    }
+
+    @Test
+    public void stale() {
+        StaleBean bean = new BeanFactory().createBean(StaleBean.class);
+        assertThat(Proxy.isProxyClass(bean.getClass()), is(true));
+    }
+
+    @Test
+    public void freeze() {
+        BeanFactory factory = new BeanFactory();
+        PointBean bean = factory.createBean(PointBean.class);
+        bean.setLabel("origin");
+        PointBean frozen = factory.freeze(bean);
+        assertThat(frozen.getLabel(), is("origin"));
+        assertThat(frozen.toString(), is("{label=origin}"));
+        assertThat(factory.derive(bean, b -> b.setX(1)).getX(), is(1));
+    }
+
+    @Test
+    public void codec() {
+        BeanFactory factory = new BeanFactory();
+        BeanCodec<PointBean> codec = factory.newCodec(PointBean.class);
+        PointBean bean = factory.createBean(PointBean.class);
+        bean.setX(-7);
+        PointBean decoded = codec.decode(codec.encode(bean));
+        assertThat(decoded instanceof PointBeanImpl, is(true));
+        assertThat(decoded.getX(), is(-7));
+        assertThat(factory.freeze(decoded).toString(), is("{x=-7}"));
+
+        BeanFactory proxies = BeanFactory.newBuilder().setUseCompiled(false).build();
+        assertThat(codec.encode(bean), is(proxies.newCodec(PointBean.class).encode(proxies.freeze(bean))));
+    }
+
+    @Test
+    public void mapper() {
+        PointBean bean = new BeanFactory().createBean(PointBean.class);
+        bean.setLabel("origin");
+        Target target = new Target();
+        target.setX(5);
+        new BeanSetter().newMapper(PointBean.class, Target.class).copy(bean, target);
+        assertThat(target.getLabel(), is("origin"));
+        // Not set on the bean, so not copied
+        assertThat(target.getX(), is(5));
+    }
+
+    @Test
+    public void setters() {
+        BeanSetter beanSetter = new BeanSetter();
+        Target target = new Target();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("id", 7);
+        properties.put("Label", 42);
+        beanSetter.setProperties(target, properties);
+        assertThat(target.getId(), is(7L));
+        assertThat(target.getLabel(), is("42"));
+        assertThat(beanSetter.explain(Target.class), containsString("property \"id\": long (compiled)"));
+
+        BeanSetter reflective = BeanSetter.newBuilder().setUseCompiled(false).build();
+        assertThat(reflective.explain(Target.class), containsString("(method handle)"));
+    }
+}
@@ -0,0 +1,212 @@
+package org.korz.beanmagic;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TextRecordBinderTest {
+    enum Color {
+        RED, GREEN
+    }
+
+    public static class RecordBean {
+        private String name;
+        private int count;
+        private long total;
+        private double ratio;
+        private float weight;
+        private boolean enabled;
+        private char grade;
+        private Integer boxed;
+        private Color color;
+        private LocalDate date;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(double ratio) {
+            this.ratio = ratio;
+        }
+
+        public float getWeight() {
+            return weight;
+        }
+
+        public void setWeight(float weight) {
+            this.weight = weight;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public char getGrade() {
+            return grade;
+        }
+
+        public void setGrade(char grade) {
+            this.grade = grade;
+        }
+
+        public Integer getBoxed() {
+            return boxed;
+        }
+
+        public void setBoxed(Integer boxed) {
+            this.boxed = boxed;
+        }
+
+        public Color getColor() {
+            return color;
+        }
+
+        public void setColor(Color color) {
+            this.color = color;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+    }
+
+    private static final String TEXT = "# first\n" +
+        "name=fred\n" +
+        "count=-42\n" +
+        "total=9223372036854775807\n" +
+        "ratio=0.1\n" +
+        "weight=2.5\n" +
+        "enabled=TRUE\n" +
+        "grade=A\n" +
+        "boxed=7\n" +
+        "color=GREEN\n" +
+        "date=2018-09-01\n" +
+        "\n" +
+        "\r\n" +
+        "name=zed\r\n" +
+        "ratio=1e3\r\n";
+
+    private static void check(List<RecordBean> beans) {
+        assertThat(beans.size(), is(2));
+        RecordBean bean = beans.get(0);
+        assertThat(bean.getName(), is("fred"));
+        assertThat(bean.getCount(), is(-42));
+        assertThat(bean.getTotal(), is(Long.MAX_VALUE));
+        assertThat(bean.getRatio(), is(0.1));
+        assertThat(bean.getWeight(), is(2.5f));
+        assertThat(bean.isEnabled(), is(true));
+        assertThat(bean.getGrade(), is('A'));
+        assertThat(bean.getBoxed(), is(7));
+        assertThat(bean.getColor(), is(Color.GREEN));
+        assertThat(bean.getDate(), is(LocalDate.of(2018, 9, 1)));
+        RecordBean bean2 = beans.get(1);
+        assertThat(bean2.getName(), is("zed"));
+        assertThat(bean2.getRatio(), is(1000.0));
+        assertThat(bean2.getColor(), is(nullValue()));
+    }
+
+    @Test
+    public void text() {
+        List<RecordBean> beans = new ArrayList<>();
+        long count = new BeanSetter().newTextBinder(RecordBean.class).bindAll(TEXT, RecordBean::new, beans::add);
+        assertThat(count, is(2L));
+        check(beans);
+    }
+
+    @Test
+    public void reader() throws Exception {
+        List<RecordBean> beans = new ArrayList<>();
+        new BeanSetter().newTextBinder(RecordBean.class).bindAll(new StringReader(TEXT), RecordBean::new, beans::add);
+        check(beans);
+    }
+
+    @Test
+    public void byteBuffer() {
+        List<RecordBean> beans = new ArrayList<>();
+        ByteBuffer bytes = ByteBuffer.allocateDirect(TEXT.length());
+        bytes.put(TEXT.getBytes(StandardCharsets.ISO_8859_1)).flip();
+        new BeanSetter().newTextBinder(RecordBean.class).bindAll(bytes, RecordBean::new, beans::add);
+        check(beans);
+        assertThat(bytes.position(), is(0));
+    }
+
+    @Test
+    public void longLines() throws Exception {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            name.append((char) ('a' + i % 26));
+        }
+        List<RecordBean> beans = new ArrayList<>();
+        new BeanSetter().newTextBinder(RecordBean.class)
+            .bindAll(new StringReader("count=1\nname=" + name + "\n\ncount=2"), RecordBean::new, beans::add);
+        assertThat(beans.size(), is(2));
+        assertThat(beans.get(0).getName(), is(name.toString()));
+        assertThat(beans.get(1).getCount(), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overflow() {
+        new BeanSetter().newTextBinder(RecordBean.class).bindAll("count=2147483648", RecordBean::new, b -> { });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notKeyValue() {
+        new BeanSetter().newTextBinder(RecordBean.class).bindAll("count", RecordBean::new, b -> { });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEnum() {
+        new BeanSetter().newTextBinder(RecordBean.class).bindAll("color=BLUE", RecordBean::new, b -> { });
+    }
+
+    @Test
+    public void parse() {
+        assertThat(TextParser.parseInt("x-2147483648", 1, 12), is(Integer.MIN_VALUE));
+        assertThat(TextParser.parseLong("+12", 0, 3), is(12L));
+        assertThat(TextParser.parseDouble("-1.25", 0, 5), is(-1.25));
+        assertThat(TextParser.parseDouble(" 1.5 ", 0, 5), is(1.5));
+        assertThat(TextParser.parseFloat("0.3", 0, 3), is(0.3f));
+        assertThat(TextParser.parseBoolean("yes", 0, 3), is(false));
+    }
+}